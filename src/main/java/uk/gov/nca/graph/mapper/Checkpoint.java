@@ -0,0 +1,112 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * A checkpoint of a load into a graph, recording how far through the data source the load had got when
+ * the graph was last committed, so that the load can be resumed from that point.
+ *
+ * Checkpoints are saved as properties files. They are written to a temporary file, which is synced to disk
+ * and then moved into place, so that a partially written checkpoint is never read.
+ */
+public class Checkpoint {
+    private static final String SOURCE = "source";
+    private static final String POSITION = "position";
+    private static final String RECORDS = "records";
+
+    private final String source;
+    private final String position;
+    private final long records;
+
+    public Checkpoint(String source, String position, long records){
+        this.source = source;
+        this.position = position;
+        this.records = records;
+    }
+
+    /**
+     * Load a checkpoint, or return null if the file doesn't exist
+     */
+    public static Checkpoint load(File file) throws IOException {
+        if(!file.exists())
+            return null;
+
+        Properties properties = new Properties();
+        try(InputStream in = Files.newInputStream(file.toPath())){
+            properties.load(in);
+        }
+
+        try {
+            return new Checkpoint(properties.getProperty(SOURCE), properties.getProperty(POSITION),
+                Long.parseLong(properties.getProperty(RECORDS, "0")));
+        }catch (NumberFormatException nfe){
+            throw new IOException("Invalid record count in checkpoint " + file, nfe);
+        }
+    }
+
+    public void save(File file) throws IOException {
+        Properties properties = new Properties();
+        if(source != null)
+            properties.setProperty(SOURCE, source);
+        if(position != null)
+            properties.setProperty(POSITION, position);
+        properties.setProperty(RECORDS, Long.toString(records));
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try(FileOutputStream out = new FileOutputStream(tmp)){
+            properties.store(out, "Graph Mapper checkpoint");
+            out.getFD().sync();
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The data source the checkpoint was taken from (e.g. the file or connection string)
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * The position in the data source after the last record read, or null if the data source couldn't
+     * give one, in which case the load is resumed by skipping the records already read
+     */
+    public String getPosition() {
+        return position;
+    }
+
+    /**
+     * The number of records read from the data source
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    @Override
+    public String toString() {
+        return position == null ? records + " records" : records + " records (position " + position + ")";
+    }
+}
@@ -18,18 +18,24 @@ package uk.gov.nca.graph.mapper;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
 import uk.gov.nca.graph.mapper.exceptions.ConfigurationException;
 import uk.gov.nca.graph.mapper.exceptions.ParseException;
+import uk.gov.nca.graph.mapper.mapping.DataType;
 import uk.gov.nca.graph.mapper.mapping.EdgeMap;
 import uk.gov.nca.graph.mapper.mapping.Mapping;
+import uk.gov.nca.graph.mapper.mapping.Operation;
 import uk.gov.nca.graph.mapper.mapping.VertexMap;
 
 /**
@@ -41,15 +47,21 @@ public class Configuration {
     private Map<String, Object> filters = new HashMap<>();
 
     private boolean isLenient = false;
+    private boolean legacyUrls = false;
+    private String operationField = null;
 
     public static final String ID = "_id";
     public static final String TYPE = "_type";
     public static final String SOURCE = "_src";
     public static final String TARGET = "_tgt";
     public static final String MERGE = "_merge";
+    public static final String OWNED = "_owned";
+    public static final String UNIQUE = "_unique";
     public static final String EXISTS = "_exists";
     public static final String EXCEPT = "_except";
     public static final String LENIENT = "isLenient";
+    public static final String LEGACY_URLS = "legacyUrls";
+    public static final String OPERATION = "operation";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Configuration.class);
     private static final String LOG_MESSAGE_EDGE_PROPERTY_REQUIRED = "{} property is required for all edges";
@@ -87,6 +99,14 @@ public class Configuration {
             conf.setLenient(Boolean.valueOf(o.toString()));
         }
 
+        if(configMap.containsKey(LEGACY_URLS)){
+            Object o = configMap.get(LEGACY_URLS);
+            conf.setLegacyUrls(Boolean.valueOf(o.toString()));
+        }
+
+        if(configMap.get(OPERATION) != null)
+            conf.setOperationField(configMap.get(OPERATION).toString());
+
         return conf;
     }
 
@@ -120,6 +140,14 @@ public class Configuration {
             conf.setLenient(Boolean.valueOf(o.toString()));
         }
 
+        if(configuration.containsKey(LEGACY_URLS)){
+            Object o = configuration.get(LEGACY_URLS);
+            conf.setLegacyUrls(Boolean.valueOf(o.toString()));
+        }
+
+        if(configuration.get(OPERATION) != null)
+            conf.setOperationField(configuration.get(OPERATION).toString());
+
         return conf;
     }
 
@@ -130,6 +158,88 @@ public class Configuration {
         return edges;
     }
 
+    /**
+     * Get the filters that data must match to be added to the graph
+     */
+    public Map<String, Object> getFilters() {
+        return Collections.unmodifiableMap(filters);
+    }
+
+    /**
+     * Get the names of all the fields that are read from the data, either by the vertex mappings
+     * or by the filters
+     */
+    public Set<String> getFields() {
+        Set<String> fields = new TreeSet<>();
+
+        for(VertexMap vm : vertices){
+            vm.getProperties().values().forEach(mappings -> addFields(fields, mappings));
+            addFields(fields, vm.getExcept().values());
+        }
+
+        fields.addAll(getFilterFields());
+
+        if(operationField != null)
+            fields.add(operationField);
+
+        return fields;
+    }
+
+    /**
+     * Get the data type that each field is converted to, for fields that are always converted to the same
+     * type without an explicit format, and aren't used by the filters (which compare values as they are
+     * read from the data).
+     * Data sources can use this to read values as the right type, rather than as strings.
+     */
+    public Map<String, DataType> getFieldTypes() {
+        Map<String, DataType> types = new HashMap<>();
+        Set<String> mixed = new HashSet<>();
+
+        for(VertexMap vm : vertices){
+            vm.getProperties().values().forEach(mappings -> addFieldTypes(types, mixed, mappings));
+            addFieldTypes(types, mixed, vm.getExcept().values());
+        }
+
+        types.keySet().removeAll(mixed);
+        types.keySet().removeAll(getFilterFields());
+        types.remove(operationField);
+
+        return types;
+    }
+
+    private Set<String> getFilterFields(){
+        Set<String> fields = new HashSet<>();
+        for(Map.Entry<String, Object> e : filters.entrySet()){
+            if(!e.getKey().equals(EXISTS)) {
+                fields.add(e.getKey());
+            }else if(e.getValue() instanceof List){
+                ((List<?>) e.getValue()).forEach(o -> fields.add(o.toString()));
+            }else if(e.getValue() != null){
+                fields.add(e.getValue().toString());
+            }
+        }
+
+        return fields;
+    }
+
+    private static void addFieldTypes(Map<String, DataType> types, Set<String> mixed, Collection<Mapping> mappings){
+        for(Mapping m : mappings){
+            if(m == null || m.getDataType() == null || m.getDataType() == DataType.LITERAL || m.getField() == null || m.getField().isEmpty())
+                continue;
+
+            DataType existing = types.putIfAbsent(m.getField(), m.getDataType());
+            if(m.getFormat() != null || (existing != null && existing != m.getDataType()))
+                mixed.add(m.getField());
+        }
+    }
+
+    private static void addFields(Set<String> fields, Collection<Mapping> mappings){
+        for(Mapping m : mappings){
+            if(m != null && m.getDataType() != null && m.getDataType() != DataType.LITERAL && m.getField() != null && !m.getField().isEmpty())
+                fields.add(m.getField());
+        }
+    }
+
     private void setFilters(Map<String, Object> filters){
         this.filters = filters;
     }
@@ -164,6 +274,9 @@ public class Configuration {
                     case MERGE:
                         vm.setMerge(vertex.get(MERGE).toString().equalsIgnoreCase("true"));
                         break;
+                    case OWNED:
+                        vm.setOwned(vertex.get(OWNED).toString().equalsIgnoreCase("true"));
+                        break;
                     case EXCEPT:
                         Map<String, Object> exceptConf;
                         try {
@@ -250,6 +363,7 @@ public class Configuration {
             em.setType(edge.get(TYPE).toString());
             em.setSourceId(edge.get(SOURCE));
             em.setTargetId(edge.get(TARGET));
+            em.setUnique(edge.getOrDefault(UNIQUE, "false").toString().equalsIgnoreCase("true"));
 
             edges.add(em);
         }
@@ -303,4 +417,37 @@ public class Configuration {
     public void setLenient(boolean lenient) {
         this.isLenient = lenient;
     }
+
+    /**
+     * If true, URL properties are added to the graph as java.net.URL rather than java.net.URI
+     */
+    public boolean isLegacyUrls() {
+        return legacyUrls;
+    }
+
+    public void setLegacyUrls(boolean legacyUrls) {
+        this.legacyUrls = legacyUrls;
+    }
+
+    /**
+     * Get the field that holds the operation (insert, update or delete) for each record,
+     * or null if every record is an insert
+     */
+    public String getOperationField() {
+        return operationField;
+    }
+
+    public void setOperationField(String operationField) {
+        this.operationField = operationField;
+    }
+
+    /**
+     * Get the operation for the provided data, or null if the value of the operation field isn't recognised
+     */
+    public Operation getOperation(Map<String, Object> data){
+        if(operationField == null)
+            return Operation.INSERT;
+
+        return Operation.parse(data.get(operationField));
+    }
 }
@@ -16,8 +16,8 @@ limitations under the License.
 
 package uk.gov.nca.graph.mapper;
 
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.time.LocalTime;
 import java.util.HashMap;
 import java.util.List;
@@ -27,6 +27,7 @@ import net.andreinc.mockneat.MockNeat;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
 import uk.gov.nca.graph.mapper.mapping.DataType;
+import uk.gov.nca.graph.mapper.mapping.DataTypeUtils;
 import uk.gov.nca.graph.mapper.mapping.Mapping;
 
 /**
@@ -43,13 +44,17 @@ public class GraphGenerator {
 
   /**
    * Populate the provided graph with a graph that is structurally equivalent to the
-   * graph described in the configuration.
+   * graph described in the configuration. Values have the same types as they would
+   * have if mapped, so URLs are java.net.URL if the configuration uses legacy URLs.
    */
   public static void generateGraph(Graph graph, Configuration configuration){
     Map<Object, Vertex> vertices = new HashMap<>();
     configuration.getVertices().forEach(vm -> {
       Vertex v = graph.addVertex(vm.getType());
-      vm.getProperties().entrySet().forEach(entry -> v.property(entry.getKey(), generateData(entry.getValue())));
+      vm.getProperties().entrySet().forEach(entry -> {
+        Object value = generateData(entry.getValue());
+        v.property(entry.getKey(), configuration.isLegacyUrls() ? DataTypeUtils.toLegacyType(value) : value);
+      });
       vertices.put(vm.getId(), v);
     });
 
@@ -95,6 +100,8 @@ public class GraphGenerator {
         return mock.localDates().val();
       case INTEGER:
         return mock.ints().val();
+      case LONG:
+        return mock.longs().val();
       case DATETIME:
         return mock.localDates().val().atTime(randomLocalTime());
       case DOUBLE:
@@ -102,8 +109,8 @@ public class GraphGenerator {
       case URL:
         String url = mock.urls().val();
         try {
-          return new URL(url);
-        }catch (MalformedURLException mue){
+          return new URI(url);
+        }catch (URISyntaxException use){
           return url;
         }
       case TIME:
@@ -18,22 +18,34 @@ package uk.gov.nca.graph.mapper;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
+import org.apache.tinkerpop.gremlin.process.traversal.P;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Direction;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
 import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import uk.gov.nca.graph.mapper.exceptions.ParseException;
+import uk.gov.nca.graph.mapper.index.EdgeSet;
+import uk.gov.nca.graph.mapper.index.Hashing;
+import uk.gov.nca.graph.mapper.index.IdentifierIndex;
+import uk.gov.nca.graph.mapper.index.ScalableBloomFilter;
 import uk.gov.nca.graph.mapper.mapping.DataType;
 import uk.gov.nca.graph.mapper.mapping.DataTypeUtils;
 import uk.gov.nca.graph.mapper.mapping.EdgeMap;
 import uk.gov.nca.graph.mapper.mapping.Mapping;
+import uk.gov.nca.graph.mapper.mapping.Operation;
 import uk.gov.nca.graph.mapper.mapping.VertexMap;
 
 /**
@@ -41,6 +53,15 @@ import uk.gov.nca.graph.mapper.mapping.VertexMap;
  */
 public class Grapher {
     private final Configuration configuration;
+    private IdentifierIndex identifierIndex = null;
+    private ScalableBloomFilter identifierFilter = null;
+    private EdgeSet edgeSet = null;
+    private ValueDictionary valueDictionary = null;
+    private boolean upsert = false;
+
+    private String sortedBy = null;
+    private Object currentGroup = null;
+    private final Map<String, Vertex> groupVertices = new HashMap<>();
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Grapher.class);
     private static final String IDENTIFIER = "identifier";
@@ -59,6 +80,208 @@ public class Grapher {
         return configuration;
     }
 
+    /**
+     * Get the identifier index used by this class, or null if there isn't one
+     */
+    public IdentifierIndex getIdentifierIndex() {
+        return identifierIndex;
+    }
+
+    /**
+     * Set an identifier index to look up vertices by type and IDENTIFIER before querying the graph.
+     * Entries in the index are checked against the graph, so an index from a previous run can be reused.
+     *
+     * If the index is marked as complete (see {@link #rebuildIdentifierIndex(Graph)}), then vertices
+     * that aren't in the index are created without querying the graph.
+     */
+    public void setIdentifierIndex(IdentifierIndex identifierIndex) {
+        this.identifierIndex = identifierIndex;
+    }
+
+    /**
+     * Clear the identifier index and repopulate it with every vertex in the graph that has an IDENTIFIER,
+     * after which the index is complete and vertices missing from the index won't be looked up in the graph
+     */
+    public void rebuildIdentifierIndex(Graph graph){
+        if(identifierIndex == null)
+            return;
+
+        LOGGER.info("Building identifier index from graph");
+        identifierIndex.clear();
+
+        boolean complete = true;
+        Iterator<Vertex> vertices = graph.traversal().V().has(IDENTIFIER);
+        while(vertices.hasNext()){
+            Vertex v = vertices.next();
+
+            Iterator<Object> identifiers = v.values(IDENTIFIER);
+            while(identifiers.hasNext()) {
+                Object identifier = identifiers.next();
+                complete &= identifierIndex.put(v.label(), identifier, v.id(), id -> isIndexedAs(id, v.label(), identifier, graph));
+            }
+        }
+
+        identifierIndex.setComplete(complete);
+        if(complete) {
+            LOGGER.info("Identifier index built with {} entries", identifierIndex.size());
+        }else{
+            LOGGER.warn("Vertex IDs in graph can't all be indexed - identifier index will only be used as a cache");
+        }
+    }
+
+    /**
+     * Get the identifier filter used by this class, or null if there isn't one
+     */
+    public ScalableBloomFilter getIdentifierFilter() {
+        return identifierFilter;
+    }
+
+    /**
+     * Set a Bloom filter of type and IDENTIFIER, so that vertices which definitely aren't in the graph
+     * can be created without querying the graph or the identifier index.
+     *
+     * The filter must contain every identifier already in the graph, so should either be empty for an
+     * empty graph, or populated with {@link #rebuildIdentifierFilter(Graph)}.
+     */
+    public void setIdentifierFilter(ScalableBloomFilter identifierFilter) {
+        this.identifierFilter = identifierFilter;
+    }
+
+    /**
+     * Clear the identifier filter and repopulate it with every vertex in the graph that has an IDENTIFIER
+     */
+    public void rebuildIdentifierFilter(Graph graph){
+        if(identifierFilter == null)
+            return;
+
+        LOGGER.info("Building identifier filter from graph");
+        identifierFilter.clear();
+
+        Iterator<Vertex> vertices = graph.traversal().V().has(IDENTIFIER);
+        while(vertices.hasNext()){
+            Vertex v = vertices.next();
+
+            Iterator<Object> identifiers = v.values(IDENTIFIER);
+            while(identifiers.hasNext())
+                identifierFilter.put(Hashing.identifierKey(v.label(), identifiers.next()));
+        }
+
+        LOGGER.info("Identifier filter built with {} entries", identifierFilter.size());
+    }
+
+    /**
+     * Get the dictionary used to canonicalise property keys and values, or null if there isn't one
+     */
+    public ValueDictionary getValueDictionary() {
+        return valueDictionary;
+    }
+
+    /**
+     * Set a dictionary, which will be used to replace property keys and values with a canonical instance
+     * before they are added to the graph, reducing the memory used by in-memory graphs
+     */
+    public void setValueDictionary(ValueDictionary valueDictionary) {
+        this.valueDictionary = valueDictionary;
+    }
+
+    /**
+     * Get the set of unique edges used by this class, or null if there isn't one
+     */
+    public EdgeSet getEdgeSet() {
+        return edgeSet;
+    }
+
+    /**
+     * Set the set of edges used to skip duplicates of edges that are marked as unique in the configuration.
+     * If no set is provided, then the graph is queried instead.
+     *
+     * The set must contain every existing unique edge in the graph, so should either be empty for an
+     * empty graph, or populated with {@link #rebuildEdgeSet(Graph)}.
+     */
+    public void setEdgeSet(EdgeSet edgeSet) {
+        this.edgeSet = edgeSet;
+    }
+
+    /**
+     * Clear the edge set and repopulate it with every edge in the graph that has the same type
+     * as an edge marked as unique in the configuration (or as any edge in the configuration, if upserting
+     * or if the configuration has an operation field)
+     */
+    public void rebuildEdgeSet(Graph graph){
+        if(edgeSet == null)
+            return;
+
+        edgeSet.clear();
+
+        boolean allTypes = upsert || configuration.getOperationField() != null;
+
+        Set<String> types = new HashSet<>();
+        for(EdgeMap em : configuration.getEdges()){
+            if(em.getUnique() || allTypes)
+                types.add(em.getType());
+        }
+
+        if(types.isEmpty())
+            return;
+
+        LOGGER.info("Building edge set from graph");
+
+        Iterator<Edge> edges = graph.traversal().E().hasLabel(P.within(types));
+        while(edges.hasNext()){
+            Edge e = edges.next();
+            edgeSet.add(e.outVertex().id(), e.label(), e.inVertex().id());
+        }
+
+        LOGGER.info("Edge set built with {} entries", edgeSet.size());
+    }
+
+    /**
+     * Get the field that the input data is sorted by, or null if it isn't sorted
+     */
+    public String getSortedBy() {
+        return sortedBy;
+    }
+
+    /**
+     * Set the field that the input data is sorted (or grouped) by, so that all records with the same
+     * value of that field are passed to this class consecutively.
+     *
+     * Vertices whose IDENTIFIER is mapped directly from this field are then only held in memory for
+     * the current group, and are never looked up in the graph. Vertices with that IDENTIFIER must not
+     * already exist in the graph, and each group must only appear once in the input, otherwise duplicate
+     * vertices will be created.
+     */
+    public void setSortedBy(String sortedBy) {
+        this.sortedBy = sortedBy;
+        flushGroup();
+    }
+
+    /**
+     * Returns true if records update the existing graph, rather than being added to it
+     */
+    public boolean isUpsert() {
+        return upsert;
+    }
+
+    /**
+     * Set whether records update the existing graph (e.g. when loading rows that have changed since
+     * a previous load). If true, properties of existing vertices are replaced rather than added to,
+     * and edges are only added if they don't already exist, so loading a record again has no effect.
+     * This should be set before the edge set is rebuilt.
+     */
+    public void setUpsert(boolean upsert) {
+        this.upsert = upsert;
+    }
+
+    /**
+     * Discard the vertices held for the current group, which is done automatically when the value
+     * of the sorted field changes
+     */
+    public void flushGroup(){
+        currentGroup = null;
+        groupVertices.clear();
+    }
+
     /**
      * Add an index to the graph on IDENTIFIER, iff the graph is a TinkerGraph
      */
@@ -104,6 +327,11 @@ public class Grapher {
      * to every vertex and edge. Audit data will override any data from the
      * mapping file, and any existing data in the graph.
      *
+     * If the configuration has an operation field, then records marked as updates replace the properties
+     * of the vertices found by IDENTIFIER (creating them if they don't exist), and records marked as deletes
+     * remove the edges they created and any vertices marked as owned. Records with an unrecognised operation
+     * are skipped.
+     *
      * Optionally, the data can be flattened (see {@link #flattenMap(Map)}).
      */
     public void addDataToGraph(Map<String, Object> data, Graph graph, Map<String, Object> auditData, boolean flatten){
@@ -116,6 +344,25 @@ public class Grapher {
             processedData = data;
         }
 
+        if(sortedBy != null){
+            Object group = processedData.get(sortedBy);
+            if(!Objects.equals(group, currentGroup)) {
+                flushGroup();
+                currentGroup = group;
+            }
+        }
+
+        Operation operation = configuration.getOperation(processedData);
+        if(operation == null){
+            LOGGER.warn("Unrecognised operation {} - record will be skipped", processedData.get(configuration.getOperationField()));
+            return;
+        }else if(operation == Operation.DELETE){
+            removeDataFromGraph(processedData, graph);
+            return;
+        }
+
+        boolean update = upsert || operation == Operation.UPDATE;
+
         //First process vertices
         for(VertexMap vm : configuration.getVertices()){
             //Should we skip?
@@ -127,7 +374,9 @@ public class Grapher {
 
             //Add vertices
             Vertex v;
-            if(vm.getMerge()){
+            if(properties.get(IDENTIFIER) != null && isSortedVertex(vm)){
+                v = getVertexFromGroup(vm.getType(), properties.get(IDENTIFIER), graph);
+            }else if(vm.getMerge()){
                 GraphTraversal<Vertex, Vertex> traversal = graph.traversal().V().hasLabel(vm.getType());
                 for(Map.Entry<String, Object> e : properties.entrySet()){
                     traversal = traversal.has(e.getKey(), e.getValue());
@@ -145,13 +394,19 @@ public class Grapher {
             }
 
             for(Map.Entry<String, Object> e : properties.entrySet()){
-                v.property(e.getKey(), e.getValue());
+                setProperty(v, e.getKey(), e.getValue(), update);
             }
 
             for(Map.Entry<String, Object> e : auditData.entrySet()){
-                v.property(e.getKey(), e.getValue());
+                setProperty(v, e.getKey(), e.getValue(), update);
             }
 
+            if(identifierIndex != null && properties.get(IDENTIFIER) != null)
+                addToIdentifierIndex(vm.getType(), properties.get(IDENTIFIER), v.id(), graph);
+
+            if(identifierFilter != null && properties.get(IDENTIFIER) != null)
+                identifierFilter.put(Hashing.identifierKey(vm.getType(), properties.get(IDENTIFIER)));
+
             //Add to map so we can use them for edges
             if(vm.getId() != null)
                 vertexMap.put(vm.getId(), v);
@@ -165,10 +420,17 @@ public class Grapher {
             if(source == null || target == null)
                 continue;
 
+            if((em.getUnique() || update) && edgeExists(source, em.getType(), target))
+                continue;
+
             Edge edge = source.addEdge(em.getType(), target);
 
+            //Inserted edges aren't checked, but still need adding to the edge set so that later updates find them
+            if(edgeSet != null && configuration.getOperationField() != null)
+                edgeSet.add(source.id(), em.getType(), target.id());
+
             for(Map.Entry<String, Object> e : auditData.entrySet()){
-                edge.property(e.getKey(), e.getValue());
+                setProperty(edge, e.getKey(), e.getValue(), update);
             }
         }
     }
@@ -219,7 +481,44 @@ public class Grapher {
         return ret;
     }
 
-    private static boolean shouldSkip(Map<String, Object> data, VertexMap vertexMap){
+    private void removeDataFromGraph(Map<String, Object> data, Graph graph){
+        Map<Object, Vertex> vertexMap = new HashMap<>();
+        Set<Vertex> owned = new LinkedHashSet<>();
+
+        for(VertexMap vm : configuration.getVertices()){
+            if(shouldSkip(data, vm))
+                continue;
+
+            //Vertices can only be found if they have an IDENTIFIER
+            Object identifier = getProperties(data, vm, configuration.isLenient()).get(IDENTIFIER);
+            if(identifier == null)
+                continue;
+
+            Vertex v = findVertex(vm.getType(), identifier, graph);
+            if(v == null)
+                continue;
+
+            if(vm.getId() != null)
+                vertexMap.put(vm.getId(), v);
+
+            if(vm.getOwned())
+                owned.add(v);
+        }
+
+        //Remove the edges that adding the record would have created, before any of the vertices are removed
+        for(EdgeMap em : configuration.getEdges()){
+            Vertex source = vertexMap.get(em.getSourceId());
+            Vertex target = vertexMap.get(em.getTargetId());
+
+            if(source != null && target != null)
+                removeEdge(source, em.getType(), target);
+        }
+
+        for(Vertex v : owned)
+            removeVertex(v);
+    }
+
+    private boolean shouldSkip(Map<String, Object> data, VertexMap vertexMap){
         for(Map.Entry<String, Mapping> e : vertexMap.getExcept().entrySet()){
             Object val = data.get(e.getKey());
 
@@ -232,11 +531,9 @@ public class Grapher {
             }else{
                 Object o = data.get(m.getField());
                 if(o != null && !o.toString().isEmpty()) {
-                    try {
-                        exceptVal = DataTypeUtils.convert(o, m.getDataType());
-                    } catch (ParseException pe) {
-                        LOGGER.warn("Couldn't convert value of except {} from {} to type {}", e.getKey(), m.getField(), m.getDataType(), pe);
-                    }
+                    exceptVal = convert(o, m);
+                    if(exceptVal == null)
+                        LOGGER.warn("Couldn't convert value of except {} from {} to type {}", e.getKey(), m.getField(), m.getDataType());
                 }
             }
 
@@ -247,7 +544,7 @@ public class Grapher {
         return false;
     }
 
-    private static Map<String, Object> getProperties(Map<String, Object> data, VertexMap vertexMap, boolean lenient){
+    private Map<String, Object> getProperties(Map<String, Object> data, VertexMap vertexMap, boolean lenient){
         Map<String, Object> properties = new HashMap<>();
 
         //Add properties
@@ -264,17 +561,14 @@ public class Grapher {
                     if(o == null || o.toString().isEmpty())
                         continue;
 
-                    try {
-                        Object mappedObj = DataTypeUtils.convert(o, m.getDataType());
+                    Object mappedObj = convert(o, m);
+                    if(mappedObj != null){
                         properties.put(e.getKey(), mappedObj);
-                    }catch (ParseException pe){
-                      if(lenient){
+                    }else if(lenient){
                         //If lenient is true, and we weren't able to parse, convert the object to a String
                         properties.put(e.getKey(), o.toString());
-                      }else {
-                        LOGGER.warn("Couldn't convert data from {} to type {}", m.getField(),
-                            m.getDataType(), pe);
-                      }
+                    }else {
+                        LOGGER.warn("Couldn't convert data from {} to type {}", m.getField(), m.getDataType());
                     }
                 }
             }else{
@@ -283,11 +577,12 @@ public class Grapher {
                 boolean nonEmptyField = false;  //False if all fields (not LITERALs) are empty, true if any of them have a value
                 boolean hasField = false;       //False if everything is a LITERAL, true if there is a field
 
-                DataType type = DataType.STRING;
+                //If the first mapping has no field, then it specifies the type (and optionally the format) of the whole property
+                Mapping typeMapping = null;
                 Mapping firstMapping = mappings.get(0);
                 if(firstMapping.getDataType() != DataType.LITERAL && firstMapping.getField().isEmpty()){
-                    type = firstMapping.getDataType();
-                    mappings.remove(0);
+                    typeMapping = firstMapping;
+                    mappings = mappings.subList(1, mappings.size());
                 }
 
                 for(Mapping m : mappings){
@@ -300,18 +595,15 @@ public class Grapher {
                         if(o == null || o.toString().isEmpty())
                             continue;
 
-                        try {
-                            Object mappedObj = DataTypeUtils.convert(o, m.getDataType());
+                        Object mappedObj = convert(o, m);
+                        if(mappedObj != null){
                             sb.append(mappedObj.toString());
                             nonEmptyField = true;
-                        }catch (ParseException pe){
-                          if(lenient){
+                        }else if(lenient){
                             //If lenient is true, and we weren't able to parse, convert the object to a String
                             properties.put(e.getKey(), o.toString());
-                          }else {
-                            LOGGER.warn("Couldn't convert data from {} to type {}", m.getField(),
-                                m.getDataType(), pe);
-                          }
+                        }else {
+                            LOGGER.warn("Couldn't convert data from {} to type {}", m.getField(), m.getDataType());
                         }
                     }
                 }
@@ -319,19 +611,17 @@ public class Grapher {
                 if(hasField && !nonEmptyField)  //There were fields, but they were all empty so skip
                     continue;
 
-                if(type == DataType.STRING) {
+                if(typeMapping == null || typeMapping.getDataType() == DataType.STRING) {
                     properties.put(e.getKey(), sb.toString());
                 }else{
-                    try{
-                        Object mappedObj = DataTypeUtils.convert(sb.toString(), type);
+                    Object mappedObj = convert(sb.toString(), typeMapping);
+                    if(mappedObj != null){
                         properties.put(e.getKey(), mappedObj);
-                    } catch (ParseException pe) {
+                    }else if(lenient) {
                         //If lenient is true, and we weren't able to parse, convert the object to a String
-                        if(lenient) {
-                            properties.put(e.getKey(), sb.toString());
-                        }else{
-                            LOGGER.warn("Couldn't convert list to type {}", type, pe);
-                        }
+                        properties.put(e.getKey(), sb.toString());
+                    }else{
+                        LOGGER.warn("Couldn't convert list to type {}", typeMapping.getDataType());
                     }
                 }
             }
@@ -340,17 +630,222 @@ public class Grapher {
         return properties;
     }
 
-    private static Vertex getVertexFromGraph(String type, Object identifier, Graph graph){
+    private Object convert(Object data, Mapping mapping){
+        Object converted = DataTypeUtils.tryConvert(data, mapping);
+        return configuration.isLegacyUrls() ? DataTypeUtils.toLegacyType(converted) : converted;
+    }
+
+    private Vertex getVertexFromGraph(String type, Object identifier, Graph graph){
         if(identifier == null){
             return graph.addVertex(type);
         }
 
+        //A negative from the filter is definite, so the vertex must be new
+        if(identifierFilter != null && !identifierFilter.mightContain(Hashing.identifierKey(type, identifier)))
+            return graph.addVertex(type);
+
+        if(identifierIndex != null){
+            Vertex v = getVertexFromIndex(type, identifier, graph);
+            if(v != null)
+                return v;
+
+            //If the index holds every identifier in the graph, then there's no need to check the graph
+            if(identifierIndex.isComplete())
+                return addFilteredVertex(type, graph);
+        }
+
+        Vertex v = getVertexFromTraversal(type, identifier, graph);
+        if(v != null)
+            return v;
+
+        return addFilteredVertex(type, graph);
+    }
+
+    private Vertex findVertex(String type, Object identifier, Graph graph){
+        String key = Hashing.identifierKey(type, identifier);
+        if(groupVertices.containsKey(key))
+            return groupVertices.get(key);
+
+        if(identifierFilter != null && !identifierFilter.mightContain(key))
+            return null;
+
+        if(identifierIndex != null){
+            Vertex v = getVertexFromIndex(type, identifier, graph);
+            if(v != null || identifierIndex.isComplete())
+                return v;
+        }
+
+        return getVertexFromTraversal(type, identifier, graph);
+    }
+
+    private Vertex getVertexFromTraversal(String type, Object identifier, Graph graph){
         List<Vertex> vertices = graph.traversal().V().has(IDENTIFIER, identifier).toList();
         for(Vertex v : vertices){
             if(type.equals(v.label()))
                 return v;
         }
 
+        return null;
+    }
+
+    private Vertex addFilteredVertex(String type, Graph graph){
+        //Only reached when the vertex doesn't exist, so if there's a filter it gave a false positive
+        if(identifierFilter != null)
+            identifierFilter.recordFalsePositive();
+
         return graph.addVertex(type);
     }
+
+    private void setProperty(Element element, String key, Object value, boolean replace){
+        if(valueDictionary != null) {
+            key = valueDictionary.canonicalise(key);
+            value = valueDictionary.canonicalise(value);
+        }
+
+        if(replace && element instanceof Vertex) {
+            ((Vertex) element).property(VertexProperty.Cardinality.single, key, value);
+        }else{
+            element.property(key, value);
+        }
+    }
+
+    private boolean isSortedVertex(VertexMap vm){
+        if(sortedBy == null)
+            return false;
+
+        List<Mapping> identifier = vm.getProperties().get(IDENTIFIER);
+        if(identifier == null || identifier.size() != 1)
+            return false;
+
+        Mapping m = identifier.get(0);
+        return m.getDataType() != DataType.LITERAL && sortedBy.equals(m.getField());
+    }
+
+    private Vertex getVertexFromGroup(String type, Object identifier, Graph graph){
+        //The input is sorted, so this vertex is either in the current group or doesn't exist yet
+        return groupVertices.computeIfAbsent(Hashing.identifierKey(type, identifier), k -> graph.addVertex(type));
+    }
+
+    private Vertex getVertexFromIndex(String type, Object identifier, Graph graph){
+        Object id = identifierIndex.get(type, identifier);
+        if(id == null)
+            return null;
+
+        Vertex v = getVertexById(id, graph);
+        if(v == null)
+            return null;
+
+        //The index only stores hashes of the key, so check that this is the right vertex
+        return hasIdentifier(v, type, identifier) ? v : null;
+    }
+
+    /**
+     * Returns true if an existing index entry for the vertex with the given ID can be replaced by an entry
+     * for the given key, because the vertex has the same key or no longer exists
+     */
+    private boolean isIndexedAs(Object id, String type, Object identifier, Graph graph){
+        Vertex v = getVertexById(id, graph);
+        return v == null || hasIdentifier(v, type, identifier);
+    }
+
+    private Vertex getVertexById(Object id, Graph graph){
+        Iterator<Vertex> vertices = graph.vertices(id);
+        if(!vertices.hasNext()) {
+            //Graphs reloaded from file may represent the same ID differently (e.g. 1 and "1")
+            Object altId = id instanceof String ? Long.valueOf((String) id) : id.toString();
+
+            try {
+                vertices = graph.vertices(altId);
+            }catch (IllegalArgumentException iae){
+                return null;
+            }
+
+            if (!vertices.hasNext())
+                return null;
+        }
+
+        return vertices.next();
+    }
+
+    private static boolean hasIdentifier(Vertex v, String type, Object identifier){
+        if(!type.equals(v.label()))
+            return false;
+
+        Iterator<Object> values = v.values(IDENTIFIER);
+        while(values.hasNext()){
+            if(identifier.equals(values.next()))
+                return true;
+        }
+
+        return false;
+    }
+
+    private boolean edgeExists(Vertex source, String type, Vertex target){
+        if(edgeSet != null)
+            return !edgeSet.add(source.id(), type, target.id());
+
+        Iterator<Vertex> targets = source.vertices(Direction.OUT, type);
+        while(targets.hasNext()){
+            if(targets.next().id().equals(target.id()))
+                return true;
+        }
+
+        return false;
+    }
+
+    private void removeEdge(Vertex source, String type, Vertex target){
+        //Only remove a single edge, as duplicates will have been created by other records
+        Edge removed = null;
+        boolean remaining = false;
+
+        Iterator<Edge> edges = source.edges(Direction.OUT, type);
+        while(edges.hasNext() && !remaining){
+            Edge e = edges.next();
+            if(!e.inVertex().id().equals(target.id()))
+                continue;
+
+            if(removed == null){
+                removed = e;
+            }else{
+                remaining = true;
+            }
+        }
+
+        if(removed == null)
+            return;
+
+        removed.remove();
+
+        if(edgeSet != null && !remaining)
+            edgeSet.remove(source.id(), type, target.id());
+    }
+
+    private void removeVertex(Vertex v){
+        if(edgeSet != null){
+            Iterator<Edge> edges = v.edges(Direction.BOTH);
+            while(edges.hasNext()){
+                Edge e = edges.next();
+                edgeSet.remove(e.outVertex().id(), e.label(), e.inVertex().id());
+            }
+        }
+
+        //The identifier filter can't have entries removed, but a stale entry only costs an extra lookup
+        Iterator<Object> identifiers = v.values(IDENTIFIER);
+        while(identifiers.hasNext()){
+            Object identifier = identifiers.next();
+
+            groupVertices.remove(Hashing.identifierKey(v.label(), identifier));
+            if(identifierIndex != null)
+                identifierIndex.remove(v.label(), identifier, v.id());
+        }
+
+        v.remove();
+    }
+
+    private void addToIdentifierIndex(String type, Object identifier, Object vertexId, Graph graph){
+        if(!identifierIndex.put(type, identifier, vertexId, id -> isIndexedAs(id, type, identifier, graph)) && identifierIndex.isComplete()){
+            LOGGER.warn("Unable to index vertex ID {} - identifier index will only be used as a cache", vertexId);
+            identifierIndex.setComplete(false);
+        }
+    }
 }
@@ -0,0 +1,181 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper;
+
+import java.net.URI;
+import java.net.URL;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded dictionary of property keys and values, used to replace equal values with a single canonical
+ * instance before they are added to the graph. For in-memory graphs, where many elements have the same
+ * values, this can substantially reduce the memory used by the graph.
+ *
+ * Only immutable types (Strings, boxed numbers, dates and times, and URIs and URLs) are canonicalised. When the
+ * dictionary is full, the least recently used value is removed. The memory saved is estimated from the
+ * typical size of each type on a 64-bit JVM with compressed pointers. This class is not thread-safe.
+ */
+public class ValueDictionary {
+    private final Map<Object, Object> values;
+
+    //URL.equals() resolves the host name, so URLs are held separately keyed on their String form
+    private final Map<String, URL> urls;
+
+    private long lookups = 0;
+    private long hits = 0;
+    private long bytesSaved = 0;
+
+    /**
+     * Create a dictionary holding at most maxSize values
+     */
+    public ValueDictionary(int maxSize){
+        values = new BoundedMap<>(maxSize);
+        urls = new BoundedMap<>(maxSize);
+    }
+
+    /**
+     * Return the canonical instance of value, which will be value itself if an equal value
+     * isn't already in the dictionary. Values that can't be canonicalised are returned unchanged.
+     */
+    public Object canonicalise(Object value){
+        if(value instanceof URL)
+            return canonicaliseUrl((URL) value);
+
+        if(!isCanonicalisable(value))
+            return value;
+
+        lookups++;
+
+        Object existing = values.putIfAbsent(value, value);
+        if(existing == null || existing == value)
+            return value;
+
+        hits++;
+        bytesSaved += estimateSize(value);
+
+        return existing;
+    }
+
+    /**
+     * Return the canonical instance of a property key
+     */
+    public String canonicalise(String key){
+        return (String) canonicalise((Object) key);
+    }
+
+    /**
+     * Number of distinct values currently in the dictionary
+     */
+    public int size(){
+        return values.size() + urls.size();
+    }
+
+    /**
+     * Number of values passed to the dictionary that could be canonicalised
+     */
+    public long getLookups(){
+        return lookups;
+    }
+
+    /**
+     * Number of values that were replaced with an existing instance
+     */
+    public long getHits(){
+        return hits;
+    }
+
+    /**
+     * Estimated number of bytes saved by replacing values with an existing instance
+     */
+    public long getBytesSaved(){
+        return bytesSaved;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d distinct values, %d of %d values replaced, approximately %d bytes saved",
+            size(), hits, lookups, bytesSaved);
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private URL canonicaliseUrl(URL url){
+        lookups++;
+
+        String key = url.toExternalForm();
+        URL existing = urls.putIfAbsent(key, url);
+        if(existing == null || existing == url)
+            return url;
+
+        hits++;
+        bytesSaved += 120 + 2L * key.length();
+
+        return existing;
+    }
+
+    private static boolean isCanonicalisable(Object value){
+        return value instanceof String || value instanceof Integer || value instanceof Long || value instanceof Double
+            || value instanceof LocalDate || value instanceof LocalTime || value instanceof ZonedDateTime
+            || value instanceof URI;
+    }
+
+    private static long estimateSize(Object value){
+        if(value instanceof String)
+            return 40 + 2L * ((String) value).length();     //String object and its backing array
+        else if(isSharedBox(value))
+            return 0;       //Boxed by valueOf() (e.g. autoboxing) as a shared instance anyway
+        else if(value instanceof Integer)
+            return 16;
+        else if(value instanceof URI)
+            return 120 + 2L * value.toString().length();   //URI, its String form and its components
+        else if(value instanceof ZonedDateTime)
+            return 96;      //ZonedDateTime, LocalDateTime, LocalDate and LocalTime (the zone is shared)
+        else
+            return 24;      //Long, Double, LocalDate and LocalTime
+    }
+
+    private static boolean isSharedBox(Object value){
+        if(!(value instanceof Integer) && !(value instanceof Long))
+            return false;
+
+        long l = ((Number) value).longValue();
+        return l >= -128 && l <= 127;
+    }
+
+    /**
+     * Map that removes the least recently used entry once it reaches its maximum size
+     */
+    private static class BoundedMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        BoundedMap(int maxSize){
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -3,40 +3,48 @@ package uk.gov.nca.graph.mapper.cli;
 import static uk.gov.nca.graph.utils.cli.CommandLineUtils.createRequiredOption;
 import static uk.gov.nca.graph.utils.cli.CommandLineUtils.printHelp;
 
-import com.google.re2j.Pattern;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.sql.SQLException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import javax.xml.stream.XMLStreamException;
+import java.util.Set;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
-import org.apache.http.HttpHost;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.util.GraphFactory;
-import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.mapper.Checkpoint;
 import uk.gov.nca.graph.mapper.Configuration;
 import uk.gov.nca.graph.mapper.Grapher;
-import uk.gov.nca.graph.mapper.datasources.CsvDataSource;
+import uk.gov.nca.graph.mapper.ValueDictionary;
+import uk.gov.nca.graph.mapper.datasources.Checkpointable;
 import uk.gov.nca.graph.mapper.datasources.DataSource;
+import uk.gov.nca.graph.mapper.datasources.DataSourceOptions;
+import uk.gov.nca.graph.mapper.datasources.DataSourceProvider;
+import uk.gov.nca.graph.mapper.datasources.DataSourceProvider.Capability;
+import uk.gov.nca.graph.mapper.datasources.DataSourceProviders;
 import uk.gov.nca.graph.mapper.datasources.ElasticDataSource;
-import uk.gov.nca.graph.mapper.datasources.JsonDataSource;
-import uk.gov.nca.graph.mapper.datasources.JsonLinesDataSource;
-import uk.gov.nca.graph.mapper.datasources.RegexDataSource;
+import uk.gov.nca.graph.mapper.datasources.FileDataSourceProvider;
+import uk.gov.nca.graph.mapper.datasources.FollowingDataSource;
+import uk.gov.nca.graph.mapper.datasources.MultiFileDataSource;
+import uk.gov.nca.graph.mapper.datasources.PartitionedDataSource;
+import uk.gov.nca.graph.mapper.datasources.PrefetchingDataSource;
 import uk.gov.nca.graph.mapper.datasources.SqlDataSource;
-import uk.gov.nca.graph.mapper.datasources.XmlDataSource;
 import uk.gov.nca.graph.mapper.exceptions.ConfigurationException;
+import uk.gov.nca.graph.mapper.index.EdgeSet;
+import uk.gov.nca.graph.mapper.index.IdentifierIndex;
+import uk.gov.nca.graph.mapper.index.IndexSidecar;
+import uk.gov.nca.graph.mapper.index.ScalableBloomFilter;
+import uk.gov.nca.graph.mapper.mapping.EdgeMap;
 import uk.gov.nca.graph.utils.GraphUtils;
 
 //TODO: Tests
@@ -49,25 +57,51 @@ public class MapDataToGraph {
   public static final String PROVENANCE_KEY = "_p";
 
   private static final Logger LOGGER = LoggerFactory.getLogger(MapDataToGraph.class);
+  private static final long DEFAULT_FILTER_CAPACITY = 1_000_000L;
+  private static final long DEFAULT_COMMIT_INTERVAL = 10;
+  private static final long SHUTDOWN_TIMEOUT = 30_000L;
 
   public static void main(String[] args){
     //Configure command line parameters and parse
     Options options = new Options();
 
     options.addOption(createRequiredOption("c", "config", true, "Mapping configuration file"));
-    options.addOption(createRequiredOption("d", "data", true, "Input file, or JDBC connection string if format is SQL, or Elasticsearch URL if the format is ES"));
+    options.addOption(createRequiredOption("d", "data", true, "Input file, directory or glob, or JDBC connection string if format is SQL, or Elasticsearch URL if the format is ES"));
     options.addOption(createRequiredOption("g", "graph", true, "Tinkerpop graph configuration file (for output)"));
 
-    options.addOption("f", "format", true, "Input data format (CSV, TSV, JSON, JSONL, SQL, XML, REGEX, ES) [default CSV]");
+    options.addOption("f", "format", true, "Input data format " + DataSourceProviders.getFormats() + " [default CSV]");
     options.addOption("h", "headers", false, "CSV file has headers [default false]");
     options.addOption("t", "table", true, "Table name (required if format is SQL), or comma-separated indices (if the format is ES)");
     options.addOption("q", "query", true, "SQL query to execute (overrides table), or RegEx pattern, or Elasticsearch query");
     options.addOption("e", "element", true, "Element name (required if format is XML)");
+    options.addOption("l", "layout", true, "Layout file describing the fields (required if format is FIXED)");
     options.addOption("i", "ignorecase", false, "Ignore case in regular expressions [default false]");
     options.addOption("u", "username", true, "Username for SQL connections");   //TODO: Move this into a configuration file?
     options.addOption("p", "password", true, "Password for SQL connections");   //TODO: Move this into a configuration file?
     options.addOption("prov", true, "Provenance key to add to all data");
     options.addOption("a", "flatten", false, "Flatten data from nested format");
+    options.addOption("x", "index", true, "Identifier index file, which is memory-mapped and reused between runs");
+    options.addOption("s", "sidecar", false, "Persist the identifier index alongside a file-backed TinkerGraph, and reuse it if the graph hasn't changed");
+    options.addOption("bloom", true, "Memory budget in MB for a Bloom filter of identifiers, used to skip lookups for new vertices");
+    options.addOption("bloomfpr", true, "Target false positive rate for the Bloom filter [default 0.01]");
+    options.addOption(null, "sorted-by", true, "Field that the input data is sorted or grouped by, so vertices identified by it don't need to be looked up in the graph");
+    options.addOption("dictionary", true, "Maximum number of distinct property values to hold in a dictionary, so that repeated values share a single instance in the graph");
+    options.addOption("edgespill", true, "File to spill the set of unique edges to, rather than holding it in memory");
+    options.addOption("mmap", false, "Memory-map CSV and TSV files, which must be UTF-8 encoded, and only decode the fields that are used [default false]");
+    options.addOption("parallel", true, "Number of threads to read data with (e.g. to parse memory-mapped CSV and TSV files, or decompress BGZF files), or auto to choose based on the size of the data");
+    options.addOption("prefetch", true, "Number of batches of records to read ahead from the data source on a background thread");
+    options.addOption(null, "prefetch-batch", true, "Number of records in each batch read ahead [default " + PrefetchingDataSource.DEFAULT_BATCH_SIZE + "]");
+    options.addOption("schema", true, "Schema file giving the type of each CSV or TSV column, or infer to infer the types from the start of the file and cache them beside it");
+    options.addOption("readers", true, "Number of files to read concurrently, if the input is a directory or glob [default " + FileDataSourceProvider.DEFAULT_READERS + "]");
+    options.addOption("unordered", false, "Process records from parallel parsing in the order they are parsed, rather than the order in the file [default false]");
+    options.addOption(null, "follow", false, "Keep reading a JSONL, CSV or TSV file as it grows, like tail -F, until stopped [default false]");
+    options.addOption(null, "follow-timeout", true, "Number of seconds without new data after which to stop following the file [default never]");
+    options.addOption(null, "commit-interval", true, "Number of seconds between commits to the graph [default " + DEFAULT_COMMIT_INTERVAL + " if following a file or checkpointing, otherwise only commit at the end]");
+    options.addOption(null, "checkpoint", true, "File to record the position in the data source to, each time the graph is committed, so that the load can be resumed");
+    options.addOption(null, "resume", false, "Resume the load from the checkpoint file, if it exists [default false]");
+    options.addOption(null, "key", true, "Unique column (if the format is SQL) or field (if the format is ES) to read records in order of, so that the load can be resumed after the last key read");
+    options.addOption(null, "watermark", true, "Column (if the format is SQL) or field (if the format is ES) that increases when a record changes (e.g. the time it was updated), so that only records that have changed since the last load are read and upserted into the graph");
+    options.addOption(null, "state", true, "File to record the highest watermark loaded by this job in (required if watermark is given)");
     CommandLine cmd = parseCommandLine(options, args);
 
     if(cmd == null)
@@ -85,6 +119,15 @@ public class MapDataToGraph {
       return;
     }
 
+    //Load checkpoint to resume from
+    Checkpoint checkpoint;
+    try {
+      checkpoint = loadCheckpoint(cmd);
+    }catch (IOException ioe){
+      LOGGER.error("Unable to resume from checkpoint", ioe);
+      return;
+    }
+
     //Connect to graph
     LOGGER.info("Connecting to graph");
     Graph g;
@@ -96,18 +139,52 @@ public class MapDataToGraph {
     }
 
     //Connect to data source
-    DataSource dataSource = getDataSource(cmd);
+    DataSource dataSource = getDataSource(cmd, conf, checkpoint);
+    if(dataSource != null && getCheckpointFile(cmd) != null && !isRepeatable(cmd, dataSource))
+      dataSource = null;
+
+    //Reading ahead would move the position of the data source past the records that have been added to the graph
+    boolean positioned = dataSource instanceof FollowingDataSource || (dataSource instanceof Checkpointable && getCheckpointFile(cmd) != null);
+    if(positioned && cmd.hasOption("prefetch")) {
+      LOGGER.warn("Records can't be read ahead whilst following a file or checkpointing its position, so prefetch will be ignored");
+    }else if(dataSource != null && cmd.hasOption("prefetch")) {
+      dataSource = createPrefetchingDataSource(cmd, dataSource);
+    }
 
     Map<String, Object> auditData = getAuditData(cmd);
 
     //Load data into graph
     LOGGER.info("Beginning load of data into graph");
     Grapher grapher = new Grapher(conf);
+
+    File graphFile = getGraphFile(cmd);
+    IdentifierIndex identifierIndex = openIdentifierIndex(cmd, graphFile, g, grapher);
+
+    //The graph is indexed even if the identifier index is complete, as _merge vertices are still looked up in the graph
     grapher.addIndex(g);
 
+    //Records read from a watermark may have been loaded before, so update the existing graph
+    if(cmd.hasOption("watermark"))
+      grapher.setUpsert(true);
+
+    ScalableBloomFilter identifierFilter = createIdentifierFilter(cmd, g, grapher);
+    EdgeSet edgeSet = createEdgeSet(cmd, conf, g, grapher);
+
+    if(cmd.hasOption("sorted-by"))
+      grapher.setSortedBy(cmd.getOptionValue("sorted-by"));
+
+    ValueDictionary valueDictionary = createValueDictionary(cmd, grapher);
+
     boolean flatten = cmd.hasOption('a');
 
     long count = 0;
+    if(dataSource != null && checkpoint != null && !cmd.hasOption("watermark"))
+      count = resume(dataSource, checkpoint);
+
+    Committer committer = createCommitter(cmd, g, dataSource, checkpoint, count);
+    if(dataSource instanceof FollowingDataSource)
+      followUntilStopped((FollowingDataSource) dataSource, committer);
+
     if(dataSource != null){
       while(dataSource.hasNext()){
         count++;
@@ -118,10 +195,19 @@ public class MapDataToGraph {
 
         if (conf.matchesFilters(data))
           grapher.addDataToGraph(data, g, auditData, flatten);
+
+        if(committer != null)
+          committer.recordRead();
       }
     }
     LOGGER.info("Done loading data into graph - {} data records loaded", count);
 
+    if(identifierFilter != null)
+      LOGGER.info("Identifier filter: {}", identifierFilter);
+
+    if(valueDictionary != null)
+      LOGGER.info("Value dictionary: {}", valueDictionary);
+
     //Disconnect from data source
     LOGGER.info("Disconnecting from data source");
     try{
@@ -135,6 +221,14 @@ public class MapDataToGraph {
     LOGGER.info("Disconnecting from graph");
     GraphUtils.closeGraph(g);
 
+    //Record the final checkpoint, once the graph has been persisted
+    if(committer != null)
+      committer.saveCheckpoint();
+
+    //Close identifier index, once the graph has been persisted
+    closeIdentifierIndex(identifierIndex, graphFile);
+    closeEdgeSet(edgeSet);
+
     LOGGER.info("Finished");
   }
 
@@ -159,6 +253,16 @@ public class MapDataToGraph {
         throw new ParseException("Regex pattern not specified");
       }
 
+      if(cmd.hasOption("watermark") && !cmd.hasOption("state")){
+        cmd = null;
+        throw new ParseException("State file not specified");
+      }
+
+      if(cmd.hasOption("watermark") && (cmd.hasOption("key") || cmd.hasOption("checkpoint") || cmd.hasOption("resume"))){
+        cmd = null;
+        throw new ParseException("Watermark can't be combined with key, checkpoint or resume");
+      }
+
     } catch (ParseException e) {
       printHelp(MapDataToGraph.class.getName(), "Map structured data into a graph", options);
     }
@@ -166,86 +270,382 @@ public class MapDataToGraph {
     return cmd;
   }
 
-  private static DataSource getDataSource(CommandLine cmd){
-    //Connect to data source
-    String format = "CSV";
-    if(cmd.hasOption('f'))
-      format = cmd.getOptionValue('f').toUpperCase();
+  /**
+   * Get the file to record checkpoints in, which is the state file if loading from a watermark
+   */
+  private static File getCheckpointFile(CommandLine cmd){
+    String file = cmd.hasOption("watermark") ? cmd.getOptionValue("state") : cmd.getOptionValue("checkpoint");
+    return file == null ? null : new File(file);
+  }
 
-    DataSource dataSource = null;
+  /**
+   * Load the checkpoint to resume from, or return null if the load isn't being resumed or there is no
+   * checkpoint yet. Loads from a watermark always continue from the last watermark loaded.
+   */
+  private static Checkpoint loadCheckpoint(CommandLine cmd) throws IOException {
+    if(!cmd.hasOption("resume") && !cmd.hasOption("watermark"))
+      return null;
+
+    File checkpointFile = getCheckpointFile(cmd);
+    if(checkpointFile == null)
+      throw new IOException("No checkpoint file given");
+
+    Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+    if(checkpoint == null){
+      LOGGER.info("No checkpoint found in {} - loading from the start of the data", checkpointFile);
+      return null;
+    }
 
-    LOGGER.info("Connecting to {} data source", format);
+    if(!cmd.getOptionValue('d').equals(checkpoint.getSource()))
+      throw new IOException("Checkpoint " + checkpointFile + " was taken from " + checkpoint.getSource() + ", not " + cmd.getOptionValue('d'));
+
+    if(cmd.hasOption("watermark")) {
+      LOGGER.info("Loading records with {} from {}", cmd.getOptionValue("watermark"), checkpoint.getPosition());
+    }else{
+      LOGGER.info("Resuming from checkpoint after {}", checkpoint);
+    }
+
+    return checkpoint;
+  }
+
+  private static DataSource getDataSource(CommandLine cmd, Configuration conf, Checkpoint checkpoint){
+    String format = cmd.getOptionValue('f', "CSV");
+
+    DataSourceProvider provider = DataSourceProviders.get(format);
+    if(provider == null){
+      LOGGER.error("Unsupported data format {} - supported formats are {}", format, DataSourceProviders.getFormats());
+      return null;
+    }
+
+    LOGGER.info("Connecting to {} data source", provider.getFormat());
+
+    //Pass all command line options to the provider, so that providers can define their own parameters
+    DataSourceOptions options = new DataSourceOptions(cmd.getOptionValue('d'));
+    for(Option option : cmd.getOptions())
+      options.setParameter(option.hasLongOpt() ? option.getLongOpt() : option.getOpt(), option.hasArg() ? option.getValue() : "true");
+
+    options.setOrdered(!cmd.hasOption("unordered"));
+
+    //Groups have to arrive contiguously, and changes in the order they were made, so files are read one at a time
+    if(cmd.hasOption("sorted-by") || conf.getOperationField() != null){
+      if(cmd.hasOption("unordered") || (cmd.hasOption("readers") && !"1".equals(cmd.getOptionValue("readers"))))
+        LOGGER.warn("Records must be read in order when the data is sorted or has an operation field, so unordered and readers will be ignored");
+
+      options.setOrdered(true);
+      options.setParameter(FileDataSourceProvider.READERS, "1");
+    }
+
+    if(checkpoint != null)
+      options.setCheckpoint(checkpoint.getPosition());
+
+    Set<Capability> capabilities = provider.getCapabilities();
+    if(capabilities.contains(Capability.PROJECTION)){
+      Set<String> fields = new HashSet<>(conf.getFields());
+      if(cmd.hasOption("sorted-by"))
+        fields.add(cmd.getOptionValue("sorted-by"));
+
+      LOGGER.info("Reading {} fields from data source", fields.size());
+      options.setFields(fields);
+    }
+
+    if(capabilities.contains(Capability.FILTER_PUSHDOWN))
+      options.setFilters(conf.getFilters());
+
+    if(capabilities.contains(Capability.TYPED_FIELDS))
+      options.setFieldTypes(conf.getFieldTypes());
+
+    if(cmd.hasOption("watermark") && !capabilities.contains(Capability.WATERMARK)){
+      LOGGER.error("{} data sources can't be read from a watermark", provider.getFormat());
+      return null;
+    }
+
+    try {
+      options.setParallelism(getParallelism(cmd, provider, options));
+      return provider.open(options);
+    }catch (Exception e){
+      LOGGER.error("Unable to initialise {} data source", provider.getFormat(), e);
+      return null;
+    }
+  }
+
+  /**
+   * Get the number of threads to read data with, which is chosen automatically from the estimated
+   * size of the data if the parallel option is auto
+   */
+  private static int getParallelism(CommandLine cmd, DataSourceProvider provider, DataSourceOptions options){
+    if(!cmd.hasOption("parallel"))
+      return 1;
+
+    int parallelism;
+    if(cmd.getOptionValue("parallel").equalsIgnoreCase("auto")) {
+      parallelism = DataSourceProviders.chooseParallelism(provider, options, Runtime.getRuntime().availableProcessors());
+    }else{
+      parallelism = Integer.parseInt(cmd.getOptionValue("parallel"));
+    }
+
+    LOGGER.info("Reading data with {} threads", parallelism);
+    return parallelism;
+  }
+
+  private static DataSource createPrefetchingDataSource(CommandLine cmd, DataSource dataSource){
+    try {
+      int depth = Integer.parseInt(cmd.getOptionValue("prefetch"));
+      int batchSize = Integer.parseInt(cmd.getOptionValue("prefetch-batch", String.valueOf(PrefetchingDataSource.DEFAULT_BATCH_SIZE)));
+
+      LOGGER.info("Reading ahead up to {} batches of {} records", depth, batchSize);
+      return new PrefetchingDataSource(dataSource, depth, batchSize);
+    }catch (IllegalArgumentException iae){
+      LOGGER.error("Unable to read ahead from data source - records will be read as they are needed", iae);
+      return dataSource;
+    }
+  }
+
+  /**
+   * Returns true if the data source can be resumed, either from its position or by skipping the records
+   * already read. If it can't, then the data source is closed.
+   */
+  private static boolean isRepeatable(CommandLine cmd, DataSource dataSource){
+    String reason;
+    if(dataSource instanceof SqlDataSource || dataSource instanceof ElasticDataSource){
+      //Without a key the results aren't sorted, so skipping the records already read would skip the wrong ones
+      if(cmd.hasOption("key") || cmd.hasOption("watermark"))
+        return true;
+
+      reason = "Records are only read from SQL and ES data sources in a repeatable order if a key is given";
+    }else if(dataSource instanceof Checkpointable){
+      return true;
+    }else if(dataSource instanceof MultiFileDataSource || dataSource instanceof PartitionedDataSource || cmd.hasOption("unordered")){
+      reason = "Records are read from the data source in a non-deterministic order";
+    }else{
+      return true;
+    }
+
+    LOGGER.error("{}, so the load can't be checkpointed or resumed", reason);
+
+    try{
+      dataSource.close();
+    }catch (Exception e){
+      //Do nothing
+    }
+
+    return false;
+  }
+
+  /**
+   * Continue from the checkpoint, returning the number of records that have already been read. If the
+   * data source wasn't resumed from the checkpoint's position, the records already read are skipped.
+   */
+  private static long resume(DataSource dataSource, Checkpoint checkpoint){
+    if(dataSource instanceof Checkpointable && checkpoint.getPosition() != null)
+      return checkpoint.getRecords();
+
+    LOGGER.info("Skipping {} records that have already been read", checkpoint.getRecords());
+
+    long skipped = 0;
+    while(skipped < checkpoint.getRecords() && dataSource.hasNext()){
+      dataSource.next();
+      skipped++;
+    }
+
+    return skipped;
+  }
+
+  private static Committer createCommitter(CommandLine cmd, Graph g, DataSource dataSource, Checkpoint checkpoint, long records){
+    File checkpointFile = getCheckpointFile(cmd);
+    if(!cmd.hasOption("commit-interval") && checkpointFile == null && !(dataSource instanceof FollowingDataSource))
+      return null;
+
+    long interval = DEFAULT_COMMIT_INTERVAL;
+    try {
+      if(cmd.hasOption("commit-interval"))
+        interval = Long.parseLong(cmd.getOptionValue("commit-interval"));
+    }catch (NumberFormatException nfe){
+      LOGGER.error("Invalid commit interval {} - using {} seconds", cmd.getOptionValue("commit-interval"), interval, nfe);
+    }
+
+    if(!g.features().graph().supportsTransactions())
+      LOGGER.warn("Graph doesn't support transactions, so records (and checkpoints) will only be persisted when the graph is closed");
+
+    LOGGER.info("Committing to graph every {} seconds", interval);
+    Committer committer = new Committer(g, interval * 1000, records);
+
+    if(checkpointFile != null)
+      committer.setCheckpoint(checkpointFile, cmd.getOptionValue('d'), dataSource,
+          checkpoint == null ? null : checkpoint.getPosition());
+
+    return committer;
+  }
+
+  /**
+   * Commit whenever the data source is waiting for new data, and stop following the file on shutdown
+   * (e.g. Ctrl+C), giving the load time to finish so that the graph is closed cleanly
+   */
+  private static void followUntilStopped(FollowingDataSource dataSource, Committer committer){
+    dataSource.setIdleListener(committer::commit);
+
+    Thread mainThread = Thread.currentThread();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      LOGGER.info("Stopping following file");
+      dataSource.stop();
 
-    if(format.equals("JSON")) {
-      try {
-        dataSource = new JsonDataSource(cmd.getOptionValue('d'));
-      } catch (IOException ioe) {
-        LOGGER.error("Unable to initialise JSON data source", ioe);
-      }
-    }else if(format.equals("JSONL")){
       try {
-        dataSource = new JsonLinesDataSource(cmd.getOptionValue('d'));
-      }catch (IOException ioe){
-        LOGGER.error("Unable to initialise JSON Lines data source", ioe);
+        mainThread.join(SHUTDOWN_TIMEOUT);
+      }catch (InterruptedException ie){
+        Thread.currentThread().interrupt();
       }
-    }else if(format.equals("CSV")){
-      try {
-        dataSource = new CsvDataSource(',', cmd.getOptionValue('d'), cmd.hasOption('h'));
-      }catch (IOException ioe){
-        LOGGER.error("Unable to initialise CSV data source", ioe);
+    }));
+  }
+
+  private static File getGraphFile(CommandLine cmd){
+    if(!cmd.hasOption('s'))
+      return null;
+
+    File graphFile = null;
+    try {
+      graphFile = IndexSidecar.getGraphFile(cmd.getOptionValue('g'));
+    }catch (IOException ioe){
+      LOGGER.error("Unable to read graph configuration {}", cmd.getOptionValue('g'), ioe);
+    }
+
+    if(graphFile == null)
+      LOGGER.warn("Sidecar identifier index is only supported for file-backed TinkerGraphs");
+
+    return graphFile;
+  }
+
+  private static IdentifierIndex openIdentifierIndex(CommandLine cmd, File graphFile, Graph g, Grapher grapher){
+    File indexFile;
+    if(cmd.hasOption('x')){
+      indexFile = new File(cmd.getOptionValue('x'));
+    }else if(graphFile != null){
+      indexFile = IndexSidecar.getSidecarFile(graphFile);
+    }else{
+      return null;
+    }
+
+    IdentifierIndex identifierIndex;
+    try {
+      identifierIndex = new IdentifierIndex(indexFile);
+    }catch (IOException ioe){
+      LOGGER.error("Unable to open identifier index {} - continuing without it", indexFile, ioe);
+      return null;
+    }
+    grapher.setIdentifierIndex(identifierIndex);
+
+    if(graphFile == null){
+      //Can't validate the index against the graph, so only use it as a cache
+      identifierIndex.setComplete(false);
+      LOGGER.info("Opened identifier index {} containing {} entries", indexFile, identifierIndex.size());
+      return identifierIndex;
+    }
+
+    try {
+      long checksum = IndexSidecar.checksum(graphFile);
+      if(IndexSidecar.isValid(identifierIndex, checksum)){
+        LOGGER.info("Reusing identifier index {} containing {} entries", indexFile, identifierIndex.size());
+      }else{
+        LOGGER.info("Identifier index {} doesn't match graph {} - rebuilding", indexFile, graphFile);
+        grapher.rebuildIdentifierIndex(g);
       }
-    }else if(format.equals("TSV")){
+
+      //Invalidate the checksum until the graph has been persisted, in case this run doesn't complete
+      identifierIndex.setGraphChecksum(0L);
+      identifierIndex.force();
+    }catch (IOException ioe){
+      LOGGER.error("Unable to validate identifier index {} - it will only be used as a cache", indexFile, ioe);
+      identifierIndex.setComplete(false);
+    }
+
+    return identifierIndex;
+  }
+
+  private static ScalableBloomFilter createIdentifierFilter(CommandLine cmd, Graph g, Grapher grapher){
+    if(!cmd.hasOption("bloom"))
+      return null;
+
+    ScalableBloomFilter identifierFilter;
+    try {
+      long maxBytes = (long) (Double.parseDouble(cmd.getOptionValue("bloom")) * 1024 * 1024);
+      double fpr = Double.parseDouble(cmd.getOptionValue("bloomfpr", "0.01"));
+
+      identifierFilter = new ScalableBloomFilter(DEFAULT_FILTER_CAPACITY, fpr, maxBytes);
+    }catch (IllegalArgumentException iae){
+      LOGGER.error("Invalid Bloom filter configuration - continuing without it", iae);
+      return null;
+    }
+
+    grapher.setIdentifierFilter(identifierFilter);
+    grapher.rebuildIdentifierFilter(g);
+
+    return identifierFilter;
+  }
+
+  private static ValueDictionary createValueDictionary(CommandLine cmd, Grapher grapher){
+    if(!cmd.hasOption("dictionary"))
+      return null;
+
+    ValueDictionary valueDictionary;
+    try {
+      valueDictionary = new ValueDictionary(Integer.parseInt(cmd.getOptionValue("dictionary")));
+    }catch (NumberFormatException nfe){
+      LOGGER.error("Invalid dictionary size {} - continuing without it", cmd.getOptionValue("dictionary"), nfe);
+      return null;
+    }
+
+    grapher.setValueDictionary(valueDictionary);
+    return valueDictionary;
+  }
+
+  private static EdgeSet createEdgeSet(CommandLine cmd, Configuration conf, Graph g, Grapher grapher){
+    boolean unique = false;
+    for(EdgeMap em : conf.getEdges())
+      unique |= em.getUnique();
+
+    if(!unique)
+      return null;
+
+    EdgeSet edgeSet;
+    if(cmd.hasOption("edgespill")){
       try {
-        dataSource = new CsvDataSource('\t', cmd.getOptionValue('d'), cmd.hasOption('h'));
+        edgeSet = new EdgeSet(new File(cmd.getOptionValue("edgespill")));
       }catch (IOException ioe){
-        LOGGER.error("Unable to initialise TSV data source", ioe);
+        LOGGER.error("Unable to create edge set file {} - unique edges will be checked against the graph", cmd.getOptionValue("edgespill"), ioe);
+        return null;
       }
-    }else if(format.equals("SQL")){
-      try {
-        if(cmd.hasOption('q'))
-          LOGGER.info("Filtering data with query: {}", cmd.getOptionValue('q'));
-        dataSource = new SqlDataSource(cmd.getOptionValue('d'), cmd.getOptionValue('t'), cmd.getOptionValue('u'), cmd.getOptionValue('p'), cmd.getOptionValue('q'));
-      }catch (SQLException ioe){
-        LOGGER.error("Unable to initialise SQL data source", ioe);
-      }
-    }else if(format.equals("XML")){
-      try {
-        dataSource = new XmlDataSource(cmd.getOptionValue('d'), cmd.getOptionValue('e'));
-      }catch (IOException | XMLStreamException e){
-        LOGGER.error("Unable to initialise XML data source", e);
-      }
-    }else if(format.equals("REGEX")){
-      try {
-        if(cmd.hasOption('i')) {
-          dataSource = new RegexDataSource(new File(cmd.getOptionValue('d')), Pattern
-              .compile(cmd.getOptionValue('q'), Pattern.CASE_INSENSITIVE));
-        }else{
-          dataSource = new RegexDataSource(new File(cmd.getOptionValue('d')), Pattern.compile(cmd.getOptionValue('q')));
-        }
-      }catch (IOException e){
-        LOGGER.error("Unable to initialise RegEx data source", e);
-      }
-    }else if(format.equals("ES")){
-      HttpHost httpHost = HttpHost.create(cmd.getOptionValue('d'));
-
-      SearchRequest searchRequest = new SearchRequest();
-      SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-      if(cmd.hasOption('q')){
-        searchSourceBuilder.query(QueryBuilders.wrapperQuery(cmd.getOptionValue('q')));
-      }else {
-        searchSourceBuilder.query(QueryBuilders.matchAllQuery());
-      }
-      searchRequest.source(searchSourceBuilder);
+    }else{
+      edgeSet = new EdgeSet();
+    }
 
-      if(cmd.hasOption('t')){
-        String[] indices = cmd.getOptionValue('t').split(",");
-        searchRequest.indices(indices);
-      }
+    grapher.setEdgeSet(edgeSet);
+    grapher.rebuildEdgeSet(g);
+
+    return edgeSet;
+  }
+
+  private static void closeEdgeSet(EdgeSet edgeSet){
+    if(edgeSet == null)
+      return;
 
-      dataSource = new ElasticDataSource(httpHost, cmd.getOptionValue('u'), cmd.getOptionValue('p'), searchRequest);
+    try{
+      edgeSet.close();
+    }catch (IOException ioe){
+      LOGGER.warn("Error occurred whilst closing edge set", ioe);
     }
+  }
 
-    return dataSource;
+  private static void closeIdentifierIndex(IdentifierIndex identifierIndex, File graphFile){
+    if(identifierIndex == null)
+      return;
+
+    LOGGER.info("Closing identifier index");
+    try{
+      if(graphFile != null && identifierIndex.isComplete())
+        identifierIndex.setGraphChecksum(IndexSidecar.checksum(graphFile));
+
+      identifierIndex.close();
+    }catch (IOException ioe){
+      LOGGER.error("Error occurred whilst closing identifier index - index may not have persisted correctly", ioe);
+    }
   }
 
   private static Map<String, Object> getAuditData(CommandLine cmd){
@@ -259,4 +659,79 @@ public class MapDataToGraph {
 
     return auditData;
   }
-}
\ No newline at end of file
+
+  /**
+   * Commits records read from the data source to the graph, once the commit interval has passed since
+   * the last commit, and records a checkpoint after each commit if the graph supports transactions
+   */
+  private static class Committer {
+    private final Graph graph;
+    private final long interval;
+    private final boolean transactional;
+
+    private File checkpointFile = null;
+    private String source = null;
+    private DataSource dataSource = null;
+    private String position = null;
+
+    private long lastCommit = System.currentTimeMillis();
+    private long records;
+    private long uncommitted = 0;
+
+    Committer(Graph graph, long interval, long records){
+      this.graph = graph;
+      this.interval = interval;
+      this.records = records;
+      this.transactional = graph.features().graph().supportsTransactions();
+    }
+
+    /**
+     * Record checkpoints for the data source in checkpointFile, starting from the position it was resumed from
+     */
+    void setCheckpoint(File checkpointFile, String source, DataSource dataSource, String position){
+      this.checkpointFile = checkpointFile;
+      this.source = source;
+      this.dataSource = dataSource;
+      this.position = position;
+    }
+
+    void recordRead(){
+      records++;
+      uncommitted++;
+      if(System.currentTimeMillis() - lastCommit >= interval)
+        commit();
+    }
+
+    void commit(){
+      if(uncommitted > 0) {
+        GraphUtils.commitGraph(graph);
+        LOGGER.info("Committed {} records to graph", uncommitted);
+
+        if(transactional)
+          saveCheckpoint();
+      }
+
+      uncommitted = 0;
+      lastCommit = System.currentTimeMillis();
+    }
+
+    /**
+     * Record the position after the last record read, which must have been committed
+     */
+    void saveCheckpoint(){
+      if(checkpointFile == null)
+        return;
+
+      if(dataSource instanceof Checkpointable && ((Checkpointable) dataSource).getCheckpoint() != null)
+        position = ((Checkpointable) dataSource).getCheckpoint();
+
+      Checkpoint checkpoint = new Checkpoint(source, position, records);
+      try {
+        checkpoint.save(checkpointFile);
+        LOGGER.debug("Recorded checkpoint after {}", checkpoint);
+      }catch (IOException ioe){
+        LOGGER.error("Unable to record checkpoint in {}", checkpointFile, ioe);
+      }
+    }
+  }
+}
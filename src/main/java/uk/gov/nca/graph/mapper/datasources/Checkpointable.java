@@ -0,0 +1,33 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+/**
+ * A data source that can report its position, so that reading can be resumed from it later.
+ *
+ * The provider of a data source that implements this must resume it from the position given by
+ * {@link DataSourceOptions#getCheckpoint()}, if one is set, so that the records returned are those that
+ * followed the position when it was taken.
+ */
+public interface Checkpointable {
+    /**
+     * Get the position after the last record returned by next(), or null if the position can't be given
+     * (e.g. because no key has been configured), in which case the data source can only be resumed by
+     * skipping the records already read
+     */
+    String getCheckpoint();
+}
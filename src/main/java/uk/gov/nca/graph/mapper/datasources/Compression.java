@@ -0,0 +1,104 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compression formats supported for input files, which are detected from the magic bytes at the
+ * start of the file
+ */
+public enum Compression {
+    NONE(""),
+    GZIP(".gz"),
+    BZIP2(".bz2");
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Compression.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String extension;
+
+    Compression(String extension){
+        this.extension = extension;
+    }
+
+    /**
+     * The file extension usually used for this format
+     */
+    public String getExtension(){
+        return extension;
+    }
+
+    /**
+     * Detect the compression format of a file from its magic bytes. If the file extension
+     * suggests a different format, a warning is logged and the magic bytes are used.
+     */
+    public static Compression detect(File file) throws IOException {
+        byte[] header = new byte[3];
+        int read;
+        try(InputStream in = new FileInputStream(file)){
+            read = in.read(header);
+        }
+
+        Compression compression = NONE;
+        if(read >= 2 && (header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B){
+            compression = GZIP;
+        }else if(read >= 3 && header[0] == 'B' && header[1] == 'Z' && header[2] == 'h'){
+            compression = BZIP2;
+        }
+
+        for(Compression c : values()){
+            if(c != NONE && c != compression && file.getName().toLowerCase().endsWith(c.extension))
+                LOGGER.warn("File {} has extension {} but isn't {} compressed", file, c.extension, c);
+        }
+
+        return compression;
+    }
+
+    /**
+     * Open a stream of the decompressed contents of the file. If the file is gzip compressed in
+     * the blocked (BGZF) format, and more than one thread is given, then blocks are decompressed
+     * in parallel.
+     */
+    public InputStream open(File file, int threads) throws IOException {
+        if(this == GZIP && threads > 1 && ParallelGzipInputStream.isBlocked(file))
+            return new ParallelGzipInputStream(file, threads);
+
+        InputStream in = new FileInputStream(file);
+        try {
+            switch (this) {
+                case GZIP:
+                    return new GZIPInputStream(in, BUFFER_SIZE);
+                case BZIP2:
+                    return new BZip2CompressorInputStream(new BufferedInputStream(in, BUFFER_SIZE), true);
+                default:
+                    return in;
+            }
+        }catch (IOException ioe){
+            in.close();
+            throw ioe;
+        }
+    }
+}
@@ -49,15 +49,7 @@ public class CsvDataSource implements DataSource {
     }
 
     public CsvDataSource(char separator, Reader sourceReader, boolean header) throws IOException{
-        ICSVParser parser;
-        if(separator == ',') {
-            parser = new RFC4180Parser();
-        }else{
-            parser = new CSVParserBuilder()
-                .withEscapeChar(CSVParser.DEFAULT_ESCAPE_CHARACTER)
-                .withQuoteChar(CSVParser.DEFAULT_QUOTE_CHARACTER)
-                .withSeparator(separator).build();
-        }
+        ICSVParser parser = createParser(separator);
         CSVReader reader = null;
 
         try {
@@ -99,6 +91,53 @@ public class CsvDataSource implements DataSource {
         if(line == null)
             throw new NoSuchElementException();
 
+        return toRecord(colTitles, line);
+    }
+
+    /**
+     * Create a parser for lines of a {@link FollowingDataSource}. Records must be on a single line,
+     * and if header is true then the first line of the file (which is read again if the file is
+     * rotated or truncated) is used as the column titles.
+     */
+    public static FollowingDataSource.LineParser lineParser(char separator, boolean header){
+        ICSVParser parser = createParser(separator);
+
+        return new FollowingDataSource.LineParser() {
+            private String[] titles = header ? null : new String[0];
+
+            @Override
+            public void reset() {
+                titles = header ? null : new String[0];
+            }
+
+            @Override
+            public Map<String, Object> parse(String line) throws IOException {
+                if(titles == null){
+                    titles = parser.parseLine(line);
+                    return null;
+                }
+
+                if(line.isEmpty())
+                    return null;
+
+                return toRecord(titles, parser.parseLine(line));
+            }
+        };
+    }
+
+    static ICSVParser createParser(char separator){
+        if(separator == ',')
+            return new RFC4180Parser();
+
+        return new CSVParserBuilder()
+            .withEscapeChar(CSVParser.DEFAULT_ESCAPE_CHARACTER)
+            .withQuoteChar(CSVParser.DEFAULT_QUOTE_CHARACTER)
+            .withSeparator(separator).build();
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private static Map<String, Object> toRecord(String[] colTitles, String[] line){
         Map<String, Object> data = new HashMap<>();
 
         Integer count = 0;
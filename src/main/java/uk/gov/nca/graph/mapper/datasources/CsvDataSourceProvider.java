@@ -0,0 +1,126 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provider for {@link CsvDataSource}, or {@link MappedCsvDataSource} and {@link ParallelCsvDataSource}
+ * if the mmap parameter is set or more than one thread is available.
+ *
+ * If the schema parameter is set, either to a schema file or to infer, columns that the mapping converts
+ * to a type their values fit are converted as they are read (see {@link CsvSchema}).
+ */
+public class CsvDataSourceProvider extends FileDataSourceProvider {
+    public static final String HEADERS = "headers";
+    public static final String MMAP = "mmap";
+    public static final String SCHEMA = "schema";
+    public static final String INFER = "infer";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CsvDataSourceProvider.class);
+
+    private final String format;
+    private final char separator;
+
+    public CsvDataSourceProvider(){
+        this("CSV", ',');
+    }
+
+    protected CsvDataSourceProvider(String format, char separator){
+        this.format = format;
+        this.separator = separator;
+    }
+
+    @Override
+    public String getFormat() {
+        return format;
+    }
+
+    @Override
+    public Set<Capability> getCapabilities() {
+        return EnumSet.of(Capability.SPLITTABLE, Capability.TYPED_FIELDS);
+    }
+
+    @Override
+    protected DataSource open(File file, DataSourceOptions options) throws Exception {
+        boolean header = Boolean.parseBoolean(options.getParameter(HEADERS));
+        CsvSchema schema = getSchema(file, header, options);
+
+        DataSource dataSource;
+        if(options.getParallelism() > 1) {
+            LOGGER.info("Parsing file {} with {} threads", file, options.getParallelism());
+            return new ParallelCsvDataSource(separator, file, header, options.getParallelism(), options.isOrdered(),
+                ParallelCsvDataSource.DEFAULT_CHUNK_SIZE, schema);
+        }else if(Boolean.parseBoolean(options.getParameter(MMAP))) {
+            dataSource = new MappedCsvDataSource(separator, file.getPath(), header);
+        }else{
+            dataSource = new CsvDataSource(separator, file.getPath(), header);
+        }
+
+        return schema == null ? dataSource : new TypedDataSource(dataSource, schema);
+    }
+
+    @Override
+    protected DataSource open(InputStream stream, DataSourceOptions options) throws Exception {
+        if(options.getParallelism() > 1 || Boolean.parseBoolean(options.getParameter(MMAP)))
+            LOGGER.warn("Compressed files can't be memory-mapped, so will be parsed on a single thread");
+
+        DataSource dataSource = new CsvDataSource(separator, stream, Boolean.parseBoolean(options.getParameter(HEADERS)));
+        CsvSchema schema = getSchema(null, false, options);
+
+        return schema == null ? dataSource : new TypedDataSource(dataSource, schema);
+    }
+
+    @Override
+    protected FollowingDataSource.LineParser getLineParser(DataSourceOptions options) {
+        return CsvDataSource.lineParser(separator, Boolean.parseBoolean(options.getParameter(HEADERS)));
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    /**
+     * Get the schema restricted to the fields typed by the mapping, or null if no fields should be typed.
+     * Schemas can't be inferred for compressed files (where file is null).
+     */
+    private CsvSchema getSchema(File file, boolean header, DataSourceOptions options) throws IOException {
+        String location = options.getParameter(SCHEMA);
+        if(location == null || options.getFieldTypes().isEmpty())
+            return null;
+
+        CsvSchema schema;
+        if(!location.equalsIgnoreCase(INFER)){
+            schema = CsvSchema.load(new File(location));
+        }else if(file != null){
+            schema = CsvSchema.loadOrInfer(separator, file, header, CsvSchema.DEFAULT_SAMPLE_SIZE);
+        }else{
+            LOGGER.warn("Schemas can't be inferred for compressed files, so values will be converted by the mapping");
+            return null;
+        }
+
+        schema = schema.restrict(options.getFieldTypes());
+        if(schema.isEmpty())
+            return null;
+
+        LOGGER.info("Converting columns as they are read: {}", schema);
+        return schema;
+    }
+}
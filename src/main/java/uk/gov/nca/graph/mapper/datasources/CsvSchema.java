@@ -0,0 +1,329 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import uk.gov.nca.graph.mapper.mapping.DataType;
+import uk.gov.nca.graph.mapper.mapping.DataTypeUtils;
+
+/**
+ * The data type of each column in a CSV or TSV file, which can be inferred from a sample of the file,
+ * or loaded from a YAML file of the form:
+ *
+ * <pre>
+ * columns:
+ *   name: STRING
+ *   age: INTEGER
+ * </pre>
+ *
+ * Columns are named by their title if the file has headers, and by their one-based column number.
+ * Inferred schemas are cached beside the file, along with the size and modification time of the file,
+ * and are reused as long as the file hasn't changed.
+ */
+public class CsvSchema {
+    public static final String CACHE_SUFFIX = ".schema.yml";
+    public static final int DEFAULT_SAMPLE_SIZE = 1000;
+
+    private static final String COLUMNS = "columns";
+    private static final String SIZE = "size";
+    private static final String MODIFIED = "modified";
+
+    //Types that can be inferred, in the order they are preferred
+    private static final List<DataType> CANDIDATES = Collections.unmodifiableList(Arrays.asList(DataType.BOOLEAN,
+        DataType.INTEGER, DataType.LONG, DataType.DOUBLE, DataType.DATE, DataType.DATETIME, DataType.TIME));
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CsvSchema.class);
+
+    private final Map<String, DataType> types;
+
+    public CsvSchema(Map<String, DataType> types){
+        this.types = new LinkedHashMap<>(types);
+    }
+
+    /**
+     * Get the type of each column that has one
+     */
+    public Map<String, DataType> getTypes() {
+        return types;
+    }
+
+    public boolean isEmpty() {
+        return types.isEmpty();
+    }
+
+    /**
+     * Infer the type of each column from the first sampleSize records of the file.
+     * A column is given the first type that all of its non-empty values can be converted to,
+     * and columns where no type fits, or that are always empty, are left out.
+     */
+    public static CsvSchema infer(char separator, File file, boolean header, int sampleSize) throws IOException {
+        List<String> titles = new ArrayList<>();
+        List<Set<DataType>> candidates = new ArrayList<>();
+        List<Boolean> seen = new ArrayList<>();
+
+        int count = 0;
+        try(CSVReader reader = createReader(separator, new FileReader(file))){
+            if(header) {
+                String[] line = reader.readNext();
+                if(line != null) {
+                    for(String title : line)
+                        titles.add(title);
+                }
+            }
+
+            String[] line;
+            while(count < sampleSize && (line = reader.readNext()) != null){
+                count++;
+                for(int i = 0; i < line.length; i++){
+                    if(i >= candidates.size()){
+                        candidates.add(EnumSet.copyOf(CANDIDATES));
+                        seen.add(false);
+                    }
+
+                    String value = line[i];
+                    if(value == null || value.isEmpty())
+                        continue;
+
+                    seen.set(i, true);
+                    candidates.get(i).removeIf(dataType -> !matches(value, dataType));
+                }
+            }
+        }
+
+        Map<String, DataType> types = new LinkedHashMap<>();
+        for(int i = 0; i < candidates.size(); i++){
+            if(!seen.get(i) || candidates.get(i).isEmpty())
+                continue;
+
+            DataType dataType = CANDIDATES.stream().filter(candidates.get(i)::contains).findFirst().get();
+            if(i < titles.size())
+                types.put(titles.get(i), dataType);
+
+            types.put(Integer.toString(i + 1), dataType);
+        }
+
+        LOGGER.info("Inferred types of {} of {} columns from {} records of {}", types.size(), candidates.size(), count, file);
+        return new CsvSchema(types);
+    }
+
+    /**
+     * Load a cached schema from beside the file if one exists and the file hasn't changed since it
+     * was cached, otherwise infer the schema and cache it
+     */
+    public static CsvSchema loadOrInfer(char separator, File file, boolean header, int sampleSize) throws IOException {
+        File cache = new File(file.getPath() + CACHE_SUFFIX);
+        if(cache.exists()){
+            Map<String, Object> yaml = readYaml(cache);
+            if(Long.valueOf(file.length()).equals(toLong(yaml.get(SIZE)))
+                && Long.valueOf(file.lastModified()).equals(toLong(yaml.get(MODIFIED)))){
+                LOGGER.info("Using cached schema {}", cache);
+                return fromYaml(yaml, cache);
+            }
+
+            LOGGER.info("File {} has changed since schema was cached - schema will be inferred again", file);
+        }
+
+        CsvSchema schema = infer(separator, file, header, sampleSize);
+        try {
+            schema.save(cache, file);
+        }catch (IOException ioe){
+            LOGGER.warn("Unable to cache schema in {}", cache, ioe);
+        }
+
+        return schema;
+    }
+
+    /**
+     * Load a schema from a YAML file
+     */
+    public static CsvSchema load(File file) throws IOException {
+        return fromYaml(readYaml(file), file);
+    }
+
+    /**
+     * Save the schema to a YAML file, along with the size and modification time of the data file
+     * if one is given. The schema is written to a temporary file first, so that a partially written
+     * schema is never read.
+     */
+    public void save(File file, File dataFile) throws IOException {
+        Map<String, Object> yaml = new LinkedHashMap<>();
+        if(dataFile != null){
+            yaml.put(SIZE, dataFile.length());
+            yaml.put(MODIFIED, dataFile.lastModified());
+        }
+
+        Map<String, String> columns = new LinkedHashMap<>();
+        types.forEach((column, dataType) -> columns.put(column, dataType.name()));
+        yaml.put(COLUMNS, columns);
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try(Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)){
+            new Yaml(options).dump(yaml, writer);
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Restrict the schema to the columns that are converted by the mapping to a type that all of the
+     * column's values can be converted to, and give those columns the mapping's type. For example,
+     * a column of integers that is mapped to a DOUBLE is read as a DOUBLE, but a column of doubles
+     * that is mapped to a STRING isn't typed.
+     */
+    public CsvSchema restrict(Map<String, DataType> fieldTypes){
+        Map<String, DataType> restricted = new LinkedHashMap<>();
+        for(Map.Entry<String, DataType> e : types.entrySet()){
+            DataType mapped = fieldTypes.get(e.getKey());
+            if(mapped != null && fits(e.getValue(), mapped))
+                restricted.put(e.getKey(), mapped);
+        }
+
+        return new CsvSchema(restricted);
+    }
+
+    /**
+     * Convert the typed columns of the record, leaving values that can't be converted as they are
+     * so that the mapping handles them as it would otherwise. The record is modified and returned.
+     */
+    public Map<String, Object> apply(Map<String, Object> record){
+        if(record instanceof MappedCsvRecord)
+            return apply((MappedCsvRecord) record);
+
+        for(Map.Entry<String, DataType> e : types.entrySet()){
+            Object value = record.get(e.getKey());
+            if(!(value instanceof String) || ((String) value).isEmpty())
+                continue;
+
+            Object converted = DataTypeUtils.tryConvert(value, e.getValue());
+            if(converted != null)
+                record.put(e.getKey(), converted);
+        }
+
+        return record;
+    }
+
+    @Override
+    public String toString() {
+        return types.toString();
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    /**
+     * Convert the typed columns of a mapped record in place, by field index, so that the other fields
+     * aren't decoded and each column is only converted once even though it is typed under its title and number
+     */
+    private MappedCsvRecord apply(MappedCsvRecord record){
+        boolean[] seen = new boolean[record.getFieldCount()];
+        for(Map.Entry<String, DataType> e : types.entrySet()){
+            int index = record.indexOf(e.getKey());
+            if(index < 0 || seen[index])
+                continue;
+
+            seen[index] = true;
+            Object value = record.getValue(index);
+            if(!(value instanceof String) || ((String) value).isEmpty())
+                continue;
+
+            Object converted = DataTypeUtils.tryConvert(value, e.getValue());
+            if(converted != null)
+                record.setValue(index, converted);
+        }
+
+        return record;
+    }
+
+    private static CSVReader createReader(char separator, Reader reader){
+        return new CSVReaderBuilder(reader).withCSVParser(CsvDataSource.createParser(separator)).build();
+    }
+
+    private static boolean matches(String value, DataType dataType){
+        //Any string can be converted to a boolean, so only true and false are treated as booleans
+        if(dataType == DataType.BOOLEAN)
+            return value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false");
+
+        return DataTypeUtils.tryConvert(value, dataType) != null;
+    }
+
+    private static boolean fits(DataType inferred, DataType mapped){
+        if(inferred == mapped)
+            return true;
+
+        if(inferred == DataType.INTEGER)
+            return mapped == DataType.LONG || mapped == DataType.DOUBLE;
+
+        return inferred == DataType.LONG && mapped == DataType.DOUBLE;
+    }
+
+    private static Map<String, Object> readYaml(File file) throws IOException {
+        try(InputStream is = Files.newInputStream(file.toPath())){
+            Object yaml = new Yaml().load(is);
+            if(!(yaml instanceof Map))
+                throw new IOException("Schema " + file + " isn't a YAML map");
+
+            return (Map<String, Object>) yaml;
+        }catch (RuntimeException re){
+            throw new IOException("Unable to parse schema " + file, re);
+        }
+    }
+
+    private static CsvSchema fromYaml(Map<String, Object> yaml, File file) throws IOException {
+        Object columns = yaml.get(COLUMNS);
+        if(!(columns instanceof Map))
+            throw new IOException("Schema " + file + " doesn't contain a map of " + COLUMNS);
+
+        Map<String, DataType> types = new LinkedHashMap<>();
+        for(Map.Entry<?, ?> e : ((Map<?, ?>) columns).entrySet()){
+            try {
+                types.put(String.valueOf(e.getKey()), DataType.valueOf(String.valueOf(e.getValue()).toUpperCase()));
+            }catch (IllegalArgumentException iae){
+                throw new IOException("Unknown type " + e.getValue() + " for column " + e.getKey() + " in schema " + file, iae);
+            }
+        }
+
+        return new CsvSchema(types);
+    }
+
+    private static Long toLong(Object o){
+        return o instanceof Number ? ((Number) o).longValue() : null;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import uk.gov.nca.graph.mapper.mapping.DataType;
+
+/**
+ * Options used by a {@link DataSourceProvider} to create a data source
+ */
+public class DataSourceOptions {
+    private final String location;
+    private final Map<String, String> parameters = new HashMap<>();
+
+    private Set<String> fields = null;
+    private Map<String, Object> filters = Collections.emptyMap();
+    private Map<String, DataType> fieldTypes = Collections.emptyMap();
+    private int parallelism = 1;
+    private boolean ordered = true;
+    private String checkpoint = null;
+
+    /**
+     * Create options for reading the data at the given location (e.g. a file or a connection string)
+     */
+    public DataSourceOptions(String location){
+        this.location = location;
+    }
+
+    /**
+     * Create a copy of the options with a different location
+     */
+    public DataSourceOptions withLocation(String location){
+        DataSourceOptions options = new DataSourceOptions(location);
+        options.parameters.putAll(parameters);
+        options.fields = fields;
+        options.filters = filters;
+        options.fieldTypes = fieldTypes;
+        options.parallelism = parallelism;
+        options.ordered = ordered;
+        options.checkpoint = checkpoint;
+
+        return options;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * Get a format specific parameter, e.g. whether a CSV file has headers, or null if it isn't set
+     */
+    public String getParameter(String name) {
+        return parameters.get(name);
+    }
+
+    public String getParameter(String name, String defaultValue) {
+        return parameters.getOrDefault(name, defaultValue);
+    }
+
+    public boolean hasParameter(String name) {
+        return parameters.containsKey(name);
+    }
+
+    public void setParameter(String name, String value) {
+        parameters.put(name, value);
+    }
+
+    /**
+     * Get the fields that are used from the data, or null if all fields should be read
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    public void setFields(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Get the top level field of each of the given fields, or null if fields is null. Fields may have
+     * been flattened (e.g. address.city), so data sources that read nested data can only rely on the top level field.
+     */
+    public static Set<String> topLevelFields(Set<String> fields) {
+        if(fields == null)
+            return null;
+
+        return fields.stream()
+            .map(f -> f.contains(".") ? f.substring(0, f.indexOf('.')) : f)
+            .collect(Collectors.toSet());
+    }
+
+    /**
+     * Get the filters (in the same format as the mapping configuration) that records need to match
+     */
+    public Map<String, Object> getFilters() {
+        return filters;
+    }
+
+    public void setFilters(Map<String, Object> filters) {
+        this.filters = filters;
+    }
+
+    /**
+     * Get the data type that fields are converted to by the mapping, so that they can be read as that type
+     */
+    public Map<String, DataType> getFieldTypes() {
+        return fieldTypes;
+    }
+
+    public void setFieldTypes(Map<String, DataType> fieldTypes) {
+        this.fieldTypes = fieldTypes;
+    }
+
+    /**
+     * Get the number of threads to read the data with
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns true if records must be returned in the order they are stored
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * Get the position to resume reading from, as returned by {@link Checkpointable#getCheckpoint()},
+     * or null if reading from the start
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(String checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+}
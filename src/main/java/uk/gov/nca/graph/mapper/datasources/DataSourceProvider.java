@@ -0,0 +1,77 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.util.Set;
+
+/**
+ * Service provider interface for creating data sources of a given format. Providers are found with
+ * {@link java.util.ServiceLoader}, so can be added by listing them in a
+ * META-INF/services/uk.gov.nca.graph.mapper.datasources.DataSourceProvider file on the classpath.
+ *
+ * Providers declare the capabilities of their data sources, which are used to decide which options
+ * are passed to them.
+ */
+public interface DataSourceProvider {
+
+    enum Capability {
+        /**
+         * The data can be read by more than one thread, as given by {@link DataSourceOptions#getParallelism()}
+         */
+        SPLITTABLE,
+
+        /**
+         * Only the fields given by {@link DataSourceOptions#getFields()} need to be read
+         */
+        PROJECTION,
+
+        /**
+         * Records that don't match {@link DataSourceOptions#getFilters()} can be skipped when reading,
+         * although records returned by the data source are still checked against the filters
+         */
+        FILTER_PUSHDOWN,
+
+        /**
+         * Fields can be read as the type given by {@link DataSourceOptions#getFieldTypes()}, rather than
+         * as a value that the mapping needs to convert
+         */
+        TYPED_FIELDS,
+
+        /**
+         * Records can be read in order of the field given by the watermark parameter, starting from the
+         * value given by {@link DataSourceOptions#getCheckpoint()}, and the data source is {@link Checkpointable}
+         * with the watermark of the last record as its checkpoint
+         */
+        WATERMARK
+    }
+
+    /**
+     * The name of the format read by this provider, e.g. CSV
+     */
+    String getFormat();
+
+    Set<Capability> getCapabilities();
+
+    /**
+     * Estimate the size of the data in bytes, or return -1 if it isn't known
+     */
+    default long estimateSize(DataSourceOptions options) {
+        return -1;
+    }
+
+    DataSource open(DataSourceOptions options) throws Exception;
+}
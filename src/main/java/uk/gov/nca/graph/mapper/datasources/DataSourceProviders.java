@@ -0,0 +1,71 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+import uk.gov.nca.graph.mapper.datasources.DataSourceProvider.Capability;
+
+/**
+ * Utility functions for finding {@link DataSourceProvider} implementations
+ */
+public class DataSourceProviders {
+    private DataSourceProviders(){}
+
+    //Amount of data that is worth reading on a separate thread
+    public static final long MIN_PARTITION_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * Get the provider for the given format (case-insensitive), or null if there isn't one
+     */
+    public static DataSourceProvider get(String format){
+        for(DataSourceProvider provider : ServiceLoader.load(DataSourceProvider.class)){
+            if(provider.getFormat().equalsIgnoreCase(format))
+                return provider;
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the formats that there are providers for
+     */
+    public static Set<String> getFormats(){
+        Set<String> formats = new TreeSet<>();
+        for(DataSourceProvider provider : ServiceLoader.load(DataSourceProvider.class))
+            formats.add(provider.getFormat());
+
+        return formats;
+    }
+
+    /**
+     * Choose how many threads to read data with, up to maxThreads. Data that isn't splittable is read
+     * with a single thread, and otherwise a thread is used for each {@link #MIN_PARTITION_SIZE} of data
+     * (or maxThreads are used if the size of the data isn't known).
+     */
+    public static int chooseParallelism(DataSourceProvider provider, DataSourceOptions options, int maxThreads){
+        if(!provider.getCapabilities().contains(Capability.SPLITTABLE))
+            return 1;
+
+        long size = provider.estimateSize(options);
+        if(size < 0)
+            return Math.max(maxThreads, 1);
+
+        return (int) Math.max(1, Math.min(maxThreads, size / MIN_PARTITION_SIZE));
+    }
+}
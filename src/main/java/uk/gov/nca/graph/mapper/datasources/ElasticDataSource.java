@@ -38,15 +38,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Data source for reading from Elasticsearch
+ * Data source for reading from Elasticsearch. If the search request is sorted, the checkpoint is the
+ * first sort value of the last hit returned.
  */
-public class ElasticDataSource implements DataSource {
+public class ElasticDataSource implements DataSource, Checkpointable {
 
   private RestHighLevelClient client;
   private Iterator<SearchHit> searchHits;
   private String scrollId;
 
   private boolean includeIndex;
+  private boolean sorted;
+  private String lastSortValue = null;
 
   private static final TimeValue SCROLL_TIME_VALUE = TimeValue.timeValueMinutes(5);
   private static final Logger LOGGER = LoggerFactory.getLogger(ElasticDataSource.class);
@@ -83,6 +86,13 @@ public class ElasticDataSource implements DataSource {
     scrollId = searchResponse.getScrollId();
 
     this.includeIndex = includeIndex;
+    this.sorted = searchRequest.source() != null && searchRequest.source().sorts() != null
+        && !searchRequest.source().sorts().isEmpty();
+  }
+
+  @Override
+  public String getCheckpoint() {
+    return lastSortValue;
   }
 
   @Override
@@ -115,6 +125,10 @@ public class ElasticDataSource implements DataSource {
     SearchHit hit = searchHits.next();
     Map<String, Object> map = hit.getSourceAsMap();
 
+    if(sorted && hit.getSortValues().length > 0){
+      lastSortValue = String.valueOf(hit.getSortValues()[0]);
+    }
+
     if(includeIndex){
       map.put("_index", hit.getIndex());
     }
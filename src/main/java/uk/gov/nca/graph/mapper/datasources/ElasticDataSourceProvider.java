@@ -0,0 +1,184 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.mapper.Configuration;
+
+/**
+ * Provider for {@link ElasticDataSource}, where the location is the Elasticsearch URL.
+ *
+ * If more than one thread is available, the results are read as a sliced scroll, with each slice read
+ * on a separate thread. Only the top level fields that are used are retrieved, and filters are added
+ * to the query where possible.
+ *
+ * If the key parameter is set, the results are sorted by that field, which must be unique, and can be
+ * resumed from a checkpoint. If the watermark parameter is set instead, the results are sorted by that
+ * field, and only documents whose watermark is at least the checkpoint are returned. Sorted results are
+ * read as a single scroll.
+ */
+public class ElasticDataSourceProvider implements DataSourceProvider {
+    public static final String INDICES = "table";
+    public static final String QUERY = "query";
+    public static final String USERNAME = "username";
+    public static final String PASSWORD = "password";
+    public static final String KEY = "key";
+    public static final String WATERMARK = "watermark";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElasticDataSourceProvider.class);
+
+    @Override
+    public String getFormat() {
+        return "ES";
+    }
+
+    @Override
+    public Set<Capability> getCapabilities() {
+        return EnumSet.of(Capability.SPLITTABLE, Capability.PROJECTION, Capability.FILTER_PUSHDOWN, Capability.WATERMARK);
+    }
+
+    @Override
+    public DataSource open(DataSourceOptions options) {
+        HttpHost httpHost = HttpHost.create(options.getLocation());
+
+        String key = getKey(options);
+        if(options.getParallelism() > 1 && key != null)
+            LOGGER.warn("Results sorted by {} can't be read as a sliced scroll, so will be read on a single thread", key);
+
+        if(options.getParallelism() <= 1 || key != null)
+            return new ElasticDataSource(httpHost, options.getParameter(USERNAME), options.getParameter(PASSWORD), createSearchRequest(options, null));
+
+        List<PartitionedDataSource.Partition> slices = new ArrayList<>();
+        for(int i = 0; i < options.getParallelism(); i++){
+            SliceBuilder slice = new SliceBuilder(i, options.getParallelism());
+            slices.add(new PartitionedDataSource.Partition() {
+                @Override
+                public String getName() {
+                    return "slice " + slice.getId();
+                }
+
+                @Override
+                public DataSource open() {
+                    return new ElasticDataSource(httpHost, options.getParameter(USERNAME), options.getParameter(PASSWORD), createSearchRequest(options, slice));
+                }
+            });
+        }
+
+        return new PartitionedDataSource(slices, options.getParallelism());
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private static SearchRequest createSearchRequest(DataSourceOptions options, SliceBuilder slice){
+        SearchRequest searchRequest = new SearchRequest();
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+
+        QueryBuilder query;
+        if(options.hasParameter(QUERY)){
+            query = QueryBuilders.wrapperQuery(options.getParameter(QUERY));
+        }else {
+            query = QueryBuilders.matchAllQuery();
+        }
+        query = addFilters(query, options.getFilters());
+
+        String key = getKey(options);
+        if(key != null){
+            searchSourceBuilder.sort(key, SortOrder.ASC);
+
+            if(options.getCheckpoint() != null){
+                //Watermarks may not be unique, so documents with the same watermark as the checkpoint are read again
+                boolean watermark = options.hasParameter(WATERMARK);
+                LOGGER.info("Reading documents with {} {} {}", key, watermark ? "from" : "after", options.getCheckpoint());
+
+                RangeQueryBuilder range = QueryBuilders.rangeQuery(key);
+                if(watermark) {
+                    range.gte(options.getCheckpoint());
+                }else{
+                    range.gt(options.getCheckpoint());
+                }
+
+                query = QueryBuilders.boolQuery().must(query).filter(range);
+            }
+        }
+
+        searchSourceBuilder.query(query);
+
+        if(options.getFields() != null && !options.getFields().isEmpty()){
+            String[] includes = DataSourceOptions.topLevelFields(options.getFields()).toArray(new String[0]);
+            searchSourceBuilder.fetchSource(includes, null);
+        }
+
+        if(slice != null)
+            searchSourceBuilder.slice(slice);
+
+        searchRequest.source(searchSourceBuilder);
+
+        if(options.hasParameter(INDICES))
+            searchRequest.indices(options.getParameter(INDICES).split(","));
+
+        return searchRequest;
+    }
+
+    /**
+     * Get the field to sort the results by, or null if they don't need to be sorted
+     */
+    private static String getKey(DataSourceOptions options){
+        return options.getParameter(WATERMARK, options.getParameter(KEY));
+    }
+
+    /**
+     * Add filters on values to the query. Phrase matching is used, so that analysed text fields
+     * still match, and the data is checked against the filters exactly once it is read.
+     * Filters on whether a field exists aren't added, as Elasticsearch treats null values as missing.
+     */
+    private static QueryBuilder addFilters(QueryBuilder query, Map<String, Object> filters){
+        BoolQueryBuilder bool = QueryBuilders.boolQuery().must(query);
+        boolean filtered = false;
+
+        for(Map.Entry<String, Object> e : filters.entrySet()){
+            if(e.getKey().equals(Configuration.EXISTS))
+                continue;
+
+            List<?> values = e.getValue() instanceof List ? (List<?>) e.getValue() : Collections.singletonList(e.getValue());
+            if(values.isEmpty() || !values.stream().allMatch(v -> v instanceof String || v instanceof Number || v instanceof Boolean))
+                continue;
+
+            BoolQueryBuilder any = QueryBuilders.boolQuery().minimumShouldMatch(1);
+            values.forEach(v -> any.should(QueryBuilders.matchPhraseQuery(e.getKey(), v)));
+
+            bool.filter(any);
+            filtered = true;
+        }
+
+        return filtered ? bool : query;
+    }
+}
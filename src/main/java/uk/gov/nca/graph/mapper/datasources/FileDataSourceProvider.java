@@ -0,0 +1,160 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for providers of data sources that read from files. The location may be a single file,
+ * or a directory or glob (see {@link MultiFileDataSource#listFiles(String)}), in which case the files
+ * are read concurrently. Files compressed with gzip or bzip2 are decompressed as they are read.
+ */
+public abstract class FileDataSourceProvider implements DataSourceProvider {
+    public static final String READERS = "readers";
+    public static final int DEFAULT_READERS = 4;
+    public static final String FOLLOW = "follow";
+    public static final String FOLLOW_TIMEOUT = "follow-timeout";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileDataSourceProvider.class);
+
+    @Override
+    public Set<Capability> getCapabilities() {
+        return EnumSet.of(Capability.SPLITTABLE);
+    }
+
+    /**
+     * The total size of the files, which may be compressed
+     */
+    @Override
+    public long estimateSize(DataSourceOptions options) {
+        try {
+            return MultiFileDataSource.listFiles(options.getLocation()).stream().mapToLong(File::length).sum();
+        }catch (IOException ioe){
+            return -1;
+        }
+    }
+
+    @Override
+    public DataSource open(DataSourceOptions options) throws Exception {
+        if(Boolean.parseBoolean(options.getParameter(FOLLOW)))
+            return openFollowing(options);
+
+        if(!MultiFileDataSource.isMultiFile(options.getLocation()))
+            return openFile(new File(options.getLocation()), options);
+
+        List<File> files = MultiFileDataSource.listFiles(options.getLocation());
+
+        //Unless the number of readers is given, use the available threads to read separate files
+        DataSourceOptions fileOptions = options;
+        int readers;
+        if(options.hasParameter(READERS)) {
+            readers = Integer.parseInt(options.getParameter(READERS));
+        }else{
+            readers = Math.max(options.getParallelism(), DEFAULT_READERS);
+
+            fileOptions = options.withLocation(options.getLocation());
+            fileOptions.setParallelism(1);
+        }
+
+        LOGGER.info("Reading {} files with {} readers", files.size(), readers);
+
+        DataSourceOptions opts = fileOptions;
+        return new MultiFileDataSource(files, file -> openFile(file, opts), readers);
+    }
+
+    /**
+     * Create a data source for a file that isn't compressed
+     */
+    protected abstract DataSource open(File file, DataSourceOptions options) throws Exception;
+
+    /**
+     * Create a data source for the decompressed contents of a file
+     */
+    protected abstract DataSource open(InputStream stream, DataSourceOptions options) throws Exception;
+
+    /**
+     * Returns true if data sources created from a stream continue to read from it, rather than reading
+     * it when they are created, in which case the stream is left open
+     */
+    protected boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Get a parser for single lines of the file, or null if the format can't be followed
+     * (see {@link FollowingDataSource})
+     */
+    protected FollowingDataSource.LineParser getLineParser(DataSourceOptions options) {
+        return null;
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    /**
+     * Follow a single file as it grows, from the checkpoint if one is given. The follow-timeout parameter
+     * is the number of seconds without new data after which to stop, and if it isn't set the file is
+     * followed until the data source is stopped.
+     */
+    private DataSource openFollowing(DataSourceOptions options) throws Exception {
+        FollowingDataSource.LineParser parser = getLineParser(options);
+        if(parser == null)
+            throw new IOException(getFormat() + " files can't be followed");
+
+        if(MultiFileDataSource.isMultiFile(options.getLocation()))
+            throw new IOException("Only a single file can be followed");
+
+        File file = new File(options.getLocation());
+        if(file.exists() && Compression.detect(file) != Compression.NONE)
+            throw new IOException("Compressed files can't be followed");
+
+        long timeout = 0;
+        if(options.hasParameter(FOLLOW_TIMEOUT))
+            timeout = Long.parseLong(options.getParameter(FOLLOW_TIMEOUT)) * 1000;
+
+        FollowingDataSource dataSource = new FollowingDataSource(file, parser, FollowingDataSource.DEFAULT_POLL_INTERVAL, timeout);
+        if(options.getCheckpoint() != null)
+            dataSource.seek(options.getCheckpoint());
+
+        return dataSource;
+    }
+
+    private DataSource openFile(File file, DataSourceOptions options) throws Exception {
+        Compression compression = Compression.detect(file);
+        if(compression == Compression.NONE)
+            return open(file, options);
+
+        LOGGER.info("Decompressing {} compressed file {}", compression, file);
+
+        InputStream stream = compression.open(file, options.getParallelism());
+        try {
+            DataSource dataSource = open(stream, options);
+            if(!isStreaming())
+                stream.close();
+
+            return dataSource;
+        }catch (Exception e){
+            stream.close();
+            throw e;
+        }
+    }
+}
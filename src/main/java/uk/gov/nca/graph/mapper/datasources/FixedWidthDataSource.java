@@ -0,0 +1,326 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Data source for reading UTF-8 encoded files of fixed width or delimited records, as described by a
+ * {@link FixedWidthLayout}, without using regular expressions.
+ *
+ * Files are memory-mapped in windows (or read into buffers, if reading from a stream), and each record
+ * is returned as a {@link MappedCsvRecord} that holds the positions of its fields and only decodes the
+ * fields that are actually read. As with {@link CsvDataSource}, fields are available under their name
+ * and their one-based field number. Blank lines are skipped.
+ */
+public class FixedWidthDataSource implements DataSource {
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FixedWidthDataSource.class);
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte SPACE = ' ';
+
+    private final FixedWidthLayout layout;
+    private final Map<String, Integer> columns = new HashMap<>();
+
+    private final FileChannel channel;
+    private final InputStream stream;
+    private final long fileSize;
+    private final int defaultWindowSize;
+
+    private ByteBuffer window = null;
+    private long windowStart = 0;
+    private int windowSize;
+    private boolean lastWindow = false;
+
+    private long position = 0;
+    private MappedCsvRecord nextRecord;
+
+    //Field boundaries of the record currently being parsed, reused between records
+    private int[] bounds = new int[64];
+    //Whether each field was quoted, which is always false for fixed width fields
+    private boolean[] quoted = new boolean[0];
+
+    public FixedWidthDataSource(File file, FixedWidthLayout layout) throws IOException {
+        this(file, layout, DEFAULT_WINDOW_SIZE);
+    }
+
+    public FixedWidthDataSource(File file, FixedWidthLayout layout, int windowSize) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.READ), null, layout, windowSize);
+    }
+
+    /**
+     * Create a data source that reads from a stream, such as a decompressed file, which is closed when
+     * the data source is closed
+     */
+    public FixedWidthDataSource(InputStream stream, FixedWidthLayout layout) throws IOException {
+        this(null, stream, layout, DEFAULT_BUFFER_SIZE);
+    }
+
+    private FixedWidthDataSource(FileChannel channel, InputStream stream, FixedWidthLayout layout, int windowSize) throws IOException {
+        if(windowSize < 8)
+            throw new IllegalArgumentException("Window size must be at least 8 bytes");
+
+        this.channel = channel;
+        this.stream = stream;
+        this.layout = layout;
+        this.defaultWindowSize = windowSize;
+
+        for(int i = 0; i < layout.getNames().size(); i++)
+            columns.put(layout.getNames().get(i), i);
+
+        try {
+            fileSize = channel == null ? -1 : channel.size();
+
+            fill(0, windowSize);
+            if(hasByteOrderMark())
+                position = 3;
+
+            nextRecord = readRecord();
+        }catch (IOException ioe){
+            close(ioe);
+            throw ioe;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextRecord != null;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if(nextRecord == null)
+            throw new NoSuchElementException();
+
+        MappedCsvRecord record = nextRecord;
+        try {
+            nextRecord = readRecord();
+        }catch (IOException ioe){
+            LOGGER.error("Unable to read from file - no further records will be returned", ioe);
+            nextRecord = null;
+        }
+
+        return record;
+    }
+
+    @Override
+    public void close() throws Exception {
+        nextRecord = null;
+        window = null;
+
+        if(channel != null)
+            channel.close();
+
+        if(stream != null)
+            stream.close();
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private void close(Exception cause){
+        try{
+            close();
+        }catch (Exception e){
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Read the record starting at the current position, refilling the window if the record runs
+     * past the end of it. Returns null if there are no more records.
+     */
+    private MappedCsvRecord readRecord() throws IOException {
+        int recordLength = layout.getRecordLength();
+
+        while(true){
+            int offset = (int) (position - windowStart);
+            int limit = window.limit();
+
+            if(offset >= limit){
+                if(lastWindow)
+                    return null;
+
+                fill(position, defaultWindowSize);
+                continue;
+            }
+
+            int end;
+            int next;
+            if(recordLength > 0){
+                end = offset + recordLength;
+                if(end > limit){
+                    if(!lastWindow){
+                        refill();
+                        continue;
+                    }
+
+                    LOGGER.warn("Incomplete record of {} bytes at end of file", limit - offset);
+                    end = limit;
+                }
+
+                next = end;
+            }else{
+                end = MappedCsvDataSource.indexOf(window, offset, limit, MappedCsvDataSource.broadcast(LF),
+                    MappedCsvDataSource.broadcast(CR), MappedCsvDataSource.broadcast(LF));
+
+                //Can't tell where the line ends, or whether a CR is followed by an LF
+                if((end >= limit || (window.get(end) == CR && end + 1 >= limit)) && !lastWindow){
+                    refill();
+                    continue;
+                }
+
+                next = end;
+                if(next < limit && window.get(next) == CR)
+                    next++;
+                if(next < limit && window.get(next) == LF)
+                    next++;
+            }
+
+            position = windowStart + next;
+
+            if(end == offset && recordLength <= 0)
+                continue;   //Blank line
+
+            return createRecord(offset, end);
+        }
+    }
+
+    /**
+     * Refill the window from the start of the current record, which didn't fit in it. The window is
+     * grown if the record is at the start of the window.
+     */
+    private void refill() throws IOException {
+        if(position == windowStart && windowSize == Integer.MAX_VALUE)
+            throw new IOException("Record at position " + position + " is too long to be read");
+
+        long size = position == windowStart ? 2L * windowSize : windowSize;
+        fill(position, (int) Math.min(Integer.MAX_VALUE, size));
+    }
+
+    /**
+     * Fill the window with data starting at the given position. A new buffer is used for each window,
+     * as records that have already been returned refer to the previous one.
+     */
+    private void fill(long start, int size) throws IOException {
+        ByteBuffer buffer;
+        if(channel != null){
+            buffer = channel.map(MapMode.READ_ONLY, start, (int) Math.min(size, fileSize - start));
+            lastWindow = start + buffer.limit() >= fileSize;
+        }else{
+            //Carry over the part of the current window from start
+            int keep = window == null ? 0 : (int) (windowStart + window.limit() - start);
+            byte[] bytes = new byte[Math.max(size, keep)];
+            if(keep > 0) {
+                ByteBuffer remaining = window.duplicate();
+                remaining.position((int) (start - windowStart));
+                remaining.get(bytes, 0, keep);
+            }
+
+            int length = keep;
+            while(length < bytes.length){
+                int read = stream.read(bytes, length, bytes.length - length);
+                if(read < 0){
+                    lastWindow = true;
+                    break;
+                }
+
+                length += read;
+            }
+
+            buffer = ByteBuffer.wrap(bytes, 0, length);
+        }
+
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        window = buffer;
+        windowStart = start;
+        windowSize = size;
+    }
+
+    private boolean hasByteOrderMark(){
+        return window.limit() >= 3 && (window.get(0) & 0xFF) == 0xEF && (window.get(1) & 0xFF) == 0xBB
+            && (window.get(2) & 0xFF) == 0xBF;
+    }
+
+    /**
+     * Create a record from the bytes of the window between start and end
+     */
+    private MappedCsvRecord createRecord(int start, int end){
+        int fieldCount;
+        if(layout.isDelimited()){
+            long delimiters = MappedCsvDataSource.broadcast(layout.getDelimiter());
+
+            fieldCount = 0;
+            int i = start;
+            while(true){
+                int delimiter = MappedCsvDataSource.indexOf(window, i, end, delimiters, delimiters, delimiters);
+                addField(fieldCount++, i, delimiter);
+
+                if(delimiter >= end)
+                    break;
+
+                i = delimiter + 1;
+            }
+        }else{
+            //Fields that start or end past the end of the record are empty or truncated
+            fieldCount = layout.getNames().size();
+            for(int i = 0; i < fieldCount; i++){
+                int fieldStart = (int) Math.min(end, (long) start + layout.getOffset(i));
+                int fieldEnd = (int) Math.min(end, (long) fieldStart + layout.getLength(i));
+                addField(i, fieldStart, fieldEnd);
+            }
+        }
+
+        //Fields are never quoted, so the same array can be shared between records
+        if(quoted.length != fieldCount)
+            quoted = new boolean[fieldCount];
+
+        return new MappedCsvRecord(window, Arrays.copyOf(bounds, fieldCount * 2), quoted, columns);
+    }
+
+    private void addField(int index, int start, int end){
+        if(layout.isTrim()){
+            while(start < end && window.get(start) == SPACE)
+                start++;
+            while(end > start && window.get(end - 1) == SPACE)
+                end--;
+        }
+
+        if(index * 2 >= bounds.length)
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+
+        bounds[index * 2] = start;
+        bounds[index * 2 + 1] = end;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Provider for {@link FixedWidthDataSource}, which reads records as described by the layout file
+ * given by the layout parameter
+ */
+public class FixedWidthDataSourceProvider extends FileDataSourceProvider {
+    public static final String LAYOUT = "layout";
+
+    @Override
+    public String getFormat() {
+        return "FIXED";
+    }
+
+    @Override
+    protected DataSource open(File file, DataSourceOptions options) throws Exception {
+        return new FixedWidthDataSource(file, getLayout(options));
+    }
+
+    @Override
+    protected DataSource open(InputStream stream, DataSourceOptions options) throws Exception {
+        return new FixedWidthDataSource(stream, getLayout(options));
+    }
+
+    @Override
+    protected boolean isStreaming() {
+        return true;
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private static FixedWidthLayout getLayout(DataSourceOptions options) throws IOException {
+        if(!options.hasParameter(LAYOUT))
+            throw new IOException("A layout file is required to read fixed width data");
+
+        return FixedWidthLayout.load(new File(options.getParameter(LAYOUT)));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * The layout of the records read by a {@link FixedWidthDataSource}, which is loaded from a YAML file.
+ * For fixed width records, each field gives its one-based start position and its length in bytes:
+ *
+ * <pre>
+ * fields:
+ * - name: id
+ *   start: 1
+ *   length: 8
+ * - name: surname
+ *   start: 9
+ *   length: 20
+ * </pre>
+ *
+ * Records are lines, unless recordLength is given, in which case each record is that many bytes
+ * (for files without line endings). Alternatively, if delimiter is given then each line is split on
+ * that (single byte) character, with no quoting, and the fields are named in order. Spaces around
+ * values are removed unless trim is false.
+ */
+public class FixedWidthLayout {
+    private static final String FIELDS = "fields";
+    private static final String NAME = "name";
+    private static final String START = "start";
+    private static final String LENGTH = "length";
+    private static final String RECORD_LENGTH = "recordLength";
+    private static final String DELIMITER = "delimiter";
+    private static final String TRIM = "trim";
+
+    private final List<String> names;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int recordLength;
+    private final byte delimiter;
+    private final boolean delimited;
+    private final boolean trim;
+
+    private FixedWidthLayout(List<String> names, int[] offsets, int[] lengths, int recordLength,
+        Character delimiter, boolean trim){
+        this.names = Collections.unmodifiableList(names);
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.recordLength = recordLength;
+        this.delimited = delimiter != null;
+        this.delimiter = delimited ? (byte) delimiter.charValue() : 0;
+        this.trim = trim;
+    }
+
+    /**
+     * Create a layout of fixed width fields, with the given zero-based offsets and lengths.
+     * If recordLength is greater than 0, then records are that many bytes rather than lines.
+     */
+    public static FixedWidthLayout fixedWidth(List<String> names, int[] offsets, int[] lengths, int recordLength, boolean trim){
+        if(names.size() != offsets.length || names.size() != lengths.length)
+            throw new IllegalArgumentException("A start and length must be given for each field");
+
+        for(int i = 0; i < offsets.length; i++){
+            if(offsets[i] < 0 || lengths[i] < 0)
+                throw new IllegalArgumentException("Invalid start or length for field " + names.get(i));
+        }
+
+        return new FixedWidthLayout(new ArrayList<>(names), offsets.clone(), lengths.clone(), recordLength, null, trim);
+    }
+
+    /**
+     * Create a layout of lines split on the delimiter, which must be an ASCII character
+     */
+    public static FixedWidthLayout delimited(List<String> names, char delimiter, boolean trim){
+        if(delimiter > 0x7F || delimiter == '\n' || delimiter == '\r')
+            throw new IllegalArgumentException("Delimiter must be an ASCII character, and not a line ending");
+
+        return new FixedWidthLayout(new ArrayList<>(names), null, null, 0, delimiter, trim);
+    }
+
+    /**
+     * Load a layout from a YAML file
+     */
+    public static FixedWidthLayout load(File file) throws IOException {
+        Object yaml;
+        try(InputStream is = Files.newInputStream(file.toPath())){
+            yaml = new Yaml().load(is);
+        }catch (RuntimeException re){
+            throw new IOException("Unable to parse layout " + file, re);
+        }
+
+        if(!(yaml instanceof Map) || !(((Map<?, ?>) yaml).get(FIELDS) instanceof List))
+            throw new IOException("Layout " + file + " doesn't contain a list of " + FIELDS);
+
+        Map<?, ?> map = (Map<?, ?>) yaml;
+        List<?> fields = (List<?>) map.get(FIELDS);
+        boolean trim = !Boolean.FALSE.equals(map.get(TRIM));
+
+        try {
+            List<String> names = new ArrayList<>();
+            int[] offsets = new int[fields.size()];
+            int[] lengths = new int[fields.size()];
+
+            for (int i = 0; i < fields.size(); i++) {
+                Map<?, ?> field = fields.get(i) instanceof Map ? (Map<?, ?>) fields.get(i) : new HashMap<>();
+                if (field.get(NAME) == null)
+                    throw new IOException("Field " + (i + 1) + " in layout " + file + " doesn't have a name");
+
+                names.add(field.get(NAME).toString());
+
+                if (!map.containsKey(DELIMITER)) {
+                    offsets[i] = toInt(field.get(START), START, names.get(i), file) - 1;
+                    lengths[i] = toInt(field.get(LENGTH), LENGTH, names.get(i), file);
+                }
+            }
+
+            if (map.containsKey(DELIMITER)) {
+                String delimiter = String.valueOf(map.get(DELIMITER));
+                if (delimiter.length() != 1)
+                    throw new IOException("Delimiter in layout " + file + " must be a single character");
+
+                return delimited(names, delimiter.charAt(0), trim);
+            }
+
+            int recordLength = map.containsKey(RECORD_LENGTH) ? toInt(map.get(RECORD_LENGTH), RECORD_LENGTH, "layout", file) : 0;
+            return fixedWidth(names, offsets, lengths, recordLength, trim);
+        }catch (IllegalArgumentException iae){
+            throw new IOException("Invalid layout " + file + ": " + iae.getMessage(), iae);
+        }
+    }
+
+    /**
+     * The names of the fields, in order
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * The zero-based offset of the field within a fixed width record
+     */
+    public int getOffset(int field) {
+        return offsets[field];
+    }
+
+    /**
+     * The length in bytes of the field within a fixed width record
+     */
+    public int getLength(int field) {
+        return lengths[field];
+    }
+
+    /**
+     * The length of each record in bytes, or 0 if records are lines
+     */
+    public int getRecordLength() {
+        return recordLength;
+    }
+
+    public boolean isDelimited() {
+        return delimited;
+    }
+
+    public byte getDelimiter() {
+        return delimiter;
+    }
+
+    public boolean isTrim() {
+        return trim;
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private static int toInt(Object o, String property, String name, File file) throws IOException {
+        if(!(o instanceof Number))
+            throw new IOException("Missing or invalid " + property + " for " + name + " in layout " + file);
+
+        return ((Number) o).intValue();
+    }
+}
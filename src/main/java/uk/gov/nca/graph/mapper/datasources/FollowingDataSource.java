@@ -0,0 +1,357 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Data source that follows a file of line based records (e.g. JSON Lines) as it grows, in the same
+ * way as tail -F. Once the end of the file is reached, the file is polled for new data, and hasNext()
+ * waits until another record is available, so the data source only ends when it is stopped or the
+ * idle timeout is reached.
+ *
+ * If the file is replaced (e.g. by log rotation), the rest of the old file is read and then the new
+ * file is read from the start. If the file is truncated, it is read again from the start. Only complete
+ * lines are returned, so a line that is still being written isn't returned until it has been finished.
+ *
+ * The checkpoint is the offset after the last record returned, and the file it was in, so reading can
+ * be resumed from it unless the file has since been replaced.
+ */
+public class FollowingDataSource implements DataSource, Checkpointable {
+    public static final long DEFAULT_POLL_INTERVAL = 500;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FollowingDataSource.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    /**
+     * Parses lines of the file into records
+     */
+    public interface LineParser {
+        /**
+         * Called before the first line of a file is parsed, including when the file is rotated or truncated
+         */
+        default void reset() {
+            //Do nothing by default
+        }
+
+        /**
+         * Parse a line, returning null if the line isn't a record (e.g. it is a header or is blank)
+         */
+        Map<String, Object> parse(String line) throws IOException;
+    }
+
+    private final Path path;
+    private final LineParser parser;
+    private final long pollInterval;
+    private final long idleTimeout;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+    private final Deque<String> lines = new ArrayDeque<>();
+    private final Deque<Long> lineEnds = new ArrayDeque<>();
+
+    private FileChannel channel = null;
+    private Object fileKey = null;
+    private long position = 0;
+
+    private long lineEnd = 0;
+    private String resumeFrom = null;
+
+    private Map<String, Object> nextRecord = null;
+    private String nextCheckpoint = null;
+    private String checkpoint = null;
+    private Runnable idleListener = null;
+    private volatile boolean stopped = false;
+
+    /**
+     * Follow the file, which is polled every pollInterval milliseconds once all of it has been read.
+     * If idleTimeout is greater than 0, then the data source ends once there has been no new data for
+     * that many milliseconds.
+     */
+    public FollowingDataSource(File file, LineParser parser, long pollInterval, long idleTimeout){
+        this.path = file.toPath();
+        this.parser = parser;
+        this.pollInterval = pollInterval;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Set a listener that is called, on the thread reading from the data source, each time it has read
+     * all of the available data and starts waiting for more (e.g. to commit the records read so far)
+     */
+    public void setIdleListener(Runnable idleListener) {
+        this.idleListener = idleListener;
+    }
+
+    /**
+     * Stop following the file, so that hasNext() returns false once it has finished waiting.
+     * Unlike {@link #close()}, this can be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Resume reading from a checkpoint, rather than the start of the file. This must be called before
+     * any records are read. If the file has been replaced or truncated since the checkpoint was taken,
+     * then the new file is read from the start.
+     */
+    public void seek(String checkpoint) {
+        this.resumeFrom = checkpoint;
+        this.checkpoint = checkpoint;
+    }
+
+    @Override
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while(nextRecord == null){
+            String line = nextLine();
+            if(line == null)
+                return false;
+
+            try {
+                nextRecord = parser.parse(line);
+                nextCheckpoint = lineEnd + ":" + fileKey;
+            }catch (IOException ioe){
+                LOGGER.warn("Unable to parse line", ioe);
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+
+        Map<String, Object> record = nextRecord;
+        nextRecord = null;
+        checkpoint = nextCheckpoint;
+
+        return record;
+    }
+
+    @Override
+    public void close() throws Exception {
+        stopped = true;
+        if(channel != null)
+            channel.close();
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    /**
+     * Get the next complete line, waiting for one if necessary, or return null if the data source has
+     * been stopped or the idle timeout has been reached
+     */
+    private String nextLine(){
+        long idleSince = -1;
+
+        while(!stopped){
+            String line = lines.poll();
+            if(line != null) {
+                lineEnd = lineEnds.poll();
+                return line;
+            }
+
+            try {
+                if(read() || checkReplaced())
+                    continue;
+            }catch (IOException ioe){
+                LOGGER.error("Unable to read from file {} - no further records will be returned", path, ioe);
+                return null;
+            }
+
+            if(idleSince < 0){
+                idleSince = System.currentTimeMillis();
+                if(idleListener != null)
+                    idleListener.run();
+            }else if(idleTimeout > 0 && System.currentTimeMillis() - idleSince >= idleTimeout){
+                LOGGER.info("No new data in {} for {} ms - no longer following file", path, idleTimeout);
+                return null;
+            }
+
+            try {
+                Thread.sleep(pollInterval);
+            }catch (InterruptedException ie){
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Read any new data from the file, opening it if necessary, and split it into lines.
+     * Returns false if there wasn't any new data.
+     */
+    private boolean read() throws IOException {
+        if(channel == null && !open())
+            return false;
+
+        buffer.clear();
+        int read = channel.read(buffer, position);
+        if(read <= 0)
+            return false;
+
+        byte[] bytes = buffer.array();
+        int start = 0;
+        for(int i = 0; i < read; i++){
+            if(bytes[i] != LF)
+                continue;
+
+            partial.write(bytes, start, i - start);
+            addLine(position + i + 1);
+            start = i + 1;
+        }
+
+        position += read;
+
+        partial.write(bytes, start, read - start);
+        return true;
+    }
+
+    private boolean open() throws IOException {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        }catch (NoSuchFileException nsfe){
+            return false;
+        }
+
+        position = 0;
+        partial.reset();
+        parser.reset();
+
+        if(resumeFrom != null){
+            resume(resumeFrom);
+            resumeFrom = null;
+        }
+
+        LOGGER.info("Following file {} from position {}", path, position);
+        return true;
+    }
+
+    /**
+     * Move to the position in the checkpoint, if it is for the current file. The first line of the file
+     * is passed to the parser first, in case it is a header.
+     */
+    private void resume(String checkpoint) throws IOException {
+        int separator = checkpoint.indexOf(':');
+        long offset = Long.parseLong(checkpoint.substring(0, separator));
+        String key = checkpoint.substring(separator + 1);
+
+        if(!key.equals(String.valueOf(fileKey)) || offset > channel.size()){
+            LOGGER.warn("File {} has been replaced since the checkpoint was taken - reading from the start", path);
+            return;
+        }
+
+        while(lines.isEmpty() && position < offset && read()) {
+            //Keep reading until the first line is complete
+        }
+
+        try {
+            if(!lines.isEmpty())
+                parser.parse(lines.peek());
+        }catch (IOException ioe){
+            //Do nothing - the line was read before the checkpoint was taken
+        }
+
+        lines.clear();
+        lineEnds.clear();
+        partial.reset();
+        position = offset;
+    }
+
+    /**
+     * Check whether the file has been replaced or truncated, returning true if it has
+     */
+    private boolean checkReplaced() throws IOException {
+        if(channel == null)
+            return false;
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        }catch (NoSuchFileException nsfe){
+            return false;   //Rotated, but the new file hasn't been created yet
+        }
+
+        if(attributes.fileKey() != null && !attributes.fileKey().equals(fileKey)){
+            //Finish reading the old file, including a final line without a line ending
+            while(read()) {
+                //Keep reading
+            }
+
+            if(partial.size() > 0)
+                addLine(position);
+
+            LOGGER.info("File {} has been replaced - reading new file", path);
+            channel.close();
+            channel = null;
+
+            return true;
+        }
+
+        if(attributes.size() < position){
+            LOGGER.info("File {} has been truncated - reading from the start", path);
+            position = 0;
+            partial.reset();
+            parser.reset();
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Add the partial line as a complete line, which ends at the given position in the file
+     */
+    private void addLine(long end){
+        byte[] line = partial.toByteArray();
+        int length = line.length > 0 && line[line.length - 1] == CR ? line.length - 1 : line.length;
+
+        lines.add(new String(line, 0, length, StandardCharsets.UTF_8));
+        lineEnds.add(end);
+        partial.reset();
+    }
+}
@@ -86,4 +86,14 @@ public class JsonLinesDataSource implements DataSource{
             return Collections.emptyMap();
         }
     }
+
+    /**
+     * Create a parser for lines of a {@link FollowingDataSource}, which skips blank lines
+     */
+    public static FollowingDataSource.LineParser lineParser(){
+        ObjectMapper mapper = new ObjectMapper();
+        TypeReference<HashMap<String,Object>> typeRef = new TypeReference<HashMap<String,Object>>() {};
+
+        return line -> line.trim().isEmpty() ? null : mapper.readValue(line, typeRef);
+    }
 }
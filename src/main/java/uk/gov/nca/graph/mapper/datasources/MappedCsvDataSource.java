@@ -0,0 +1,488 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Data source for reading from UTF-8 encoded CSV files, which memory-maps the file rather than
+ * reading it through a Reader.
+ *
+ * Records are split into fields by scanning the bytes of the file, eight at a time, and each record
+ * is returned as a {@link MappedCsvRecord} which only decodes the fields that are actually read.
+ * Fields may be quoted as described in RFC 4180, regardless of the separator. Blank lines are skipped.
+ *
+ * The file is mapped in windows, so files larger than 2GB can be read. Records that are longer than
+ * the window are supported, but the window will grow to fit them.
+ */
+public class MappedCsvDataSource implements DataSource {
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedCsvDataSource.class);
+
+    private static final byte QUOTE = '"';
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private static final int SCAN_WINDOW_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private final long fileSize;
+    private final long end;
+    private final byte separator;
+    private final long separators;
+    private final int defaultWindowSize;
+
+    private MappedByteBuffer window = null;
+    private long windowStart = 0;
+    private int windowSize;
+
+    private long position = 0;
+    private final Map<String, Integer> columns;
+    private MappedCsvRecord nextRecord;
+
+    //Field boundaries of the record currently being parsed, reused between records
+    private int[] bounds = new int[64];
+    private boolean[] quoted = new boolean[32];
+
+    public MappedCsvDataSource(char separator, String file, boolean header) throws IOException{
+        this(separator, new File(file), header, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedCsvDataSource(char separator, File file, boolean header, int windowSize) throws IOException{
+        if(separator > 0x7F)
+            throw new IllegalArgumentException("Separator must be an ASCII character");
+
+        if(windowSize < 8)
+            throw new IllegalArgumentException("Window size must be at least 8 bytes");
+
+        this.separator = (byte) separator;
+        this.separators = broadcast(this.separator);
+        this.defaultWindowSize = windowSize;
+        this.columns = new HashMap<>();
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        ownsChannel = true;
+        fileSize = channel.size();
+        end = fileSize;
+
+        try {
+            position = byteOrderMarkLength(channel);
+
+            if (header) {
+                MappedCsvRecord titles = readRecord();
+                if (titles != null) {
+                    for (int i = 0; i < titles.getFieldCount(); i++)
+                        columns.put(titles.getField(i), i);
+                }
+            }
+
+            nextRecord = readRecord();
+        }catch (IOException ioe){
+            channel.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Create a parser for the records that start between start (which must be the start of a record)
+     * and end, in a file that is already open. Records are read with {@link #readRecord()}.
+     */
+    MappedCsvDataSource(FileChannel channel, byte separator, Map<String, Integer> columns,
+        long start, long end, int windowSize) throws IOException{
+        this.channel = channel;
+        this.ownsChannel = false;
+        this.fileSize = channel.size();
+        this.end = Math.min(end, fileSize);
+        this.separator = separator;
+        this.separators = broadcast(separator);
+        this.columns = columns;
+        this.defaultWindowSize = windowSize;
+
+        position = start;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextRecord != null;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if(nextRecord == null)
+            throw new NoSuchElementException();
+
+        MappedCsvRecord record = nextRecord;
+        try {
+            nextRecord = readRecord();
+        }catch (IOException ioe){
+            LOGGER.error("Unable to read from file - no further records will be returned", ioe);
+            nextRecord = null;
+        }
+
+        return record;
+    }
+
+    @Override
+    public void close() throws Exception {
+        nextRecord = null;
+        window = null;
+
+        if(ownsChannel)
+            channel.close();
+    }
+
+    /**
+     * Read the record starting at the current position, remapping the window if the
+     * record runs past the end of it. Returns null if there are no more records.
+     */
+    MappedCsvRecord readRecord() throws IOException {
+        while(position < end){
+            if(window == null || position >= windowStart + window.limit())
+                map(position, defaultWindowSize);
+
+            int fieldCount = parseRecord((int) (position - windowStart));
+            if(fieldCount < 0){
+                //Record didn't fit in the window, so remap it from the start of the record
+                if(position == windowStart && windowSize == Integer.MAX_VALUE)
+                    throw new IOException("Record at position " + position + " is too long to be mapped");
+
+                long size = position == windowStart ? 2L * windowSize : windowSize;
+                map(position, (int) Math.min(Integer.MAX_VALUE, size));
+                continue;
+            }
+
+            if(fieldCount == 0)
+                continue;   //Blank line
+
+            return new MappedCsvRecord(window, Arrays.copyOf(bounds, fieldCount * 2),
+                Arrays.copyOf(quoted, fieldCount), columns);
+        }
+
+        return null;
+    }
+
+    /**
+     * The position in the file of the start of the next record to be read
+     */
+    long getPosition(){
+        return position;
+    }
+
+    /**
+     * The column titles, mapped to their zero-based index
+     */
+    Map<String, Integer> getColumns(){
+        return columns;
+    }
+
+    /**
+     * The length of the UTF-8 byte order mark at the start of the file, or 0 if there isn't one
+     */
+    static int byteOrderMarkLength(FileChannel channel) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(3);
+        channel.read(b, 0);
+
+        return b.position() == 3 && (b.get(0) & 0xFF) == 0xEF && (b.get(1) & 0xFF) == 0xBB
+            && (b.get(2) & 0xFF) == 0xBF ? 3 : 0;
+    }
+
+    /**
+     * Count the number of quotes between from and to, and check whether each quote is where the parser
+     * expects it, both for the case where from is outside quotes and for the case where it is within quotes.
+     * If from is known to be the start of a record, then recordStart should be true.
+     */
+    static QuoteScan scanQuotes(FileChannel channel, long from, long to, byte separator, boolean recordStart) throws IOException {
+        long size = channel.size();
+        long quotes = broadcast(QUOTE);
+        QuoteScan scan = new QuoteScan();
+
+        for(long pos = from; pos < to; pos += SCAN_WINDOW_SIZE){
+            ByteBuffer buffer = map(channel, pos, (int) Math.min(SCAN_WINDOW_SIZE, to - pos));
+            int limit = buffer.limit();
+
+            int i = 0;
+            while(i < limit){
+                i = indexOf(buffer, i, limit, quotes, quotes, quotes);
+                if(i >= limit)
+                    break;
+
+                //A quote opens a field if it follows a delimiter (or the closing quote before an escaped quote),
+                //and closes a field if it precedes a delimiter (or an escaped quote)
+                boolean canOpen = (pos + i == from && recordStart) || isDelimiterOrQuote(readByte(channel, buffer, pos, i - 1), separator);
+                boolean canClose = pos + i + 1 >= size || isDelimiterOrQuote(readByte(channel, buffer, pos, i + 1), separator);
+
+                if(scan.count % 2 == 0){
+                    scan.wellFormedOutside &= canOpen;
+                    scan.wellFormedInside &= canClose;
+                }else{
+                    scan.wellFormedOutside &= canClose;
+                    scan.wellFormedInside &= canOpen;
+                }
+
+                scan.count++;
+                i++;
+            }
+        }
+
+        return scan;
+    }
+
+    /**
+     * Find the start of the first line that begins after from, ignoring any quotes. Returns the size
+     * of the file if there are no more lines.
+     */
+    static long findLineStart(FileChannel channel, long from) throws IOException {
+        return findLineStart(channel, from, false, false);
+    }
+
+    /**
+     * Find the start of the first line that begins after from, treating line endings within quotes as
+     * part of a field. Whether from is within quotes must be given. Returns the size of the file if
+     * there are no more lines.
+     */
+    static long findLineStart(FileChannel channel, long from, boolean inQuotes) throws IOException {
+        return findLineStart(channel, from, true, inQuotes);
+    }
+
+    /**
+     * Find the first byte at or after i that matches any of the three patterns, by checking eight bytes at a time.
+     * Returns limit if there are no matches. The buffer must be little-endian.
+     */
+    static int indexOf(ByteBuffer buffer, int i, int limit, long p1, long p2, long p3){
+        for(; i + 8 <= limit; i += 8){
+            long word = buffer.getLong(i);
+            long found = zeroBytes(word ^ p1) | zeroBytes(word ^ p2) | zeroBytes(word ^ p3);
+            if(found != 0)
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+
+        for(; i < limit; i++){
+            byte b = buffer.get(i);
+            if(b == (byte) p1 || b == (byte) p2 || b == (byte) p3)
+                return i;
+        }
+
+        return limit;
+    }
+
+    /**
+     * Repeat the byte in each of the eight bytes of a long, for use as a pattern by {@link #indexOf}
+     */
+    static long broadcast(byte b){
+        return (b & 0xFFL) * ONES;
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private void map(long start, int size) throws IOException {
+        windowStart = start;
+        windowSize = size;
+        window = map(channel, start, (int) Math.min(size, fileSize - start));
+    }
+
+    private static long findLineStart(FileChannel channel, long from, boolean trackQuotes, boolean inQuotes) throws IOException {
+        long size = channel.size();
+        //If quotes aren't being tracked, then only search for line endings
+        long quotes = trackQuotes ? broadcast(QUOTE) : broadcast(LF);
+        long lf = broadcast(LF);
+        long cr = broadcast(CR);
+
+        for(long pos = from; pos < size; pos += SCAN_WINDOW_SIZE){
+            ByteBuffer buffer = map(channel, pos, (int) Math.min(SCAN_WINDOW_SIZE, size - pos));
+            int limit = buffer.limit();
+
+            int i = 0;
+            while(i < limit){
+                i = indexOf(buffer, i, limit, quotes, lf, cr);
+                if(i >= limit)
+                    break;
+
+                byte b = buffer.get(i);
+                if(b == QUOTE){
+                    inQuotes = !inQuotes;
+                }else if(!inQuotes){
+                    //Include the LF of a CRLF, even if it is in the next window
+                    if(b == CR && pos + i + 1 < size && readByte(channel, buffer, pos, i + 1) == LF)
+                        return pos + i + 2;
+
+                    return pos + i + 1;
+                }
+
+                i++;
+            }
+        }
+
+        return size;
+    }
+
+    private static boolean isDelimiterOrQuote(byte b, byte separator){
+        return b == separator || b == LF || b == CR || b == QUOTE;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long start, int size) throws IOException {
+        MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        return buffer;
+    }
+
+    private static byte readByte(FileChannel channel, ByteBuffer buffer, long bufferStart, int offset) throws IOException {
+        if(offset >= 0 && offset < buffer.limit())
+            return buffer.get(offset);
+
+        ByteBuffer b = ByteBuffer.allocate(1);
+        channel.read(b, bufferStart + offset);
+        return b.get(0);
+    }
+
+    /**
+     * Parse a record from the window, starting at offset, and update the position to the start of the next record.
+     * Returns the number of fields, or -1 if the window ends before the record does (and isn't the end of the file).
+     */
+    private int parseRecord(int offset){
+        int limit = window.limit();
+        boolean endOfFile = windowStart + limit == fileSize;
+
+        int fieldCount = 0;
+        int i = offset;
+
+        while(true){
+            int start = i;
+            boolean isQuoted = i < limit && window.get(i) == QUOTE;
+
+            if(isQuoted){
+                i = skipQuoted(i + 1, limit, endOfFile);
+                if(i < 0){
+                    if(!endOfFile)
+                        return -1;
+
+                    LOGGER.warn("Unterminated quoted field at end of file");
+                    i = limit;
+                }
+            }
+
+            i = indexOfDelimiter(i, limit);
+            if(i >= limit && !endOfFile)
+                return -1;
+
+            if(fieldCount == 0 && i == start && (i >= limit || window.get(i) != separator)){
+                //Blank line
+                position = windowStart + skipLineEnding(i, limit);
+                return 0;
+            }
+
+            addField(fieldCount++, start, i, isQuoted);
+
+            if(i < limit && window.get(i) == separator){
+                i++;
+                continue;
+            }
+
+            if(i < limit && window.get(i) == CR && i + 1 >= limit && !endOfFile)
+                return -1;  //Can't tell whether this is CRLF
+
+            position = windowStart + skipLineEnding(i, limit);
+            return fieldCount;
+        }
+    }
+
+    private void addField(int index, int start, int end, boolean isQuoted){
+        if(index >= quoted.length){
+            quoted = Arrays.copyOf(quoted, quoted.length * 2);
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+
+        bounds[index * 2] = start;
+        bounds[index * 2 + 1] = end;
+        quoted[index] = isQuoted;
+    }
+
+    private int skipLineEnding(int i, int limit){
+        if(i < limit && window.get(i) == CR)
+            i++;
+        if(i < limit && window.get(i) == LF)
+            i++;
+
+        return i;
+    }
+
+    /**
+     * Find the end of a quoted field whose content starts at i, returning the offset after the closing quote,
+     * or -1 if there isn't one in the window
+     */
+    private int skipQuoted(int i, int limit, boolean endOfFile){
+        long quotes = broadcast(QUOTE);
+
+        while(true){
+            int q = indexOf(window, i, limit, quotes, quotes, quotes);
+            if(q >= limit)
+                return -1;
+
+            //A quote at the end of the window can only be known to be the closing quote at the end of the file
+            if(q + 1 >= limit)
+                return endOfFile ? q + 1 : -1;
+
+            if(window.get(q + 1) != QUOTE)
+                return q + 1;
+
+            i = q + 2;
+        }
+    }
+
+    /**
+     * Find the next separator or line ending at or after i, or limit if there isn't one
+     */
+    private int indexOfDelimiter(int i, int limit){
+        return indexOf(window, i, limit, separators, broadcast(LF), broadcast(CR));
+    }
+
+    /**
+     * Sets the high bit of each byte that is zero. Bits above the lowest zero byte may be set
+     * incorrectly, but the lowest set bit is always correct.
+     */
+    private static long zeroBytes(long word){
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+
+    /**
+     * The number of quotes in part of a file, and whether they are all where the parser expects them
+     * depending on whether the start of that part is within quotes
+     */
+    static class QuoteScan {
+        long count = 0;
+        boolean wellFormedOutside = true;
+        boolean wellFormedInside = true;
+    }
+}
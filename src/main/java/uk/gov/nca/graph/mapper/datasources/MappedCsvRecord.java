@@ -0,0 +1,228 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A single record from a {@link MappedCsvDataSource}, which holds the positions of its fields
+ * in the mapped file and only decodes a field the first time it is read.
+ *
+ * As with {@link CsvDataSource}, each field is available under its one-based column number,
+ * and under its column title if the file has headers. Iterating over the record, or modifying it,
+ * decodes every field. Fields can be replaced with a converted value by index (e.g. by a {@link CsvSchema})
+ * without decoding the other fields.
+ */
+public class MappedCsvRecord extends AbstractMap<String, Object> {
+    private static final byte QUOTE = '"';
+
+    private final ByteBuffer buffer;
+    private final int[] bounds;
+    private final boolean[] quoted;
+    private final Map<String, Integer> columns;
+
+    private final String[] values;
+    private Object[] converted = null;
+    private Map<String, Object> decoded = null;
+
+    MappedCsvRecord(ByteBuffer buffer, int[] bounds, boolean[] quoted, Map<String, Integer> columns){
+        this.buffer = buffer;
+        this.bounds = bounds;
+        this.quoted = quoted;
+        this.columns = columns;
+
+        this.values = new String[quoted.length];
+    }
+
+    /**
+     * Number of fields in this record
+     */
+    public int getFieldCount(){
+        return values.length;
+    }
+
+    /**
+     * Return the decoded value of the field at the zero-based index
+     */
+    public String getField(int index){
+        String value = values[index];
+        if(value == null){
+            value = decode(index);
+            values[index] = value;
+        }
+
+        return value;
+    }
+
+    /**
+     * Return the raw bytes of the field at the zero-based index, without copying them.
+     * Quoted fields include their quotes, and any escaped quotes are left escaped.
+     */
+    public ByteBuffer getFieldBytes(int index){
+        ByteBuffer slice = buffer.asReadOnlyBuffer();
+        slice.limit(bounds[index * 2 + 1]);
+        slice.position(bounds[index * 2]);
+
+        return slice.slice();
+    }
+
+    @Override
+    public Object get(Object key) {
+        if(decoded != null)
+            return decoded.get(key);
+
+        int index = indexOf(key);
+        return index < 0 ? null : getValue(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if(decoded != null)
+            return decoded.containsKey(key);
+
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return decodeAll().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return decodeAll().remove(key);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return decodeAll().entrySet();
+    }
+
+    /**
+     * Return the value of the field at the zero-based index, which is the decoded field unless it has been replaced
+     */
+    Object getValue(int index){
+        if(converted != null && converted[index] != null)
+            return converted[index];
+
+        return getField(index);
+    }
+
+    /**
+     * Replace the value of the field at the zero-based index, under both its column number and title
+     */
+    void setValue(int index, Object value){
+        if(converted == null)
+            converted = new Object[values.length];
+
+        converted[index] = value;
+
+        if(decoded != null){
+            decoded.put(Integer.toString(index + 1), value);
+            for(Map.Entry<String, Integer> e : columns.entrySet()){
+                if(e.getValue() == index)
+                    decoded.put(e.getKey(), value);
+            }
+        }
+    }
+
+    /**
+     * The zero-based index of the field with the given column title or one-based column number, or -1 if there isn't one
+     */
+    int indexOf(Object key){
+        if(!(key instanceof String))
+            return -1;
+
+        Integer column = columns.get(key);
+        if(column != null && column < values.length)
+            return column;
+
+        int number = parseColumnNumber((String) key);
+        return number >= 1 && number <= values.length ? number - 1 : -1;
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private static int parseColumnNumber(String s){
+        if(s.isEmpty() || s.length() > 9 || s.charAt(0) == '0')
+            return -1;
+
+        int n = 0;
+        for(int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if(c < '0' || c > '9')
+                return -1;
+
+            n = n * 10 + (c - '0');
+        }
+
+        return n;
+    }
+
+    private Map<String, Object> decodeAll(){
+        if(decoded != null)
+            return decoded;
+
+        Map<String, Object> data = new HashMap<>();
+        for(int i = 0; i < values.length; i++)
+            data.put(Integer.toString(i + 1), getValue(i));
+
+        for(Map.Entry<String, Integer> e : columns.entrySet()){
+            if(e.getValue() < values.length)
+                data.put(e.getKey(), getValue(e.getValue()));
+        }
+
+        decoded = data;
+        return decoded;
+    }
+
+    private String decode(int index){
+        int start = bounds[index * 2];
+        int end = bounds[index * 2 + 1];
+
+        byte[] bytes = new byte[end - start];
+        ByteBuffer source = buffer.duplicate();
+        source.position(start);
+        source.get(bytes);
+
+        if(!quoted[index])
+            return new String(bytes, StandardCharsets.UTF_8);
+
+        //Remove the enclosing quotes, and unescape any escaped quotes
+        int length = 0;
+        boolean inQuotes = false;
+        for(int i = 0; i < bytes.length; i++){
+            if(bytes[i] == QUOTE){
+                if(inQuotes && i + 1 < bytes.length && bytes[i + 1] == QUOTE){
+                    bytes[length++] = QUOTE;
+                    i++;
+                }else{
+                    inQuotes = !inQuotes;
+                }
+            }else{
+                bytes[length++] = bytes[i];
+            }
+        }
+
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Data source that reads records from several files concurrently, creating a separate data source
+ * for each file. Each file is a partition of the data, and is read as described in
+ * {@link PartitionedDataSource}.
+ */
+public class MultiFileDataSource extends PartitionedDataSource {
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    /**
+     * Creates a data source for a single file
+     */
+    @FunctionalInterface
+    public interface Factory {
+        DataSource create(File file) throws Exception;
+    }
+
+    public MultiFileDataSource(List<File> files, Factory factory, int threads){
+        super(files.stream().map(f -> new FilePartition(f, factory)).collect(Collectors.toList()), threads);
+    }
+
+    /**
+     * Returns true if the path is a directory or a glob, rather than a single file. A path that exists
+     * is never treated as a glob, even if it contains glob characters (e.g. export[1].csv).
+     */
+    public static boolean isMultiFile(String path){
+        File file = new File(path);
+        if(file.exists())
+            return file.isDirectory();
+
+        return globStart(path) >= 0;
+    }
+
+    /**
+     * List the files at the given path, in name order. If the path is a directory, then the
+     * (non-hidden) files within it are returned, apart from cached schemas. If the path doesn't exist and is a glob,
+     * such as data/*.csv or data/**&#47;*.json, then the (non-hidden) files matching it are returned. Otherwise,
+     * the path is assumed to be a single file.
+     */
+    public static List<File> listFiles(String path) throws IOException {
+        List<File> files;
+
+        File file = new File(path);
+        int globStart = file.exists() ? -1 : globStart(path);
+        if(globStart >= 0){
+            int separator = Math.max(path.lastIndexOf('/', globStart), path.lastIndexOf(File.separatorChar, globStart));
+
+            Path base = Paths.get(separator >= 0 ? path.substring(0, separator + 1) : ".");
+            String glob = path.substring(separator + 1);
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+
+            //Only descend as far as the glob can match, unless it matches across directories
+            int depth = glob.contains("**") ? Integer.MAX_VALUE : glob.split("/").length;
+
+            try(Stream<Path> paths = Files.walk(base, depth)) {
+                files = paths.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(base.relativize(p)))
+                    .map(Path::toFile)
+                    .filter(f -> !f.isHidden() && isData(f))
+                    .sorted()
+                    .collect(Collectors.toList());
+            }
+        }else if(file.isDirectory()){
+            File[] children = file.listFiles(f -> f.isFile() && !f.isHidden() && isData(f));
+            files = new ArrayList<>();
+            if(children != null)
+                Collections.addAll(files, children);
+
+            Collections.sort(files);
+        }else{
+            files = Collections.singletonList(file);
+        }
+
+        if(files.isEmpty())
+            throw new FileNotFoundException("No files found at "+path);
+
+        return files;
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    /**
+     * Returns false for files written alongside the data, such as cached schemas
+     */
+    private static boolean isData(File file){
+        return !file.getName().endsWith(CsvSchema.CACHE_SUFFIX);
+    }
+
+    private static int globStart(String path){
+        for(int i = 0; i < path.length(); i++){
+            if(GLOB_CHARACTERS.indexOf(path.charAt(i)) >= 0)
+                return i;
+        }
+
+        return -1;
+    }
+
+    private static class FilePartition implements Partition {
+        private final File file;
+        private final Factory factory;
+
+        FilePartition(File file, Factory factory){
+            this.file = file;
+            this.factory = factory;
+        }
+
+        @Override
+        public String getName() {
+            return file.toString();
+        }
+
+        @Override
+        public DataSource open() throws Exception {
+            return factory.create(file);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Data source for reading from UTF-8 encoded CSV files, which splits the file into chunks and
+ * parses them concurrently. Records are parsed in the same way as {@link MappedCsvDataSource}.
+ *
+ * Each chunk starts at the first line ending after its nominal start, on the assumption that the
+ * line ending isn't within a quoted field. Once the previous chunk has been parsed, this assumption
+ * is checked against where the previous chunk actually ended, and the chunk is re-parsed if it was wrong.
+ *
+ * Records can be returned in the order they appear in the file, or in the order the chunks are parsed.
+ * When records are unordered, the quotes in the file are counted before parsing, so that each chunk
+ * starts on a record boundary without needing the previous chunk, and each chunk is returned as soon
+ * as it has been parsed. If there are quotes in the middle of fields, the counts can't be relied on from
+ * that point in the file, so later chunks are only returned once the previous chunk has been checked.
+ *
+ * If a {@link CsvSchema} is given, typed columns are converted by the parsing threads.
+ */
+public class ParallelCsvDataSource implements DataSource {
+    //Parsed chunks are held in memory until they are read, so chunks are kept small
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelCsvDataSource.class);
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final byte separator;
+    private final Map<String, Integer> columns;
+
+    private final long dataStart;
+    private final int chunkSize;
+    private final int chunkCount;
+    private final boolean ordered;
+    private final int maxPending;
+    private final CsvSchema schema;
+
+    private final ExecutorService executor;
+    private final CompletionService<Chunk> completionService;
+    private final Deque<Future<Chunk>> pending = new ArrayDeque<>();
+    private final TreeMap<Integer, Chunk> waiting = new TreeMap<>();
+
+    //Where each chunk ended, once it has been checked against the previous chunk, or -1 if it hasn't been yet
+    private final long[] validatedEnds;
+    private boolean[] inQuotes = null;
+    //Whether the quotes up to the start of each chunk are all where the parser expects them, in which case the chunk doesn't need checking
+    private boolean[] trusted = null;
+
+    private int submitted = 0;
+    private int outstanding = 0;
+    private boolean failed = false;
+    private Iterator<MappedCsvRecord> current = Collections.emptyIterator();
+
+    public ParallelCsvDataSource(char separator, String file, boolean header, int threads, boolean ordered) throws IOException{
+        this(separator, new File(file), header, threads, ordered, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelCsvDataSource(char separator, File file, boolean header, int threads, boolean ordered, int chunkSize) throws IOException{
+        this(separator, file, header, threads, ordered, chunkSize, null);
+    }
+
+    public ParallelCsvDataSource(char separator, File file, boolean header, int threads, boolean ordered, int chunkSize,
+        CsvSchema schema) throws IOException{
+        if(separator > 0x7F)
+            throw new IllegalArgumentException("Separator must be an ASCII character");
+
+        if(threads < 1)
+            throw new IllegalArgumentException("At least one thread is required");
+
+        if(chunkSize < 8)
+            throw new IllegalArgumentException("Chunk size must be at least 8 bytes");
+
+        this.separator = (byte) separator;
+        this.chunkSize = chunkSize;
+        this.ordered = ordered;
+        this.maxPending = threads * 2;
+        this.schema = schema;
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileSize = channel.size();
+
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "csv-parser");
+            t.setDaemon(true);
+            return t;
+        });
+        completionService = new ExecutorCompletionService<>(executor);
+
+        try {
+            columns = new HashMap<>();
+            dataStart = readHeader(header);
+
+            chunkCount = (int) Math.max(1, (fileSize - dataStart + chunkSize - 1) / chunkSize);
+            validatedEnds = new long[chunkCount];
+            Arrays.fill(validatedEnds, -1L);
+
+            if(!ordered)
+                scanQuotes();
+        }catch (IOException ioe){
+            close(ioe);
+            throw ioe;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while(!current.hasNext()){
+            if(failed || !nextChunk())
+                return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+
+        return current.next();
+    }
+
+    @Override
+    public void close() throws Exception {
+        executor.shutdownNow();
+        channel.close();
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private void close(Exception cause){
+        try{
+            close();
+        }catch (Exception e){
+            cause.addSuppressed(e);
+        }
+    }
+
+    private long readHeader(boolean header) throws IOException {
+        long start = MappedCsvDataSource.byteOrderMarkLength(channel);
+        if(!header)
+            return start;
+
+        MappedCsvDataSource parser = new MappedCsvDataSource(channel, separator, columns, start, fileSize, chunkSize);
+        MappedCsvRecord titles = parser.readRecord();
+        if(titles != null){
+            for(int i = 0; i < titles.getFieldCount(); i++)
+                columns.put(titles.getField(i), i);
+        }
+
+        return parser.getPosition();
+    }
+
+    /**
+     * Count the quotes in each chunk, in parallel, to find which chunks start within quotes
+     * and which chunks can be returned without checking where the previous chunk ended
+     */
+    private void scanQuotes() throws IOException {
+        List<Future<MappedCsvDataSource.QuoteScan>> scans = new ArrayList<>();
+        for(int i = 0; i < chunkCount; i++){
+            long from = i == 0 ? dataStart : nominalStart(i);
+            long to = i + 1 < chunkCount ? nominalStart(i + 1) : fileSize;
+            boolean recordStart = i == 0;
+
+            scans.add(executor.submit(() -> MappedCsvDataSource.scanQuotes(channel, from, to, separator, recordStart)));
+        }
+
+        inQuotes = new boolean[chunkCount];
+        trusted = new boolean[chunkCount];
+        boolean wellFormed = true;
+        try {
+            for (int i = 0; i < chunkCount; i++) {
+                MappedCsvDataSource.QuoteScan scan = scans.get(i).get();
+
+                //The search for the start of the chunk reads from the chunk too, so it has to be well formed as well
+                wellFormed &= inQuotes[i] ? scan.wellFormedInside : scan.wellFormedOutside;
+                trusted[i] = wellFormed;
+
+                if(i + 1 < chunkCount)
+                    inQuotes[i + 1] = inQuotes[i] ^ (scan.count % 2 == 1);
+            }
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted whilst counting quotes", ie);
+        }catch (ExecutionException ee){
+            throw new IOException("Unable to count quotes", ee.getCause());
+        }
+
+        if(!wellFormed)
+            LOGGER.debug("Quotes found in the middle of fields - chunks will be returned once the previous chunk has been checked");
+    }
+
+    /**
+     * The position from which the start of the first record in the chunk is searched for
+     */
+    private long nominalStart(int index){
+        return dataStart + (long) index * chunkSize - 1;
+    }
+
+    /**
+     * The position before which records in the chunk must start
+     */
+    private long limit(int index){
+        return index + 1 < chunkCount ? nominalStart(index + 1) + 1 : fileSize;
+    }
+
+    private Chunk parseChunk(int index) throws IOException {
+        long start;
+        if(index == 0){
+            start = dataStart;
+        }else if(inQuotes == null){
+            start = MappedCsvDataSource.findLineStart(channel, nominalStart(index));
+        }else{
+            start = MappedCsvDataSource.findLineStart(channel, nominalStart(index), inQuotes[index]);
+        }
+
+        return parseChunk(index, start);
+    }
+
+    private Chunk parseChunk(int index, long start) throws IOException {
+        int windowSize = (int) Math.min(Integer.MAX_VALUE, 2L * chunkSize);
+        MappedCsvDataSource parser = new MappedCsvDataSource(channel, separator, columns, start, limit(index), windowSize);
+
+        List<MappedCsvRecord> records = new ArrayList<>();
+        MappedCsvRecord record;
+        while((record = parser.readRecord()) != null) {
+            if(schema != null)
+                schema.apply(record);
+
+            records.add(record);
+        }
+
+        return new Chunk(index, start, parser.getPosition(), records);
+    }
+
+    /**
+     * Move on to the records in the next chunk, returning false if there are no more chunks
+     */
+    private boolean nextChunk(){
+        try {
+            Chunk chunk = ordered ? nextOrderedChunk() : nextUnorderedChunk();
+            if(chunk == null)
+                return false;
+
+            current = validate(chunk).records.iterator();
+            return true;
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted whilst reading from file - no further records will be returned", ie);
+        }catch (ExecutionException ee){
+            LOGGER.error("Unable to read from file - no further records will be returned", ee.getCause());
+        }catch (IOException ioe){
+            LOGGER.error("Unable to read from file - no further records will be returned", ioe);
+        }
+
+        failed = true;
+        return false;
+    }
+
+    private Chunk nextOrderedChunk() throws InterruptedException, ExecutionException {
+        while(submitted < chunkCount && pending.size() < maxPending){
+            int index = submitted++;
+            pending.add(executor.submit(() -> parseChunk(index)));
+        }
+
+        Future<Chunk> future = pending.poll();
+        if(future == null)
+            return null;
+
+        return future.get();
+    }
+
+    private Chunk nextUnorderedChunk() throws InterruptedException, ExecutionException {
+        while(true){
+            while(submitted < chunkCount && outstanding + waiting.size() < maxPending){
+                int index = submitted++;
+                completionService.submit(() -> parseChunk(index));
+                outstanding++;
+            }
+
+            //Chunks that can be trusted to start on a record boundary are returned as soon as they are parsed,
+            //but other chunks have to wait for the previous chunk to be validated, as until then it isn't known
+            //where the previous chunk really ended
+            for(int index : waiting.keySet()){
+                if(index == 0 || trusted[index] || validatedEnds[index - 1] >= 0)
+                    return waiting.remove(index);
+            }
+
+            if(outstanding == 0)
+                return null;
+
+            Chunk chunk = completionService.take().get();
+            outstanding--;
+
+            waiting.put(chunk.index, chunk);
+        }
+    }
+
+    /**
+     * Check that the chunk started where the previous chunk ended (unless it is trusted to), and re-parse it if not
+     */
+    private Chunk validate(Chunk chunk) throws IOException {
+        if(chunk.index == 0 || (trusted != null && trusted[chunk.index]) || validatedEnds[chunk.index - 1] == chunk.start){
+            validatedEnds[chunk.index] = chunk.end;
+            return chunk;
+        }
+
+        long start = validatedEnds[chunk.index - 1];
+        LOGGER.debug("Chunk {} started at {} but the previous chunk ended at {} - re-parsing", chunk.index, chunk.start, start);
+
+        Chunk reparsed = parseChunk(chunk.index, start);
+        validatedEnds[chunk.index] = reparsed.end;
+
+        return reparsed;
+    }
+
+    private static class Chunk {
+        private final int index;
+        private final long start;
+        private final long end;
+        private final List<MappedCsvRecord> records;
+
+        Chunk(int index, long start, long end, List<MappedCsvRecord> records){
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.records = records;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Input stream that decompresses a gzip file in the blocked (BGZF) format, as produced by bgzip,
+ * in parallel.
+ *
+ * A BGZF file is a series of gzip members, each of which records its compressed size in its header.
+ * The members can therefore be found without decompressing them, and are decompressed in batches
+ * on a thread pool. The decompressed data is returned in order.
+ */
+public class ParallelGzipInputStream extends InputStream {
+    private static final int BLOCKS_PER_TASK = 64;
+    private static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    private static final int GZIP_HEADER_SIZE = 12;
+    private static final int GZIP_FOOTER_SIZE = 8;
+    private static final int FEXTRA = 4;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final ExecutorService executor;
+    private final int maxPending;
+
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private long position = 0;
+
+    private byte[] current = new byte[0];
+    private int offset = 0;
+
+    public ParallelGzipInputStream(File file, int threads) throws IOException {
+        if(threads < 1)
+            throw new IllegalArgumentException("At least one thread is required");
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileSize = channel.size();
+        maxPending = threads * 2;
+
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "gzip-inflater");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns true if the file starts with a BGZF block
+     */
+    public static boolean isBlocked(File file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            return blockSize(channel, 0) > 0;
+        }catch (EOFException eofe){
+            return false;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(!fill())
+            return -1;
+
+        return current[offset++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0)
+            return 0;
+
+        if(!fill())
+            return -1;
+
+        int n = Math.min(len, current.length - offset);
+        System.arraycopy(current, offset, b, off, n);
+        offset += n;
+
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        pending.clear();
+        channel.close();
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    /**
+     * Ensure there is decompressed data to read, returning false at the end of the file
+     */
+    private boolean fill() throws IOException {
+        while(offset >= current.length){
+            while(pending.size() < maxPending && position < fileSize){
+                long start = position;
+                int[] sizes = new int[BLOCKS_PER_TASK];
+                int count = 0;
+                while(count < BLOCKS_PER_TASK && position < fileSize){
+                    int size = blockSize(channel, position);
+                    if(size <= 0)
+                        throw new ZipException("Invalid BGZF block at position " + position);
+
+                    sizes[count++] = size;
+                    position += size;
+                }
+
+                int blockCount = count;
+                pending.add(executor.submit(() -> inflate(start, sizes, blockCount)));
+            }
+
+            Future<byte[]> next = pending.poll();
+            if(next == null)
+                return false;
+
+            try {
+                current = next.get();
+                offset = 0;
+            }catch (InterruptedException ie){
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted whilst decompressing", ie);
+            }catch (ExecutionException ee){
+                if(ee.getCause() instanceof IOException)
+                    throw (IOException) ee.getCause();
+
+                throw new IOException("Unable to decompress", ee.getCause());
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Read the size of the BGZF block starting at position, or -1 if it isn't a BGZF block
+     */
+    private static int blockSize(FileChannel channel, long position) throws IOException {
+        ByteBuffer header = read(channel, position, GZIP_HEADER_SIZE);
+        if((header.get(0) & 0xFF) != 0x1F || (header.get(1) & 0xFF) != 0x8B
+            || header.get(2) != 8 || (header.get(3) & FEXTRA) == 0)
+            return -1;
+
+        int extraLength = header.getShort(10) & 0xFFFF;
+        ByteBuffer extra = read(channel, position + GZIP_HEADER_SIZE, extraLength);
+
+        //Look for the BC subfield, which holds the block size minus one
+        int i = 0;
+        while(i + 4 <= extraLength){
+            int subfieldLength = extra.getShort(i + 2) & 0xFFFF;
+            if(extra.get(i) == 'B' && extra.get(i + 1) == 'C' && subfieldLength == 2 && i + 6 <= extraLength) {
+                int size = (extra.getShort(i + 4) & 0xFFFF) + 1;
+                return size >= GZIP_HEADER_SIZE + extraLength + GZIP_FOOTER_SIZE ? size : -1;
+            }
+
+            i += 4 + subfieldLength;
+        }
+
+        return -1;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Unexpected end of file at position " + (position + buffer.position()));
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decompress the consecutive blocks, of the given sizes, starting at start
+     */
+    private byte[] inflate(long start, int[] sizes, int count) throws IOException {
+        int length = 0;
+        for(int i = 0; i < count; i++)
+            length += sizes[i];
+
+        ByteBuffer blocks = read(channel, start, length);
+
+        //Sum the uncompressed sizes from the block footers, so the output can be allocated up front
+        int total = 0;
+        for(int i = 0, pos = 0; i < count; pos += sizes[i++]) {
+            int size = blocks.getInt(pos + sizes[i] - 4);
+            if(size < 0 || size > MAX_BLOCK_SIZE)
+                throw new ZipException("Invalid BGZF block at position " + (start + pos));
+
+            total += size;
+        }
+
+        byte[] output = new byte[total];
+        int outputOffset = 0;
+
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        try {
+            for (int i = 0, pos = 0; i < count; pos += sizes[i++]) {
+                int dataStart = pos + GZIP_HEADER_SIZE + (blocks.getShort(pos + 10) & 0xFFFF);
+                int dataEnd = pos + sizes[i] - GZIP_FOOTER_SIZE;
+
+                int expectedCrc = blocks.getInt(dataEnd);
+                int size = blocks.getInt(dataEnd + 4);
+
+                inflater.reset();
+                inflater.setInput(blocks.array(), dataStart, dataEnd - dataStart);
+
+                int inflated = 0;
+                while(inflated < size && !inflater.finished() && !inflater.needsInput())
+                    inflated += inflater.inflate(output, outputOffset + inflated, size - inflated);
+
+                if(inflated != size)
+                    throw new ZipException("Corrupt BGZF block at position " + (start + pos));
+
+                crc.reset();
+                crc.update(output, outputOffset, size);
+                if((int) crc.getValue() != expectedCrc)
+                    throw new ZipException("CRC mismatch in BGZF block at position " + (start + pos));
+
+                outputOffset += size;
+            }
+        }catch (DataFormatException dfe){
+            throw new ZipException("Corrupt BGZF block: " + dfe.getMessage());
+        }finally {
+            inflater.end();
+        }
+
+        return output;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Data source for reading from Parquet files.
+ *
+ * Only the columns that are needed are read, and row groups are decoded concurrently (and returned
+ * in the order they appear in the file). Values are converted from their Parquet types directly to
+ * the Java types used for the corresponding {@link uk.gov.nca.graph.mapper.mapping.DataType}, as
+ * described in {@link ParquetRecordConverter}.
+ */
+public class ParquetDataSource implements DataSource {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParquetDataSource.class);
+
+    private final InputFile inputFile;
+    private final List<BlockMetaData> rowGroups;
+    private final MessageType projection;
+
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final Deque<Future<List<Map<String, Object>>>> pending = new ArrayDeque<>();
+
+    private int submitted = 0;
+    private Iterator<Map<String, Object>> current = Collections.emptyIterator();
+    private boolean failed = false;
+
+    public ParquetDataSource(String file) throws IOException{
+        this(new File(file), null, 1);
+    }
+
+    /**
+     * Create a data source that reads the given fields (or all fields, if fields is null) using the
+     * given number of threads. Nested fields (e.g. address.city) are read if their top level field is
+     * given, and fields that aren't in the file are ignored.
+     */
+    public ParquetDataSource(File file, Set<String> fields, int threads) throws IOException{
+        if(threads < 1)
+            throw new IllegalArgumentException("At least one thread is required");
+
+        inputFile = new LocalInputFile(file);
+
+        MessageType schema;
+        try(ParquetFileReader reader = ParquetFileReader.open(inputFile, ParquetReadOptions.builder().build())) {
+            schema = reader.getFooter().getFileMetaData().getSchema();
+            rowGroups = reader.getRowGroups();
+        }
+
+        projection = project(schema, fields);
+        LOGGER.info("Reading {} of {} columns from {} row groups", projection.getFieldCount(), schema.getFieldCount(), rowGroups.size());
+
+        maxPending = threads + 1;
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "parquet-reader");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public boolean hasNext() {
+        while(!current.hasNext()){
+            if(failed || !nextRowGroup())
+                return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+
+        return current.next();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        pending.clear();
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private static MessageType project(MessageType schema, Set<String> fields){
+        if(fields == null)
+            return schema;
+
+        Set<String> topLevel = DataSourceOptions.topLevelFields(fields);
+
+        List<Type> projected = schema.getFields().stream()
+            .filter(t -> topLevel.contains(t.getName()))
+            .collect(Collectors.toList());
+
+        return new MessageType(schema.getName(), projected);
+    }
+
+    private boolean nextRowGroup(){
+        while(submitted < rowGroups.size() && pending.size() < maxPending){
+            int index = submitted++;
+            pending.add(executor.submit(() -> readRowGroup(index)));
+        }
+
+        Future<List<Map<String, Object>>> future = pending.poll();
+        if(future == null)
+            return false;
+
+        try {
+            current = future.get().iterator();
+            return true;
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted whilst reading from file - no further records will be returned", ie);
+        }catch (ExecutionException ee){
+            LOGGER.error("Unable to read from file - no further records will be returned", ee.getCause());
+        }
+
+        failed = true;
+        return false;
+    }
+
+    private List<Map<String, Object>> readRowGroup(int index) throws IOException {
+        //Restrict the reader to the row group's byte range, so that only the metadata for that row group
+        //is converted, rather than the reader building and then skipping all of the row groups before it
+        BlockMetaData rowGroup = rowGroups.get(index);
+        ParquetReadOptions options = ParquetReadOptions.builder()
+            .withRange(rowGroup.getStartingPos(), rowGroup.getStartingPos() + rowGroup.getCompressedSize())
+            .build();
+
+        try(ParquetFileReader reader = ParquetFileReader.open(inputFile, options)) {
+            if(reader.getRowGroups().size() != 1)
+                throw new IOException("Unable to find row group " + index);
+
+            reader.setRequestedSchema(projection);
+
+            PageReadStore pages = reader.readNextRowGroup();
+            RecordReader<Map<String, Object>> records = new ColumnIOFactory().getColumnIO(projection)
+                .getRecordReader(pages, new ParquetRecordConverter(projection));
+
+            List<Map<String, Object>> rows = new ArrayList<>((int) pages.getRowCount());
+            for(long i = 0; i < pages.getRowCount(); i++)
+                rows.add(records.read());
+
+            return rows;
+        }
+    }
+
+    /**
+     * Parquet input file that is read from the local file system, rather than through Hadoop
+     */
+    private static class LocalInputFile implements InputFile {
+        private final File file;
+
+        LocalInputFile(File file){
+            this.file = file;
+        }
+
+        @Override
+        public long getLength() {
+            return file.length();
+        }
+
+        @Override
+        public SeekableInputStream newStream() throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            InputStream stream = Channels.newInputStream(channel);
+
+            return new DelegatingSeekableInputStream(stream) {
+                @Override
+                public long getPos() throws IOException {
+                    return channel.position();
+                }
+
+                @Override
+                public void seek(long newPos) throws IOException {
+                    channel.position(newPos);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Provider for {@link ParquetDataSource}, which reads only the fields that are used, and decodes
+ * row groups on the available threads
+ */
+public class ParquetDataSourceProvider extends FileDataSourceProvider {
+    @Override
+    public String getFormat() {
+        return "PARQUET";
+    }
+
+    @Override
+    public Set<Capability> getCapabilities() {
+        return EnumSet.of(Capability.SPLITTABLE, Capability.PROJECTION);
+    }
+
+    @Override
+    protected DataSource open(File file, DataSourceOptions options) throws Exception {
+        return new ParquetDataSource(file, options.getFields(), Math.max(options.getParallelism(), 1));
+    }
+
+    @Override
+    protected DataSource open(InputStream stream, DataSourceOptions options) throws Exception {
+        throw new IOException("Parquet files can't be read from a compressed file");
+    }
+}
@@ -0,0 +1,323 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+
+/**
+ * Converts Parquet records into maps, converting values directly to the Java types expected by
+ * {@link uk.gov.nca.graph.mapper.mapping.DataTypeUtils}:
+ *
+ * <ul>
+ *     <li>Strings (UTF8, ENUM and JSON) are returned as String, and other binary values as byte[]</li>
+ *     <li>DATE is returned as LocalDate, TIME as LocalTime, and TIMESTAMP (and INT96) as ZonedDateTime in UTC</li>
+ *     <li>DECIMAL is returned as BigDecimal, and unsigned 32 bit integers as Long</li>
+ *     <li>Other values are returned as the corresponding boxed primitive</li>
+ * </ul>
+ *
+ * Nested groups are returned as maps, LIST and MAP groups as lists and maps, and other repeated fields
+ * as lists. Null values are omitted. Dictionary encoded values are converted once per dictionary entry.
+ */
+class ParquetRecordConverter extends RecordMaterializer<Map<String, Object>> {
+    private static final long JULIAN_EPOCH_OFFSET_DAYS = 2440588L;
+
+    private final GroupMapConverter root;
+
+    ParquetRecordConverter(MessageType schema){
+        root = new GroupMapConverter(schema, null);
+    }
+
+    @Override
+    public Map<String, Object> getCurrentRecord() {
+        return root.map;
+    }
+
+    @Override
+    public GroupConverter getRootConverter() {
+        return root;
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private static class GroupMapConverter extends GroupConverter {
+        private final GroupType type;
+        private final Consumer<Object> parent;
+        private final Converter[] converters;
+
+        private Map<String, Object> map;
+
+        GroupMapConverter(GroupType type, Consumer<Object> parent){
+            this.type = type;
+            this.parent = parent;
+
+            converters = new Converter[type.getFieldCount()];
+            for(int i = 0; i < converters.length; i++){
+                Type field = type.getType(i);
+                Consumer<Object> sink = value -> add(field, value);
+
+                if(field.isPrimitive()){
+                    converters[i] = new ValueConverter(field.asPrimitiveType(), sink);
+                }else{
+                    converters[i] = new GroupMapConverter(field.asGroupType(), sink);
+                }
+            }
+        }
+
+        @Override
+        public Converter getConverter(int fieldIndex) {
+            return converters[fieldIndex];
+        }
+
+        @Override
+        public void start() {
+            map = new HashMap<>();
+        }
+
+        @Override
+        public void end() {
+            if(parent == null)
+                return;
+
+            if(type.getOriginalType() == OriginalType.LIST){
+                parent.accept(toList());
+            }else if(type.getOriginalType() == OriginalType.MAP || type.getOriginalType() == OriginalType.MAP_KEY_VALUE){
+                parent.accept(toMap());
+            }else{
+                parent.accept(map);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void add(Type field, Object value){
+            if(field.isRepetition(Type.Repetition.REPEATED)){
+                ((List<Object>) map.computeIfAbsent(field.getName(), k -> new ArrayList<>())).add(value);
+            }else{
+                map.put(field.getName(), value);
+            }
+        }
+
+        /**
+         * Unwrap a LIST group, which contains a repeated field that (usually) contains a single element
+         */
+        @SuppressWarnings("unchecked")
+        private List<Object> toList(){
+            if(map.isEmpty())
+                return Collections.emptyList();
+
+            List<Object> list = (List<Object>) map.values().iterator().next();
+
+            //Elements are usually wrapped in a group with a single field, rather than being repeated directly
+            Type repeated = type.getType(0);
+            if(!repeated.isPrimitive() && repeated.asGroupType().getFieldCount() == 1){
+                for(int i = 0; i < list.size(); i++){
+                    Map<String, Object> element = (Map<String, Object>) list.get(i);
+                    list.set(i, element.isEmpty() ? null : element.values().iterator().next());
+                }
+            }
+
+            return list;
+        }
+
+        /**
+         * Unwrap a MAP group, which contains a repeated group of keys and values
+         */
+        @SuppressWarnings("unchecked")
+        private Map<String, Object> toMap(){
+            Map<String, Object> result = new LinkedHashMap<>();
+            if(map.isEmpty())
+                return result;
+
+            for(Object o : (List<Object>) map.values().iterator().next()){
+                Map<String, Object> keyValue = (Map<String, Object>) o;
+                result.put(String.valueOf(keyValue.get("key")), keyValue.get("value"));
+            }
+
+            return result;
+        }
+    }
+
+    private static class ValueConverter extends PrimitiveConverter {
+        private final PrimitiveType type;
+        private final Consumer<Object> sink;
+
+        private Object[] dictionary = null;
+
+        ValueConverter(PrimitiveType type, Consumer<Object> sink){
+            this.type = type;
+            this.sink = sink;
+        }
+
+        @Override
+        public boolean hasDictionarySupport() {
+            return true;
+        }
+
+        @Override
+        public void setDictionary(Dictionary d) {
+            dictionary = new Object[d.getMaxId() + 1];
+            for(int i = 0; i < dictionary.length; i++){
+                switch (type.getPrimitiveTypeName()){
+                    case BOOLEAN:
+                        dictionary[i] = d.decodeToBoolean(i);
+                        break;
+                    case INT32:
+                        dictionary[i] = convert(d.decodeToInt(i));
+                        break;
+                    case INT64:
+                        dictionary[i] = convert(d.decodeToLong(i));
+                        break;
+                    case FLOAT:
+                        dictionary[i] = d.decodeToFloat(i);
+                        break;
+                    case DOUBLE:
+                        dictionary[i] = d.decodeToDouble(i);
+                        break;
+                    default:
+                        dictionary[i] = convert(d.decodeToBinary(i));
+                }
+            }
+        }
+
+        @Override
+        public void addValueFromDictionary(int dictionaryId) {
+            sink.accept(dictionary[dictionaryId]);
+        }
+
+        @Override
+        public void addBoolean(boolean value) {
+            sink.accept(value);
+        }
+
+        @Override
+        public void addInt(int value) {
+            sink.accept(convert(value));
+        }
+
+        @Override
+        public void addLong(long value) {
+            sink.accept(convert(value));
+        }
+
+        @Override
+        public void addFloat(float value) {
+            sink.accept(value);
+        }
+
+        @Override
+        public void addDouble(double value) {
+            sink.accept(value);
+        }
+
+        @Override
+        public void addBinary(Binary value) {
+            sink.accept(convert(value));
+        }
+
+        private Object convert(int value){
+            if(type.getOriginalType() == null)
+                return value;
+
+            switch (type.getOriginalType()){
+                case DATE:
+                    return LocalDate.ofEpochDay(value);
+                case TIME_MILLIS:
+                    return LocalTime.ofNanoOfDay(value * 1_000_000L);
+                case DECIMAL:
+                    return BigDecimal.valueOf(value, type.getDecimalMetadata().getScale());
+                case UINT_32:
+                    return Integer.toUnsignedLong(value);
+                default:
+                    return value;
+            }
+        }
+
+        private Object convert(long value){
+            if(type.getOriginalType() == null)
+                return value;
+
+            switch (type.getOriginalType()){
+                case TIMESTAMP_MILLIS:
+                    return Instant.ofEpochMilli(value).atZone(ZoneOffset.UTC);
+                case TIMESTAMP_MICROS:
+                    return Instant.ofEpochSecond(Math.floorDiv(value, 1_000_000L), Math.floorMod(value, 1_000_000L) * 1000).atZone(ZoneOffset.UTC);
+                case TIME_MICROS:
+                    return LocalTime.ofNanoOfDay(value * 1000);
+                case DECIMAL:
+                    return BigDecimal.valueOf(value, type.getDecimalMetadata().getScale());
+                default:
+                    return value;
+            }
+        }
+
+        private Object convert(Binary value){
+            if(type.getPrimitiveTypeName() == PrimitiveTypeName.INT96)
+                return toTimestamp(value);
+
+            if(type.getOriginalType() == null)
+                return value.getBytes();
+
+            switch (type.getOriginalType()){
+                case UTF8:
+                case ENUM:
+                case JSON:
+                    return value.toStringUsingUTF8();
+                case DECIMAL:
+                    return new BigDecimal(new BigInteger(value.getBytes()), type.getDecimalMetadata().getScale());
+                default:
+                    return value.getBytes();
+            }
+        }
+
+        /**
+         * Convert an INT96 timestamp (as written by Impala and Hive), which holds the nanoseconds of the
+         * day followed by the Julian day
+         */
+        private static Object toTimestamp(Binary value){
+            ByteBuffer buffer = value.toByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            long nanos = buffer.getLong();
+            long epochDay = buffer.getInt() - JULIAN_EPOCH_OFFSET_DAYS;
+
+            return LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneOffset.UTC).plusNanos(nanos);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Data source that reads records from several independent partitions of the data concurrently,
+ * creating a separate data source for each partition. Partitions are read on a bounded thread pool,
+ * and records are passed in batches to whichever thread is reading from this data source, so that
+ * only a single thread writes to the graph.
+ *
+ * Records from different partitions are interleaved, but records from the same partition are returned
+ * in order. If a partition can't be read, an error is logged and the remaining partitions are still read.
+ */
+public class PartitionedDataSource implements DataSource {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedDataSource.class);
+
+    private static final int BATCH_SIZE = 256;
+
+    //Added to the queue when a partition has been read, whether or not it was successful
+    private static final List<Map<String, Object>> END_OF_PARTITION = Collections.emptyList();
+
+    private final ExecutorService executor;
+    private final BlockingQueue<List<Map<String, Object>>> queue;
+
+    private int remainingPartitions;
+    private Iterator<Map<String, Object>> current = Collections.emptyIterator();
+    private volatile boolean closed = false;
+
+    /**
+     * A part of the data that can be read independently of the other parts
+     */
+    public interface Partition {
+        /**
+         * Name of the partition, used when logging
+         */
+        String getName();
+
+        DataSource open() throws Exception;
+    }
+
+    public PartitionedDataSource(List<? extends Partition> partitions, int threads){
+        if(threads < 1)
+            throw new IllegalArgumentException("At least one thread is required");
+
+        this.remainingPartitions = partitions.size();
+        this.queue = new ArrayBlockingQueue<>(threads * 4);
+
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "partition-reader");
+            t.setDaemon(true);
+            return t;
+        });
+
+        for(Partition partition : partitions)
+            executor.submit(() -> read(partition));
+
+        executor.shutdown();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while(!current.hasNext()){
+            if(remainingPartitions == 0)
+                return false;
+
+            try {
+                List<Map<String, Object>> batch = queue.take();
+                if(batch == END_OF_PARTITION){
+                    remainingPartitions--;
+                }else{
+                    current = batch.iterator();
+                }
+            }catch (InterruptedException ie){
+                Thread.currentThread().interrupt();
+                LOGGER.error("Interrupted whilst reading partitions - no further records will be returned", ie);
+
+                remainingPartitions = 0;
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+
+        return current.next();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        queue.clear();
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private void read(Partition partition){
+        long startTime = System.currentTimeMillis();
+        long count = 0;
+
+        try(DataSource dataSource = partition.open()){
+            if(dataSource == null)
+                throw new IllegalStateException("Unable to create data source");
+
+            List<Map<String, Object>> batch = new ArrayList<>(BATCH_SIZE);
+            while(!closed && dataSource.hasNext()){
+                batch.add(dataSource.next());
+                count++;
+
+                if(batch.size() >= BATCH_SIZE){
+                    queue.put(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+
+            if(!batch.isEmpty())
+                queue.put(batch);
+
+            long time = System.currentTimeMillis() - startTime;
+            LOGGER.info("Read {} records from {} in {} ms ({} records/s)", count, partition.getName(), time, count * 1000 / Math.max(time, 1));
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+        }catch (Exception e){
+            LOGGER.error("Unable to read from {} - {} records were read", partition.getName(), count, e);
+        }finally {
+            try {
+                queue.put(END_OF_PARTITION);
+            }catch (InterruptedException ie){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Data source that reads ahead from another data source on a background thread, so that waiting
+ * for the underlying data source (e.g. for a database or network) overlaps with processing the
+ * records that have already been read.
+ *
+ * Records are passed between threads in batches, and at most depth batches are held in memory.
+ * If the underlying data source throws an exception, it is rethrown by this data source once the
+ * records read before the exception have been returned.
+ */
+public class PrefetchingDataSource implements DataSource {
+    public static final int DEFAULT_DEPTH = 16;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrefetchingDataSource.class);
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+
+    //Added to the queue once the underlying data source has been read, whether or not it was successful
+    private static final List<Map<String, Object>> END = Collections.emptyList();
+
+    private final DataSource dataSource;
+    private final int batchSize;
+    private final BlockingQueue<List<Map<String, Object>>> queue;
+    private final Thread reader;
+
+    private volatile boolean closed = false;
+    private volatile Throwable error = null;
+
+    private Iterator<Map<String, Object>> current = Collections.emptyIterator();
+    private boolean finished = false;
+    private long count = 0;
+    private long waitNanos = 0;
+
+    public PrefetchingDataSource(DataSource dataSource){
+        this(dataSource, DEFAULT_DEPTH, DEFAULT_BATCH_SIZE);
+    }
+
+    public PrefetchingDataSource(DataSource dataSource, int depth, int batchSize){
+        if(depth < 1 || batchSize < 1)
+            throw new IllegalArgumentException("Depth and batch size must be at least 1");
+
+        this.dataSource = dataSource;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(depth);
+
+        reader = new Thread(this::read, "prefetch");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while(!current.hasNext()){
+            if(finished)
+                return false;
+
+            List<Map<String, Object>> batch;
+            try {
+                long start = System.nanoTime();
+                batch = queue.take();
+                waitNanos += System.nanoTime() - start;
+            }catch (InterruptedException ie){
+                Thread.currentThread().interrupt();
+                LOGGER.error("Interrupted whilst waiting for data source - no further records will be returned", ie);
+
+                finished = true;
+                return false;
+            }
+
+            if(batch == END){
+                finished = true;
+                rethrowError();
+
+                return false;
+            }
+
+            current = batch.iterator();
+        }
+
+        return true;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+
+        count++;
+        return current.next();
+    }
+
+    /**
+     * Stop reading ahead and close the underlying data source
+     */
+    @Override
+    public void close() throws Exception {
+        closed = true;
+        reader.interrupt();
+        queue.clear();
+
+        reader.join(CLOSE_TIMEOUT_MS);
+        if(reader.isAlive())
+            LOGGER.warn("Data source is still being read after {} ms, and will be closed anyway", CLOSE_TIMEOUT_MS);
+
+        LOGGER.info("Returned {} prefetched records, and waited {} ms for the data source", count, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+
+        dataSource.close();
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private void read(){
+        List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+        try {
+            while(!closed && dataSource.hasNext()){
+                batch.add(dataSource.next());
+
+                if(batch.size() >= batchSize){
+                    queue.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }catch (RuntimeException | Error e){
+            error = e;
+        }catch (InterruptedException ie){
+            //Closed whilst waiting for space in the queue
+            return;
+        }
+
+        //Pass on the records read before any error, followed by the end marker
+        try {
+            if(!batch.isEmpty())
+                queue.put(batch);
+
+            queue.put(END);
+        }catch (InterruptedException ie){
+            //Closed, so there is nothing waiting for the records
+        }
+    }
+
+    private void rethrowError(){
+        Throwable t = error;
+        if(t == null)
+            return;
+
+        error = null;
+        if(t instanceof Error)
+            throw (Error) t;
+
+        throw (RuntimeException) t;
+    }
+}
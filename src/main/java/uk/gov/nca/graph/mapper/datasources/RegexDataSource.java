@@ -20,11 +20,13 @@ import com.google.re2j.Pattern;
 import com.google.re2j.Matcher;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 /**
  * Data source for reading from a file, using a RegEx to match records
@@ -42,6 +44,10 @@ public class RegexDataSource implements DataSource{
     this(FileUtils.readFileToString(file, Charset.defaultCharset()), pattern);
   }
 
+  public RegexDataSource(InputStream stream, Charset encoding, Pattern pattern) throws IOException {
+    this(IOUtils.toString(stream, encoding), pattern);
+  }
+
   public RegexDataSource(String text, Pattern pattern){
     matcher = pattern.matcher(text);
   }
@@ -0,0 +1,53 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package uk.gov.nca.graph.mapper.datasources;
+
+import com.google.re2j.Pattern;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Provider for {@link RegexDataSource}, which matches the pattern given by the query parameter
+ */
+public class RegexDataSourceProvider extends FileDataSourceProvider {
+    public static final String QUERY = "query";
+    public static final String IGNORE_CASE = "ignorecase";
+
+    @Override
+    public String getFormat() {
+        return "REGEX";
+    }
+
+    @Override
+    protected DataSource open(File file, DataSourceOptions options) throws Exception {
+        return new RegexDataSource(file, getPattern(options));
+    }
+
+    @Override
+    protected DataSource open(InputStream stream, DataSourceOptions options) throws Exception {
+        return new RegexDataSource(stream, Charset.defaultCharset(), getPattern(options));
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private static Pattern getPattern(DataSourceOptions options){
+        if(Boolean.parseBoolean(options.getParameter(IGNORE_CASE)))
+            return Pattern.compile(options.getParameter(QUERY), Pattern.CASE_INSENSITIVE);
+
+        return Pattern.compile(options.getParameter(QUERY));
+    }
+}
@@ -16,31 +16,86 @@ limitations under the License.
 
 package uk.gov.nca.graph.mapper.datasources;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.Date;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.mapper.Configuration;
+import uk.gov.nca.graph.mapper.mapping.DataType;
 
 /**
  * Data source for reading from an SQL database
  */
-public class SqlDataSource implements DataSource{
+public class SqlDataSource implements DataSource, Checkpointable{
 
     private Connection conn = null;
     private ResultSet rs = null;
     private long count = 0;
 
+    private String[] columnNames;
+    private String[] columnIndexes;
+    private ColumnReader[] readers;
+
+    private int keyColumn = 0;
+    private String lastKey;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(SqlDataSource.class);
 
     public SqlDataSource(String jdbcConnection, String table, String username, String password, String query) throws SQLException{
+        this(jdbcConnection, table, username, password, query, Collections.emptyMap());
+    }
+
+    public SqlDataSource(String jdbcConnection, String table, String username, String password, String query, Map<String, Object> filters) throws SQLException{
+        this(jdbcConnection, table, username, password, query, filters, Collections.emptyMap());
+    }
+
+    public SqlDataSource(String jdbcConnection, String table, String username, String password, String query,
+        Map<String, Object> filters, Map<String, DataType> fieldTypes) throws SQLException{
+        this(jdbcConnection, table, username, password, query, filters, fieldTypes, null, null);
+    }
+
+    /**
+     * Create a data source that reads from the table, or the results of the query if one is given.
+     * If reading from a table, then the filters (in the same format as the mapping configuration) are
+     * added to the query where possible, so that fewer rows are returned. Rows that don't match the
+     * filters may still be returned.
+     *
+     * Columns whose name (or index) is in fieldTypes are read with the getter for that data type where
+     * the column's SQL type allows it, so that the value doesn't need to be converted by the mapping.
+     *
+     * If key is given, rows are read in the order of that column, which must be unique, so that reading
+     * can be resumed after the last key read (see {@link #getCheckpoint()}). If checkpoint is also given,
+     * then only rows with a greater key are read.
+     */
+    public SqlDataSource(String jdbcConnection, String table, String username, String password, String query,
+        Map<String, Object> filters, Map<String, DataType> fieldTypes, String key, String checkpoint) throws SQLException{
+        this(jdbcConnection, table, username, password, query, filters, fieldTypes, key, checkpoint, false);
+    }
+
+    /**
+     * As above, but if inclusive is true then rows with a key equal to the checkpoint are also read,
+     * so that a column that isn't unique (e.g. the time a row was last updated) can be used as a watermark
+     */
+    public SqlDataSource(String jdbcConnection, String table, String username, String password, String query,
+        Map<String, Object> filters, Map<String, DataType> fieldTypes, String key, String checkpoint, boolean inclusive) throws SQLException{
         if (username != null && !username.isEmpty() && password != null) {
             LOGGER.info("Connecting to SQL database with username and password");
             conn = DriverManager.getConnection(jdbcConnection, username, password);
@@ -49,8 +104,30 @@ public class SqlDataSource implements DataSource{
             conn = DriverManager.getConnection(jdbcConnection);
         }
 
-        PreparedStatement ps = conn.prepareStatement(query != null ? query : "SELECT * FROM `"+table+"`");
+        PreparedStatement ps;
+        if(query == null){
+            ps = prepareTableQuery("SELECT * FROM `"+table+"`", filters, key, checkpoint, inclusive);
+        }else if(key != null){
+            ps = prepareTableQuery("SELECT * FROM ("+query+") q", Collections.emptyMap(), key, checkpoint, inclusive);
+        }else{
+            ps = conn.prepareStatement(query);
+        }
         rs = ps.executeQuery();
+
+        initReaders(rs.getMetaData(), fieldTypes);
+
+        if(key != null) {
+            keyColumn = rs.findColumn(key);
+            lastKey = checkpoint;
+        }
+    }
+
+    /**
+     * The value of the key column in the last row returned, or null if no key was given
+     */
+    @Override
+    public String getCheckpoint() {
+        return lastKey;
     }
 
     @Override
@@ -81,14 +158,17 @@ public class SqlDataSource implements DataSource{
 
         try {
             rs.next();
-            Map<String, Object> data = new HashMap<>();
+            String key = keyColumn > 0 ? rs.getString(keyColumn) : null;
+            if(key != null)
+                lastKey = key;
 
-            for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-                String key = rs.getMetaData().getColumnName(i);
-                Object value = rs.getObject(i);
+            Map<String, Object> data = new HashMap<>(columnNames.length * 4);
 
-                data.put(key, value);
-                data.put(Integer.toString(i), value);
+            for (int i = 0; i < columnNames.length; i++) {
+                Object value = readers[i].read(rs, i + 1);
+
+                data.put(columnNames[i], value);
+                data.put(columnIndexes[i], value);
             }
 
             return data;
@@ -97,4 +177,215 @@ public class SqlDataSource implements DataSource{
             throw new NoSuchElementException();
         }
     }
+
+    //Private functions below here to keep rest of code tidy
+
+    /**
+     * Read a single column from the current row of a result set
+     */
+    @FunctionalInterface
+    private interface ColumnReader {
+        Object read(ResultSet rs, int column) throws SQLException;
+    }
+
+    /**
+     * Look up the column names and SQL types once, and choose how each column will be read
+     */
+    private void initReaders(ResultSetMetaData metaData, Map<String, DataType> fieldTypes) throws SQLException{
+        int columnCount = metaData.getColumnCount();
+
+        columnNames = new String[columnCount];
+        columnIndexes = new String[columnCount];
+        readers = new ColumnReader[columnCount];
+
+        int typed = 0;
+        for(int i = 0; i < columnCount; i++){
+            columnNames[i] = metaData.getColumnName(i + 1);
+            columnIndexes[i] = Integer.toString(i + 1);
+
+            DataType dataType = fieldTypes.getOrDefault(columnNames[i], fieldTypes.get(columnIndexes[i]));
+            ColumnReader reader = dataType == null ? null : getReader(metaData.getColumnType(i + 1), dataType);
+
+            if(reader != null){
+                readers[i] = reader;
+                typed++;
+            }else{
+                readers[i] = ResultSet::getObject;
+            }
+        }
+
+        if(typed > 0)
+            LOGGER.info("Reading {} of {} columns as the type they are mapped to", typed, columnCount);
+    }
+
+    /**
+     * Get a reader that returns the column as the data type, or null if the column should be read
+     * as an object and converted by the mapping
+     */
+    private static ColumnReader getReader(int sqlType, DataType dataType){
+        switch (dataType){
+            case STRING:
+                if(isCharacter(sqlType))
+                    return ResultSet::getString;
+                break;
+            case BOOLEAN:
+                if(sqlType == Types.BOOLEAN || sqlType == Types.BIT)
+                    return (rs, i) -> {
+                        boolean b = rs.getBoolean(i);
+                        return rs.wasNull() ? null : b;
+                    };
+                break;
+            case INTEGER:
+                if(sqlType == Types.TINYINT || sqlType == Types.SMALLINT || sqlType == Types.INTEGER)
+                    return (rs, i) -> {
+                        int n = rs.getInt(i);
+                        return rs.wasNull() ? null : n;
+                    };
+
+                //Read as a long, and let the mapping check the range
+                if(sqlType == Types.BIGINT)
+                    return SqlDataSource::readLong;
+                break;
+            case LONG:
+                if(isInteger(sqlType))
+                    return SqlDataSource::readLong;
+                break;
+            case DOUBLE:
+                if(isInteger(sqlType) || isDecimal(sqlType))
+                    return (rs, i) -> {
+                        double d = rs.getDouble(i);
+                        return rs.wasNull() ? null : d;
+                    };
+                break;
+            case DATE:
+                if(sqlType == Types.DATE)
+                    return (rs, i) -> {
+                        Date d = rs.getDate(i);
+                        return d == null ? null : d.toLocalDate();
+                    };
+
+                if(sqlType == Types.TIMESTAMP)
+                    return (rs, i) -> {
+                        Timestamp ts = rs.getTimestamp(i);
+                        return ts == null ? null : ts.toLocalDateTime().toLocalDate();
+                    };
+                break;
+            case DATETIME:
+                //Timestamps without a time zone are treated as UTC, as they are by DataTypeUtils
+                if(sqlType == Types.TIMESTAMP)
+                    return (rs, i) -> {
+                        Timestamp ts = rs.getTimestamp(i);
+                        return ts == null ? null : ts.toLocalDateTime().atZone(ZoneOffset.UTC);
+                    };
+                break;
+            case TIME:
+                if(sqlType == Types.TIME)
+                    return (rs, i) -> {
+                        Time t = rs.getTime(i);
+                        return t == null ? null : t.toLocalTime();
+                    };
+                break;
+            default:
+                break;
+        }
+
+        return null;
+    }
+
+    private static Object readLong(ResultSet rs, int column) throws SQLException{
+        long l = rs.getLong(column);
+        return rs.wasNull() ? null : l;
+    }
+
+    private static boolean isInteger(int sqlType){
+        return sqlType == Types.TINYINT || sqlType == Types.SMALLINT || sqlType == Types.INTEGER || sqlType == Types.BIGINT;
+    }
+
+    private static boolean isDecimal(int sqlType){
+        return sqlType == Types.REAL || sqlType == Types.FLOAT || sqlType == Types.DOUBLE
+            || sqlType == Types.NUMERIC || sqlType == Types.DECIMAL;
+    }
+
+    private static boolean isCharacter(int sqlType){
+        return sqlType == Types.CHAR || sqlType == Types.VARCHAR || sqlType == Types.LONGVARCHAR
+            || sqlType == Types.NCHAR || sqlType == Types.NVARCHAR || sqlType == Types.LONGNVARCHAR;
+    }
+
+    private PreparedStatement prepareTableQuery(String select, Map<String, Object> filters, String key, String checkpoint,
+        boolean inclusive) throws SQLException{
+        if(filters.isEmpty() && key == null)
+            return conn.prepareStatement(select);
+
+        //Filters on fields that aren't columns, or that SQL can't compare in the same way, are left to the mapping
+        Map<String, Integer> columns = new HashMap<>();
+        try(PreparedStatement ps = conn.prepareStatement(select + " WHERE 1 = 0"); ResultSet empty = ps.executeQuery()){
+            for(int i = 1; i <= empty.getMetaData().getColumnCount(); i++)
+                columns.put(empty.getMetaData().getColumnName(i), empty.getMetaData().getColumnType(i));
+        }
+
+        if(key != null && !columns.containsKey(key))
+            throw new SQLException("Key column " + key + " not found");
+
+        StringBuilder sb = new StringBuilder(select);
+        List<Object> parameters = new ArrayList<>();
+        for(Map.Entry<String, Object> e : filters.entrySet()){
+            if(e.getKey().equals(Configuration.EXISTS) || !columns.containsKey(e.getKey()))
+                continue;
+
+            List<?> values = e.getValue() instanceof List ? (List<?>) e.getValue() : Collections.singletonList(e.getValue());
+            if(values.isEmpty() || !values.stream().allMatch(SqlDataSource::isComparable))
+                continue;
+
+            sb.append(parameters.isEmpty() ? " WHERE " : " AND ");
+            sb.append('`').append(e.getKey()).append("` IN (");
+            sb.append(String.join(", ", Collections.nCopies(values.size(), "?")));
+            sb.append(')');
+
+            parameters.addAll(values);
+        }
+
+        if(!parameters.isEmpty())
+            LOGGER.info("Filtering table with query: {}", sb);
+
+        if(key != null && checkpoint != null){
+            LOGGER.info("Reading rows with {} {} {}", key, inclusive ? "from" : "after", checkpoint);
+
+            sb.append(parameters.isEmpty() ? " WHERE " : " AND ");
+            sb.append('`').append(key).append(inclusive ? "` >= ?" : "` > ?");
+
+            parameters.add(parseKey(checkpoint, columns.get(key)));
+        }
+
+        if(key != null)
+            sb.append(" ORDER BY `").append(key).append('`');
+
+        PreparedStatement ps = conn.prepareStatement(sb.toString());
+        for(int i = 0; i < parameters.size(); i++)
+            ps.setObject(i + 1, parameters.get(i));
+
+        return ps;
+    }
+
+    /**
+     * Convert a key read as a string back to a type that can be compared with the key column
+     */
+    private static Object parseKey(String key, int sqlType){
+        if(isInteger(sqlType))
+            return Long.parseLong(key);
+
+        if(isDecimal(sqlType))
+            return new BigDecimal(key);
+
+        if(sqlType == Types.DATE)
+            return Date.valueOf(key);
+
+        if(sqlType == Types.TIMESTAMP)
+            return Timestamp.valueOf(key);
+
+        return key;
+    }
+
+    private static boolean isComparable(Object o){
+        return o instanceof String || o instanceof Number || o instanceof Boolean;
+    }
 }
@@ -0,0 +1,61 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.util.EnumSet;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provider for {@link SqlDataSource}, where the location is the JDBC connection string.
+ * If the key parameter is set, rows are read in order of that column and can be resumed from a checkpoint.
+ * If the watermark parameter is set instead, only rows whose watermark is at least the checkpoint are read.
+ */
+public class SqlDataSourceProvider implements DataSourceProvider {
+    public static final String TABLE = "table";
+    public static final String QUERY = "query";
+    public static final String USERNAME = "username";
+    public static final String PASSWORD = "password";
+    public static final String KEY = "key";
+    public static final String WATERMARK = "watermark";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SqlDataSourceProvider.class);
+
+    @Override
+    public String getFormat() {
+        return "SQL";
+    }
+
+    @Override
+    public Set<Capability> getCapabilities() {
+        return EnumSet.of(Capability.FILTER_PUSHDOWN, Capability.TYPED_FIELDS, Capability.WATERMARK);
+    }
+
+    @Override
+    public DataSource open(DataSourceOptions options) throws Exception {
+        if(options.hasParameter(QUERY))
+            LOGGER.info("Filtering data with query: {}", options.getParameter(QUERY));
+
+        //A watermark is used as the key, but may not be unique
+        boolean watermark = options.hasParameter(WATERMARK);
+        String key = watermark ? options.getParameter(WATERMARK) : options.getParameter(KEY);
+
+        return new SqlDataSource(options.getLocation(), options.getParameter(TABLE), options.getParameter(USERNAME),
+            options.getParameter(PASSWORD), options.getParameter(QUERY), options.getFilters(), options.getFieldTypes(),
+            key, options.getCheckpoint(), watermark);
+    }
+}
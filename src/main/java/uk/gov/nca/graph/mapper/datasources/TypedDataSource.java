@@ -0,0 +1,48 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.util.Map;
+
+/**
+ * Data source that converts the columns of another data source to the types given by a {@link CsvSchema},
+ * so that the mapping doesn't need to parse them
+ */
+public class TypedDataSource implements DataSource {
+    private final DataSource dataSource;
+    private final CsvSchema schema;
+
+    public TypedDataSource(DataSource dataSource, CsvSchema schema){
+        this.dataSource = dataSource;
+        this.schema = schema;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return dataSource.hasNext();
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        return schema.apply(dataSource.next());
+    }
+
+    @Override
+    public void close() throws Exception {
+        dataSource.close();
+    }
+}
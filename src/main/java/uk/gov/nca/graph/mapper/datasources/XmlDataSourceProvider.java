@@ -0,0 +1,46 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package uk.gov.nca.graph.mapper.datasources;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * Provider for {@link XmlDataSource}, which reads the elements named by the element parameter
+ */
+public class XmlDataSourceProvider extends FileDataSourceProvider {
+    public static final String ELEMENT = "element";
+
+    @Override
+    public String getFormat() {
+        return "XML";
+    }
+
+    @Override
+    protected DataSource open(File file, DataSourceOptions options) throws Exception {
+        return new XmlDataSource(file.getPath(), options.getParameter(ELEMENT));
+    }
+
+    @Override
+    protected DataSource open(InputStream stream, DataSourceOptions options) throws Exception {
+        return new XmlDataSource(stream, options.getParameter(ELEMENT));
+    }
+
+    @Override
+    protected boolean isStreaming() {
+        return true;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.index;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Set of edges, identified by (source vertex ID, label, target vertex ID), held off-heap in a {@link MappedHashTable}.
+ *
+ * Each edge is stored as a 128-bit fingerprint rather than the full key, so there is a very small
+ * chance (roughly 2^-128 per pair of edges) that two different edges will be treated as the same edge.
+ *
+ * The set is held in direct memory, or can be spilled to a memory-mapped file if it is expected to
+ * be too large for memory. The file is only used as scratch space, and is deleted when the set is closed.
+ */
+public class EdgeSet implements AutoCloseable {
+    private static final long SEED_1 = 0x6564676573657431L;
+    private static final long SEED_2 = 0x6564676573657432L;
+    private static final long DEFAULT_CAPACITY = 1_000_000L;
+
+    private final MappedHashTable table;
+
+    /**
+     * Create a set held in direct memory
+     */
+    public EdgeSet(){
+        table = new MappedHashTable(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a set held in a memory-mapped file, replacing the file if it already exists
+     */
+    public EdgeSet(File file) throws IOException {
+        if(file.exists() && !file.delete())
+            throw new IOException("Unable to delete " + file);
+
+        table = new MappedHashTable(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Add an edge to the set, returning true if it wasn't already present
+     */
+    public boolean add(Object sourceId, String label, Object targetId){
+        String key = Hashing.edgeKey(sourceId, label, targetId);
+        return table.addPair(Hashing.hash(key, SEED_1), Hashing.hash(key, SEED_2));
+    }
+
+    /**
+     * Returns true if the edge is present in the set
+     */
+    public boolean contains(Object sourceId, String label, Object targetId){
+        String key = Hashing.edgeKey(sourceId, label, targetId);
+        return table.containsPair(Hashing.hash(key, SEED_1), Hashing.hash(key, SEED_2));
+    }
+
+    /**
+     * Remove an edge from the set, returning true if it was present
+     */
+    public boolean remove(Object sourceId, String label, Object targetId){
+        String key = Hashing.edgeKey(sourceId, label, targetId);
+        return table.removePair(Hashing.hash(key, SEED_1), Hashing.hash(key, SEED_2));
+    }
+
+    /**
+     * Remove all edges from the set
+     */
+    public void clear(){
+        table.clear();
+    }
+
+    /**
+     * Number of edges in the set
+     */
+    public long size(){
+        return table.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        File file = table.getFile();
+        table.close();
+
+        if(file != null && file.exists() && !file.delete())
+            throw new IOException("Unable to delete " + file);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.index;
+
+/**
+ * Utility class for producing 64-bit hashes of keys, for use in the off-heap indices
+ */
+public class Hashing {
+    private Hashing(){}
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+
+    /**
+     * Create a key for a vertex from its label and identifier. The type of the identifier
+     * is included, as identifiers of different types are different values in the graph.
+     */
+    public static String identifierKey(String label, Object identifier){
+        return label + '\u0000' + identifier.getClass().getName() + '\u0000' + identifier;
+    }
+
+    /**
+     * Create a key for an edge from the IDs of its source and target vertices, and its label
+     */
+    public static String edgeKey(Object sourceId, String label, Object targetId){
+        return sourceId.getClass().getName() + '\u0000' + sourceId + '\u0000' + label + '\u0000'
+            + targetId.getClass().getName() + '\u0000' + targetId;
+    }
+
+    /**
+     * Hash a sequence of characters with the given seed. Different seeds produce independent hashes.
+     */
+    public static long hash(CharSequence s, long seed){
+        long h = seed ^ (s.length() * PRIME_1);
+
+        int i = 0;
+        for(; i + 4 <= s.length(); i += 4){
+            long block = ((long) s.charAt(i)) | ((long) s.charAt(i + 1) << 16)
+                | ((long) s.charAt(i + 2) << 32) | ((long) s.charAt(i + 3) << 48);
+
+            h ^= Long.rotateLeft(block * PRIME_2, 31) * PRIME_1;
+            h = Long.rotateLeft(h, 27) * PRIME_1 + PRIME_2;
+        }
+
+        for(; i < s.length(); i++){
+            h ^= s.charAt(i) * PRIME_1;
+            h = Long.rotateLeft(h, 23) * PRIME_2;
+        }
+
+        return mix(h);
+    }
+
+    /**
+     * Combine two hashes into a new hash
+     */
+    public static long combine(long h1, long h2){
+        return mix(h1 * PRIME_1 + Long.rotateLeft(h2, 29));
+    }
+
+    /**
+     * Finalisation step from MurmurHash3, to spread bits across the whole of the hash
+     */
+    public static long mix(long h){
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Index from (label, identifier) to vertex ID, held off-heap in a {@link MappedHashTable}.
+ *
+ * Only a 64-bit hash of each key is stored in the table, so a value returned by {@link #get(String, Object)}
+ * is a candidate that the caller must check against the graph. Keys whose hash collides with a key
+ * that is already stored in the table are held in a small on-heap side table, which is checked first.
+ *
+ * If the index is file-backed, the side table is persisted in a second file alongside the table
+ * (with the suffix .collisions) so that the index can be reused between runs. The header of the
+ * file also records whether the index is complete (i.e. holds every identifier in the graph), and
+ * a checksum of the graph it was built against, so that it can be validated on reuse.
+ *
+ * Only numeric vertex IDs (or String representations of numeric IDs) between -2^61 and 2^61 can be indexed.
+ */
+public class IdentifierIndex implements AutoCloseable {
+    private static final long SEED = 0x6964656E74696669L;
+    private static final long DEFAULT_CAPACITY = 1_000_000L;
+    private static final long NO_ID = Long.MIN_VALUE;
+
+    private static final int HEADER_COMPLETE = 0;
+    private static final int HEADER_CHECKSUM = 1;
+
+    //IDs are stored shifted left by two bits, with the type of the ID in the lower two bits
+    private static final long ID_LONG = 1;
+    private static final long ID_INTEGER = 2;
+    private static final long ID_STRING = 3;
+    private static final long MAX_ID = 1L << 61;
+
+    private final MappedHashTable table;
+    private final File collisionsFile;
+    private final Map<String, Long> collisions = new HashMap<>();
+
+    /**
+     * Create an index held in direct memory, which won't be persisted
+     */
+    public IdentifierIndex(){
+        table = new MappedHashTable(DEFAULT_CAPACITY);
+        collisionsFile = null;
+    }
+
+    /**
+     * Open the index stored in file, or create a new one if it doesn't exist
+     */
+    public IdentifierIndex(File file) throws IOException {
+        table = new MappedHashTable(file, DEFAULT_CAPACITY);
+        collisionsFile = new File(file.getPath() + ".collisions");
+
+        readCollisions();
+    }
+
+    /**
+     * Return the candidate vertex ID for the given label and identifier,
+     * or null if there is no entry for this key
+     */
+    public Object get(String label, Object identifier){
+        String key = Hashing.identifierKey(label, identifier);
+
+        Long id = collisions.isEmpty() ? null : collisions.get(key);
+        if(id != null)
+            return decode(id);
+
+        long candidate = table.get(Hashing.hash(key, SEED), NO_ID);
+        if(candidate == NO_ID)
+            return null;
+
+        return decode(candidate);
+    }
+
+    /**
+     * Add an entry to the index, returning false if the vertex ID couldn't be indexed.
+     * An existing entry for a different vertex with the same hash is assumed to be for a different key.
+     */
+    public boolean put(String label, Object identifier, Object vertexId){
+        return put(label, identifier, vertexId, existingId -> false);
+    }
+
+    /**
+     * Add an entry to the index, returning false if the vertex ID couldn't be indexed.
+     *
+     * If there is already an entry for a different vertex with the same hash, then sameKey is called with
+     * the ID of that vertex to check whether it has this label and identifier too (or no longer exists), in which
+     * case the entry is replaced. Otherwise, the hashes of the two keys collide and the new entry is held separately.
+     */
+    public boolean put(String label, Object identifier, Object vertexId, Predicate<Object> sameKey){
+        Long id = encode(vertexId);
+        if(id == null)
+            return false;
+
+        String key = Hashing.identifierKey(label, identifier);
+        if(!collisions.isEmpty() && collisions.containsKey(key)){
+            collisions.put(key, id);
+            return true;
+        }
+
+        long h = Hashing.hash(key, SEED);
+        long existing = table.get(h, NO_ID);
+        if(existing == NO_ID || (existing >> 2) == (id >> 2) || sameKey.test(decode(existing))){
+            //New entry, the same vertex with its ID now represented as a different type (e.g. after reloading a graph),
+            //or a different vertex with the same key
+            table.put(h, id);
+        }else{
+            collisions.put(key, id);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove the entry for the given label and identifier, if it points to the given vertex ID
+     * (e.g. because the vertex has been removed from the graph)
+     */
+    public void remove(String label, Object identifier, Object vertexId){
+        Long id = encode(vertexId);
+        if(id == null)
+            return;
+
+        String key = Hashing.identifierKey(label, identifier);
+        if(!collisions.isEmpty() && collisions.containsKey(key)){
+            collisions.remove(key);
+            return;
+        }
+
+        //Only remove the entry from the table if it belongs to this vertex, rather than to a key with the same hash
+        long h = Hashing.hash(key, SEED);
+        long existing = table.get(h, NO_ID);
+        if(existing != NO_ID && (existing >> 2) == (id >> 2))
+            table.remove(h);
+    }
+
+    /**
+     * Remove all entries from the index, and mark it as incomplete
+     */
+    public void clear(){
+        table.clear();
+        collisions.clear();
+        setComplete(false);
+    }
+
+    /**
+     * Returns true if this index holds every identifier in the graph, in which case vertices
+     * that aren't in the index don't need to be looked up in the graph
+     */
+    public boolean isComplete(){
+        return table.getUserHeader(HEADER_COMPLETE) == 1L;
+    }
+
+    /**
+     * Set whether this index holds every identifier in the graph
+     */
+    public void setComplete(boolean complete){
+        table.setUserHeader(HEADER_COMPLETE, complete ? 1L : 0L);
+    }
+
+    /**
+     * Checksum of the graph this index was last persisted against, or 0 if there isn't one
+     */
+    public long getGraphChecksum(){
+        return table.getUserHeader(HEADER_CHECKSUM);
+    }
+
+    /**
+     * Record the checksum of the graph this index is persisted against
+     */
+    public void setGraphChecksum(long checksum){
+        table.setUserHeader(HEADER_CHECKSUM, checksum);
+    }
+
+    /**
+     * Number of entries in the index
+     */
+    public long size(){
+        return table.size() + collisions.size();
+    }
+
+    /**
+     * Flush any changes to disk
+     */
+    public void force() throws IOException {
+        table.force();
+        writeCollisions();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeCollisions();
+        table.close();
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private static Long encode(Object vertexId){
+        long type;
+        long id;
+
+        if(vertexId instanceof Long) {
+            type = ID_LONG;
+            id = (Long) vertexId;
+        }else if(vertexId instanceof Integer){
+            type = ID_INTEGER;
+            id = (Integer) vertexId;
+        }else if(vertexId instanceof String){
+            type = ID_STRING;
+            try {
+                id = Long.parseLong((String) vertexId);
+            }catch (NumberFormatException nfe){
+                return null;
+            }
+
+            //Only accept IDs that will be reproduced exactly when converted back
+            if(!Long.toString(id).equals(vertexId))
+                return null;
+        }else{
+            return null;
+        }
+
+        if(id >= MAX_ID || id < -MAX_ID)
+            return null;
+
+        return (id << 2) | type;
+    }
+
+    private static Object decode(long value){
+        long type = value & 3;
+        long id = value >> 2;
+
+        if(type == ID_INTEGER){
+            return (int) id;
+        }else if(type == ID_STRING){
+            return Long.toString(id);
+        }else{
+            return id;
+        }
+    }
+
+    private void readCollisions() throws IOException {
+        if(collisionsFile == null || !collisionsFile.exists())
+            return;
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(collisionsFile)))){
+            int count = in.readInt();
+            for(int i = 0; i < count; i++){
+                byte[] key = new byte[in.readInt()];
+                in.readFully(key);
+                collisions.put(new String(key, StandardCharsets.UTF_8), in.readLong());
+            }
+        }
+    }
+
+    private void writeCollisions() throws IOException {
+        if(collisionsFile == null)
+            return;
+
+        if(collisions.isEmpty()){
+            if(collisionsFile.exists() && !collisionsFile.delete())
+                throw new IOException("Unable to delete " + collisionsFile);
+
+            return;
+        }
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(collisionsFile)))){
+            out.writeInt(collisions.size());
+            //Keys are written as length-prefixed bytes, as writeUTF is limited to 64KB
+            for(Map.Entry<String, Long> e : collisions.entrySet()){
+                byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeLong(e.getValue());
+            }
+        }
+    }
+}
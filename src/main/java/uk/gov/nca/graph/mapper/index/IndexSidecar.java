@@ -0,0 +1,96 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.index;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Utility class for persisting an {@link IdentifierIndex} alongside a file-backed TinkerGraph,
+ * so that it can be reused by subsequent runs against the same graph file.
+ */
+public class IndexSidecar {
+    private IndexSidecar(){}
+
+    public static final String SUFFIX = ".identifiers";
+
+    private static final String GRAPH = "gremlin.graph";
+    private static final String GRAPH_LOCATION = "gremlin.tinkergraph.graphLocation";
+    private static final String TINKERGRAPH = "TinkerGraph";
+
+    /**
+     * Read a Tinkerpop graph configuration file, and return the file the graph is persisted to,
+     * or null if the configuration isn't for a file-backed TinkerGraph
+     */
+    public static File getGraphFile(String graphConfiguration) throws IOException {
+        Properties properties = new Properties();
+        try(InputStream is = new FileInputStream(graphConfiguration)){
+            properties.load(is);
+        }
+
+        String graph = properties.getProperty(GRAPH, "");
+        String location = properties.getProperty(GRAPH_LOCATION);
+
+        if(!graph.endsWith(TINKERGRAPH) || location == null || location.trim().isEmpty())
+            return null;
+
+        return new File(location.trim());
+    }
+
+    /**
+     * Return the location of the sidecar index for a graph file
+     */
+    public static File getSidecarFile(File graphFile){
+        return new File(graphFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Calculate a checksum of the graph file, or return 0 if the file doesn't exist
+     */
+    public static long checksum(File graphFile) throws IOException {
+        if(!graphFile.exists())
+            return 0L;
+
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+        try(FileChannel channel = FileChannel.open(graphFile.toPath(), StandardOpenOption.READ)){
+            while(channel.read(buffer) != -1){
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+
+            //Include the length so that an empty file doesn't have a checksum of 0
+            return (channel.size() << 32) ^ crc.getValue() ^ 1L;
+        }
+    }
+
+    /**
+     * Returns true if the index was persisted against a graph file with the given checksum
+     */
+    public static boolean isValid(IdentifierIndex index, long graphChecksum){
+        return graphChecksum != 0L && index.isComplete() && index.getGraphChecksum() == graphChecksum;
+    }
+}
@@ -0,0 +1,448 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Open-addressing hash table of fixed-width (long key, long value) slots, held off-heap either
+ * in a memory-mapped file or in direct memory.
+ *
+ * Keys are expected to already be well distributed hashes. The key values 0 and -1 are used
+ * internally to mark empty and deleted slots, and are folded onto 1 and -2 respectively.
+ *
+ * The table is split into segments of at most 2^26 slots, so that it can grow beyond the 2GB
+ * limit of a single ByteBuffer. This class is not thread-safe.
+ */
+public class MappedHashTable implements AutoCloseable {
+    private static final long MAGIC = 0x4E43414D48544231L;  //NCAMHTB1
+
+    private static final int HEADER_SIZE = 128;
+    private static final int SLOT_SIZE = 16;
+    private static final int SEGMENT_SHIFT = 26;
+    private static final long SEGMENT_SLOTS = 1L << SEGMENT_SHIFT;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_SIZE_OFFSET = 16;
+    private static final int HEADER_TOMBSTONES = 24;
+    private static final int HEADER_USER = 64;
+
+    /** Number of user-defined long values that can be stored in the header */
+    public static final int USER_HEADER_SLOTS = 8;
+
+    private static final long EMPTY = 0L;
+    private static final long TOMBSTONE = -1L;
+
+    private static final double MAX_LOAD = 0.7;
+    private static final long MIN_CAPACITY = 1024;
+
+    private final File file;
+
+    private RandomAccessFile raf = null;
+    private ByteBuffer header;
+    private ByteBuffer[] segments;
+
+    private long capacity;
+    private long mask;
+    private long size;
+    private long tombstones;
+
+    /**
+     * Create an in-memory (direct, off-heap) table with the given initial capacity
+     */
+    public MappedHashTable(long initialCapacity){
+        this.file = null;
+
+        header = ByteBuffer.allocateDirect(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        allocate(tableCapacity(initialCapacity));
+    }
+
+    /**
+     * Open the table stored in file, or create a new one with the given initial capacity
+     * if the file doesn't exist or is empty
+     */
+    public MappedHashTable(File file, long initialCapacity) throws IOException {
+        this.file = file;
+
+        if(file.exists() && file.length() > 0){
+            open();
+        }else{
+            create(file, tableCapacity(initialCapacity));
+            open();
+        }
+    }
+
+    /**
+     * Return the value stored against key, or defaultValue if the key isn't present
+     */
+    public long get(long key, long defaultValue){
+        long k = slotKey(key);
+
+        for(long slot = slotFor(k); ; slot = (slot + 1) & mask){
+            long existing = keyAt(slot);
+            if(existing == EMPTY)
+                return defaultValue;
+
+            if(existing == k)
+                return valueAt(slot);
+        }
+    }
+
+    /**
+     * Returns true if the key is present in the table
+     */
+    public boolean containsKey(long key){
+        return findKey(slotKey(key)) >= 0;
+    }
+
+    /**
+     * Store value against key, replacing any existing value for that key
+     */
+    public void put(long key, long value){
+        long k = slotKey(key);
+
+        long slot = findKey(k);
+        if(slot >= 0){
+            putLong(slot, 8, value);
+            return;
+        }
+
+        insert(k, value);
+    }
+
+    /**
+     * Remove key from the table, returning true if it was present
+     */
+    public boolean remove(long key){
+        long slot = findKey(slotKey(key));
+        if(slot < 0)
+            return false;
+
+        delete(slot);
+        return true;
+    }
+
+    /**
+     * Treat the table as a set of (key, value) pairs, and add the pair if it isn't already present.
+     * Returns true if the pair was added.
+     */
+    public boolean addPair(long key, long value){
+        long k = slotKey(key);
+        if(findPair(k, value) >= 0)
+            return false;
+
+        insert(k, value);
+        return true;
+    }
+
+    /**
+     * Returns true if the (key, value) pair is present in the table
+     */
+    public boolean containsPair(long key, long value){
+        return findPair(slotKey(key), value) >= 0;
+    }
+
+    /**
+     * Remove the (key, value) pair from the table, returning true if it was present
+     */
+    public boolean removePair(long key, long value){
+        long slot = findPair(slotKey(key), value);
+        if(slot < 0)
+            return false;
+
+        delete(slot);
+        return true;
+    }
+
+    /**
+     * Number of entries in the table
+     */
+    public long size(){
+        return size;
+    }
+
+    /**
+     * Number of slots currently allocated
+     */
+    public long capacity(){
+        return capacity;
+    }
+
+    /**
+     * The file backing this table, or null if the table is held in direct memory
+     */
+    public File getFile(){
+        return file;
+    }
+
+    /**
+     * Read a user-defined value from the header
+     */
+    public long getUserHeader(int index){
+        checkUserHeader(index);
+        return header.getLong(HEADER_USER + index * 8);
+    }
+
+    /**
+     * Store a user-defined value in the header
+     */
+    public void setUserHeader(int index, long value){
+        checkUserHeader(index);
+        header.putLong(HEADER_USER + index * 8, value);
+    }
+
+    /**
+     * Remove all entries from the table, retaining the user-defined header values
+     */
+    public void clear(){
+        for(long slot = 0; slot < capacity; slot++){
+            putLong(slot, 0, EMPTY);
+            putLong(slot, 8, 0L);
+        }
+
+        size = 0;
+        tombstones = 0;
+        writeCounts();
+    }
+
+    /**
+     * Flush any changes to the backing file
+     */
+    public void force(){
+        writeCounts();
+
+        if(file == null)
+            return;
+
+        ((MappedByteBuffer) header).force();
+        for(ByteBuffer segment : segments)
+            ((MappedByteBuffer) segment).force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+
+        if(raf != null) {
+            raf.close();
+            raf = null;
+        }
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private void insert(long k, long value){
+        if(size + tombstones + 1 > capacity * MAX_LOAD)
+            resize(size + 1 > capacity * MAX_LOAD / 2 ? capacity * 2 : capacity);
+
+        for(long slot = slotFor(k); ; slot = (slot + 1) & mask){
+            long existing = keyAt(slot);
+            if(existing == EMPTY || existing == TOMBSTONE){
+                if(existing == TOMBSTONE)
+                    tombstones--;
+
+                putLong(slot, 0, k);
+                putLong(slot, 8, value);
+                size++;
+                return;
+            }
+        }
+    }
+
+    private void delete(long slot){
+        putLong(slot, 0, TOMBSTONE);
+        putLong(slot, 8, 0L);
+        size--;
+        tombstones++;
+    }
+
+    private long findKey(long k){
+        for(long slot = slotFor(k); ; slot = (slot + 1) & mask){
+            long existing = keyAt(slot);
+            if(existing == EMPTY)
+                return -1;
+
+            if(existing == k)
+                return slot;
+        }
+    }
+
+    private long findPair(long k, long value){
+        for(long slot = slotFor(k); ; slot = (slot + 1) & mask){
+            long existing = keyAt(slot);
+            if(existing == EMPTY)
+                return -1;
+
+            if(existing == k && valueAt(slot) == value)
+                return slot;
+        }
+    }
+
+    private void resize(long newCapacity){
+        ByteBuffer[] oldSegments = segments;
+        long oldCapacity = capacity;
+
+        if(file == null){
+            allocate(newCapacity);
+        }else{
+            File tmp = new File(file.getPath() + ".resize");
+            try {
+                create(tmp, newCapacity);
+
+                //Carry user header values across to the new file
+                try (RandomAccessFile tmpRaf = new RandomAccessFile(tmp, "rw")) {
+                    ByteBuffer tmpHeader = tmpRaf.getChannel().map(MapMode.READ_WRITE, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                    for (int i = 0; i < USER_HEADER_SLOTS; i++)
+                        tmpHeader.putLong(HEADER_USER + i * 8, getUserHeader(i));
+                    ((MappedByteBuffer) tmpHeader).force();
+                }
+
+                raf.close();
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                open();
+            }catch (IOException ioe){
+                throw new IllegalStateException("Unable to resize hash table in " + file, ioe);
+            }
+        }
+
+        //Re-insert entries from the old segments
+        size = 0;
+        tombstones = 0;
+        for(long slot = 0; slot < oldCapacity; slot++){
+            ByteBuffer segment = oldSegments[(int) (slot >>> SEGMENT_SHIFT)];
+            int offset = (int) ((slot & (SEGMENT_SLOTS - 1)) * SLOT_SIZE);
+
+            long k = segment.getLong(offset);
+            if(k != EMPTY && k != TOMBSTONE)
+                insert(k, segment.getLong(offset + 8));
+        }
+        writeCounts();
+    }
+
+    private void allocate(long newCapacity){
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        size = 0;
+        tombstones = 0;
+
+        segments = new ByteBuffer[segmentCount(newCapacity)];
+        for(int i = 0; i < segments.length; i++){
+            segments[i] = ByteBuffer.allocateDirect((int) (segmentSlots(newCapacity, i) * SLOT_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel();
+
+        header = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if(header.getLong(HEADER_MAGIC) != MAGIC) {
+            raf.close();
+            throw new IOException("File " + file + " is not a hash table file");
+        }
+
+        capacity = header.getLong(HEADER_CAPACITY);
+        mask = capacity - 1;
+        size = header.getLong(HEADER_SIZE_OFFSET);
+        tombstones = header.getLong(HEADER_TOMBSTONES);
+
+        if(Long.bitCount(capacity) != 1 || channel.size() < HEADER_SIZE + capacity * SLOT_SIZE){
+            raf.close();
+            throw new IOException("File " + file + " is truncated or corrupt");
+        }
+
+        segments = new ByteBuffer[segmentCount(capacity)];
+        for(int i = 0; i < segments.length; i++){
+            long position = HEADER_SIZE + (i * SEGMENT_SLOTS * SLOT_SIZE);
+            segments[i] = channel.map(MapMode.READ_WRITE, position, segmentSlots(capacity, i) * SLOT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private void writeCounts(){
+        header.putLong(HEADER_SIZE_OFFSET, size);
+        header.putLong(HEADER_TOMBSTONES, tombstones);
+    }
+
+    private long keyAt(long slot){
+        return segments[(int) (slot >>> SEGMENT_SHIFT)].getLong((int) ((slot & (SEGMENT_SLOTS - 1)) * SLOT_SIZE));
+    }
+
+    private long valueAt(long slot){
+        return segments[(int) (slot >>> SEGMENT_SHIFT)].getLong((int) ((slot & (SEGMENT_SLOTS - 1)) * SLOT_SIZE) + 8);
+    }
+
+    private void putLong(long slot, int offset, long value){
+        segments[(int) (slot >>> SEGMENT_SHIFT)].putLong((int) ((slot & (SEGMENT_SLOTS - 1)) * SLOT_SIZE) + offset, value);
+    }
+
+    private long slotFor(long k){
+        //Mix the key so that poorly distributed keys still spread across the table
+        return Hashing.mix(k) & mask;
+    }
+
+    private static void create(File file, long capacity) throws IOException {
+        try (RandomAccessFile newRaf = new RandomAccessFile(file, "rw")) {
+            newRaf.setLength(0);
+            newRaf.setLength(HEADER_SIZE + capacity * SLOT_SIZE);
+
+            ByteBuffer newHeader = newRaf.getChannel().map(MapMode.READ_WRITE, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            newHeader.putLong(HEADER_MAGIC, MAGIC);
+            newHeader.putLong(HEADER_CAPACITY, capacity);
+            ((MappedByteBuffer) newHeader).force();
+        }
+    }
+
+    private static long slotKey(long key){
+        if(key == EMPTY)
+            return 1L;
+        if(key == TOMBSTONE)
+            return -2L;
+
+        return key;
+    }
+
+    private static long tableCapacity(long requested){
+        long capacity = MIN_CAPACITY;
+        while(capacity * MAX_LOAD < requested)
+            capacity <<= 1;
+
+        return capacity;
+    }
+
+    private static int segmentCount(long capacity){
+        return (int) ((capacity + SEGMENT_SLOTS - 1) >>> SEGMENT_SHIFT);
+    }
+
+    private static long segmentSlots(long capacity, int segment){
+        return Math.min(SEGMENT_SLOTS, capacity - segment * SEGMENT_SLOTS);
+    }
+
+    private static void checkUserHeader(int index){
+        if(index < 0 || index >= USER_HEADER_SLOTS)
+            throw new IndexOutOfBoundsException("User header index must be between 0 and " + (USER_HEADER_SLOTS - 1));
+    }
+}
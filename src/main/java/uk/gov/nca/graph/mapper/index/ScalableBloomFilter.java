@@ -0,0 +1,280 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scalable Bloom filter, which grows by adding progressively larger and tighter filters as it fills up,
+ * so that the overall false positive rate stays at or below the configured rate.
+ *
+ * If adding another filter would exceed the memory budget, then the last filter continues to be used and
+ * the false positive rate will rise. The expected false positive rate, and counts of lookups, definite
+ * negatives and reported false positives are available as metrics.
+ *
+ * This class is not thread-safe.
+ */
+public class ScalableBloomFilter {
+    private static final long SEED_1 = 0x626C6F6F6D310000L;
+    private static final long SEED_2 = 0x626C6F6F6D320000L;
+
+    //Each new filter has twice the capacity and half the false positive rate of the previous one
+    private static final int GROWTH = 2;
+    private static final double TIGHTENING = 0.5;
+
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+    private final double falsePositiveRate;
+    private final long maxBytes;
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    private long lookups = 0;
+    private long negatives = 0;
+    private long falsePositives = 0;
+
+    /**
+     * Create a filter sized initially for expectedInsertions, with the target false positive rate,
+     * and using no more than maxBytes of memory for the filter bits
+     */
+    public ScalableBloomFilter(long expectedInsertions, double falsePositiveRate, long maxBytes){
+        if(falsePositiveRate <= 0.0 || falsePositiveRate >= 1.0)
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxBytes = maxBytes;
+
+        Stage first = new Stage(Math.max(1024, expectedInsertions), falsePositiveRate * (1 - TIGHTENING));
+        if(first.bytes() > maxBytes)
+            first = new Stage(maxBytes * 8, falsePositiveRate * (1 - TIGHTENING), true);
+
+        stages.add(first);
+    }
+
+    /**
+     * Returns false if key has definitely not been added to the filter, or true if it might have been
+     */
+    public boolean mightContain(String key){
+        lookups++;
+
+        long h1 = Hashing.hash(key, SEED_1);
+        long h2 = Hashing.hash(key, SEED_2);
+
+        for(int i = stages.size() - 1; i >= 0; i--){
+            if(stages.get(i).mightContain(h1, h2))
+                return true;
+        }
+
+        negatives++;
+        return false;
+    }
+
+    /**
+     * Add key to the filter
+     */
+    public void put(String key){
+        long h1 = Hashing.hash(key, SEED_1);
+        long h2 = Hashing.hash(key, SEED_2);
+
+        for(Stage stage : stages){
+            if(stage.mightContain(h1, h2))
+                return;
+        }
+
+        Stage current = stages.get(stages.size() - 1);
+        if(current.isFull()){
+            Stage next = new Stage(current.capacity * GROWTH, current.falsePositiveRate * TIGHTENING);
+            if(memoryUsage() + next.bytes() <= maxBytes) {
+                stages.add(next);
+                current = next;
+            }
+        }
+
+        current.put(h1, h2);
+    }
+
+    /**
+     * Record that a lookup which the filter reported as a possible match turned out not to be
+     */
+    public void recordFalsePositive(){
+        falsePositives++;
+    }
+
+    /**
+     * Remove everything from the filter and reset the metrics
+     */
+    public void clear(){
+        Stage first = stages.get(0);
+        stages.clear();
+        stages.add(new Stage(first.fixedSize ? first.numBits : first.capacity, first.falsePositiveRate, first.fixedSize));
+
+        lookups = 0;
+        negatives = 0;
+        falsePositives = 0;
+    }
+
+    /**
+     * The target false positive rate
+     */
+    public double getFalsePositiveRate(){
+        return falsePositiveRate;
+    }
+
+    /**
+     * The false positive rate expected given the current contents of the filter
+     */
+    public double getExpectedFalsePositiveRate(){
+        double pNegative = 1.0;
+        for(Stage stage : stages)
+            pNegative *= 1.0 - stage.expectedFalsePositiveRate();
+
+        return 1.0 - pNegative;
+    }
+
+    /**
+     * Approximate number of distinct keys added to the filter, as keys that appear to already be
+     * in the filter aren't counted
+     */
+    public long size(){
+        long size = 0;
+        for(Stage stage : stages)
+            size += stage.count;
+
+        return size;
+    }
+
+    /**
+     * Number of bytes used by the filter bits
+     */
+    public long memoryUsage(){
+        long bytes = 0;
+        for(Stage stage : stages)
+            bytes += stage.bytes();
+
+        return bytes;
+    }
+
+    /**
+     * Number of calls to {@link #mightContain(String)}
+     */
+    public long getLookups(){
+        return lookups;
+    }
+
+    /**
+     * Number of lookups for which the key was definitely not in the filter
+     */
+    public long getNegatives(){
+        return negatives;
+    }
+
+    /**
+     * Number of false positives reported by {@link #recordFalsePositive()}
+     */
+    public long getFalsePositives(){
+        return falsePositives;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d keys in %d bytes, %d lookups, %d definite misses, %d false positives (expected false positive rate %.4f)",
+            size(), memoryUsage(), lookups, negatives, falsePositives, getExpectedFalsePositiveRate());
+    }
+
+    /**
+     * A single, fixed size, Bloom filter
+     */
+    private static class Stage {
+        private final long capacity;
+        private final double falsePositiveRate;
+        private final boolean fixedSize;
+
+        private final long[] bits;
+        private final long numBits;
+        private final int numHashes;
+
+        private long count = 0;
+        private long bitsSet = 0;
+
+        Stage(long capacity, double falsePositiveRate){
+            this(capacity, falsePositiveRate, false);
+        }
+
+        Stage(long capacityOrBits, double falsePositiveRate, boolean fixedSize){
+            this.falsePositiveRate = falsePositiveRate;
+            this.fixedSize = fixedSize;
+
+            long m;
+            if(fixedSize){
+                //Size given in bits, so work out the capacity
+                m = Math.max(64, capacityOrBits);
+                capacity = Math.max(1, (long) (m * LN2_SQUARED / -Math.log(falsePositiveRate)));
+            }else{
+                capacity = capacityOrBits;
+                m = Math.max(64, (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / LN2_SQUARED));
+            }
+
+            bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64)];
+            numBits = bits.length * 64L;
+            numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+        }
+
+        boolean mightContain(long h1, long h2){
+            long combined = h1;
+            for(int i = 0; i < numHashes; i++){
+                long bit = (combined & Long.MAX_VALUE) % numBits;
+                if((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                    return false;
+
+                combined += h2;
+            }
+
+            return true;
+        }
+
+        void put(long h1, long h2){
+            long combined = h1;
+            for(int i = 0; i < numHashes; i++){
+                long bit = (combined & Long.MAX_VALUE) % numBits;
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+
+                if((bits[word] & mask) == 0){
+                    bits[word] |= mask;
+                    bitsSet++;
+                }
+
+                combined += h2;
+            }
+
+            count++;
+        }
+
+        boolean isFull(){
+            return count >= capacity;
+        }
+
+        long bytes(){
+            return bits.length * 8L;
+        }
+
+        double expectedFalsePositiveRate(){
+            return Math.pow((double) bitsSet / numBits, numHashes);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.mapping;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of converted values for a single field, so that fields with a small number of distinct
+ * values (e.g. country or gender) are only converted once per value, and share a single converted object.
+ *
+ * The hit rate is measured over a window of lookups, and if it is too low (i.e. the field has too many
+ * distinct values to benefit from caching) then the cache is emptied and disabled for a while, before
+ * being tried again in case the data has changed. This class is not thread-safe.
+ */
+public class ConversionCache {
+    /** Returned by {@link #get(Object)} if the value isn't in the cache */
+    public static final Object MISS = new Object();
+
+    private static final int DEFAULT_MAX_SIZE = 1024;
+    private static final int DEFAULT_WINDOW = 4096;
+    private static final double DEFAULT_MIN_HIT_RATE = 0.5;
+
+    //Values that can't be converted are cached as well, and stored as this
+    private static final Object FAILED = new Object();
+
+    private final int maxSize;
+    private final int window;
+    private final double minHitRate;
+
+    private final Map<Object, Object> cache = new HashMap<>();
+
+    private int windowLookups = 0;
+    private int windowHits = 0;
+    private long disabledFor = 0;
+
+    private long lookups = 0;
+    private long hits = 0;
+
+    /**
+     * Create a cache with the default size, window and minimum hit rate
+     */
+    public ConversionCache(){
+        this(DEFAULT_MAX_SIZE, DEFAULT_WINDOW, DEFAULT_MIN_HIT_RATE);
+    }
+
+    /**
+     * Create a cache that holds at most maxSize values, and is disabled if fewer than minHitRate of
+     * the lookups in each window are hits. Once disabled, the cache is re-enabled after 16 windows.
+     */
+    public ConversionCache(int maxSize, int window, double minHitRate){
+        this.maxSize = maxSize;
+        this.window = window;
+        this.minHitRate = minHitRate;
+    }
+
+    /**
+     * Return the converted value for the original value, which may be null if the value couldn't be converted,
+     * or {@link #MISS} if it isn't in the cache or the cache is disabled
+     */
+    public Object get(Object original){
+        if(disabledFor > 0){
+            disabledFor--;
+            return MISS;
+        }
+
+        lookups++;
+        windowLookups++;
+
+        Object converted = cache.get(original);
+        if(converted != null)
+            windowHits++;
+
+        if(windowLookups >= window)
+            endWindow();
+
+        if(converted == null)
+            return MISS;
+
+        hits++;
+        return converted == FAILED ? null : converted;
+    }
+
+    /**
+     * Store the converted value (or null, if it couldn't be converted) for the original value,
+     * if the cache is enabled and isn't full
+     */
+    public void put(Object original, Object converted){
+        if(disabledFor > 0 || cache.size() >= maxSize)
+            return;
+
+        cache.put(original, converted == null ? FAILED : converted);
+    }
+
+    /**
+     * Returns true if the cache is currently in use
+     */
+    public boolean isEnabled(){
+        return disabledFor == 0;
+    }
+
+    /**
+     * Number of values currently in the cache
+     */
+    public int size(){
+        return cache.size();
+    }
+
+    /**
+     * Total number of lookups made whilst the cache was enabled
+     */
+    public long getLookups(){
+        return lookups;
+    }
+
+    /**
+     * Total number of lookups that were found in the cache
+     */
+    public long getHits(){
+        return hits;
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private void endWindow(){
+        if(windowHits < window * minHitRate){
+            cache.clear();
+            disabledFor = 16L * window;
+        }
+
+        windowLookups = 0;
+        windowHits = 0;
+    }
+}
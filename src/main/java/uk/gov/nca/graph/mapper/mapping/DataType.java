@@ -26,6 +26,7 @@ public enum DataType {
     DOUBLE,
     INTEGER,
     IPADDRESS,
+    LONG,
     STRING,
     TIME,
     URL,
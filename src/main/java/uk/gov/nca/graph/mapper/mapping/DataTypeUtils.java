@@ -16,10 +16,12 @@ limitations under the License.
 
 package uk.gov.nca.graph.mapper.mapping;
 
+import java.math.BigDecimal;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.UnknownHostException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDate;
@@ -29,6 +31,9 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import uk.gov.nca.graph.mapper.exceptions.ParseException;
 
 /**
@@ -38,11 +43,91 @@ public class DataTypeUtils {
     private DataTypeUtils(){}
 
     private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter DAY_MONTH_YEAR = DateTimeFormatter.ofPattern("d-MMM-yyyy");   //6-Nov-2017
+
+    private static final int DATE_FORMATS = 2;
+    private static final int DATE_TIME_FORMATS = 4;
+
+    private static final Map<String, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<>();
+
+    /**
+     * Return a (cached) formatter for the given pattern, throwing an IllegalArgumentException if the pattern is invalid
+     */
+    public static DateTimeFormatter getFormatter(String pattern){
+        return FORMATTERS.computeIfAbsent(pattern, DateTimeFormatter::ofPattern);
+    }
 
     /**
      * Convert object to the given data type, and throw a ParseException if the object can't be converted
      */
     public static Object convert(Object data, DataType dataType) throws ParseException {
+        if(data == null)
+            throw new ParseException("Couldn't convert null to " + dataType);
+
+        Object converted = tryConvert(data, dataType);
+        if(converted == null)
+            throw new ParseException("Couldn't convert " + data + " to " + dataType + " - unrecognised format");
+
+        return converted;
+    }
+
+    /**
+     * Convert object according to the mapping, and return null if the object can't be converted.
+     *
+     * If the mapping has an explicit format, then temporal values are parsed with that format only. Otherwise,
+     * the format that last succeeded for this mapping is tried first, and the mapping is updated if a different
+     * format succeeds.
+     *
+     * String values are cached in the mapping's {@link ConversionCache}, so repeated values are only converted once.
+     */
+    public static Object tryConvert(Object data, Mapping mapping) {
+        if(data == null)
+            return null;
+
+        ConversionCache cache = data instanceof String ? mapping.getConversionCache() : null;
+        if(cache == null)
+            return convertMapping(data, mapping);
+
+        Object converted = cache.get(data);
+        if(converted != ConversionCache.MISS)
+            return converted;
+
+        converted = convertMapping(data, mapping);
+        cache.put(data, converted);
+
+        return converted;
+    }
+
+    /**
+     * Convert a value returned by the conversion functions to the legacy type used before URLs were represented
+     * as {@link URI}, i.e. converts URIs to {@link URL}, returning null if the URI isn't a valid URL.
+     * Other values are returned unchanged.
+     */
+    public static Object toLegacyType(Object value){
+        if(!(value instanceof URI))
+            return value;
+
+        try{
+            return ((URI) value).toURL();
+        }catch (MalformedURLException | IllegalArgumentException e){
+            return null;
+        }
+    }
+
+    /**
+     * Convert object to the given data type, and return null if the object can't be converted.
+     *
+     * URLs are converted to {@link URI}, which (unlike {@link URL}) doesn't look up a protocol handler
+     * when created, or resolve the host name when compared.
+     *
+     * Unlike {@link #convert(Object, DataType)}, this doesn't throw an exception on failure, and checks that
+     * the data is in the right format before attempting to parse it. This makes it considerably cheaper when
+     * a large proportion of the data can't be converted.
+     */
+    public static Object tryConvert(Object data, DataType dataType) {
+        if(data == null)
+            return null;
+
         switch (dataType){
             case LITERAL:
                 return data;
@@ -55,25 +140,44 @@ public class DataTypeUtils {
                 if(data instanceof Boolean)
                     return data;
 
-                return data.toString().equalsIgnoreCase("true") || data.toString().equalsIgnoreCase("yes");
+                return ParseUtils.parseBoolean(toCharSequence(data));
             case INTEGER:
                 if(data instanceof Integer)
                     return data;
 
-                try{
-                    return Integer.parseInt(data.toString());
-                }catch (NumberFormatException nfe){
-                    throw new ParseException("Couldn't parse Integer", nfe);
+                if(data instanceof Long || data instanceof Short || data instanceof Byte){
+                    long l = ((Number) data).longValue();
+                    return l < Integer.MIN_VALUE || l > Integer.MAX_VALUE ? null : (int) l;
                 }
+
+                if(data instanceof BigDecimal)
+                    return toExact((BigDecimal) data, DataType.INTEGER);
+
+                return ParseUtils.parseInteger(toCharSequence(data));
+            case LONG:
+                if(data instanceof Long)
+                    return data;
+
+                if(data instanceof Integer || data instanceof Short || data instanceof Byte)
+                    return ((Number) data).longValue();
+
+                if(data instanceof BigDecimal)
+                    return toExact((BigDecimal) data, DataType.LONG);
+
+                return ParseUtils.parseLong(toCharSequence(data));
             case DOUBLE:
                 if(data instanceof Double)
                     return data;
 
-                try{
+                if(data instanceof Integer || data instanceof Long || data instanceof Short || data instanceof Byte
+                    || data instanceof BigDecimal)
+                    return ((Number) data).doubleValue();
+
+                //Keep the decimal value of the float (e.g. 0.1 rather than 0.10000000149011612)
+                if(data instanceof Float)
                     return Double.parseDouble(data.toString());
-                }catch (NumberFormatException nfe){
-                    throw new ParseException("Couldn't parse Double", nfe);
-                }
+
+                return ParseUtils.parseDouble(toCharSequence(data));
             case DATE:
                 if(data instanceof LocalDate)
                     return data;
@@ -81,16 +185,15 @@ public class DataTypeUtils {
                 if(data instanceof Timestamp)
                     return ((Timestamp)data).toLocalDateTime().toLocalDate();
 
-                return parseDate(data);
+                return parseDate(data.toString());
             case URL:
-                if(data instanceof URL)
+                if(data instanceof URI)
                     return data;
 
-                try{
-                    return new URL(data.toString());
-                }catch (MalformedURLException mue){
-                    throw new ParseException("Couldn't parse URL", mue);
-                }
+                if(data instanceof URL)
+                    return toUri((URL) data);
+
+                return parseUrl(data.toString());
             case DATETIME:
                 if(data instanceof ZonedDateTime)
                     return data;
@@ -98,79 +201,309 @@ public class DataTypeUtils {
                 if(data instanceof Timestamp)
                     return ((Timestamp)data).toLocalDateTime().atZone(ZoneOffset.UTC);
 
-                return parseDateTime(data);
+                return parseDateTime(data.toString());
             case TIME:
                 if (data instanceof LocalTime)
                     return data;
 
-                return parseTime(data);
+                return parseTime(data.toString());
             case IPADDRESS:
-                if(data instanceof byte[]){
-                    byte[] bytes = (byte[]) data;
-
-                    try {
-                        return InetAddress.getByAddress(bytes).getHostAddress();
-                    }catch (UnknownHostException e){
-                        throw new ParseException("Couldn't parse IP address", e);
-                    }
-                }
+                if(data instanceof byte[])
+                    return ParseUtils.formatIpAddress((byte[]) data);
 
-                return data.toString();
+                if(data instanceof InetAddress)
+                    return ParseUtils.formatIpAddress(((InetAddress) data).getAddress());
+
+                return ParseUtils.parseIpAddress(toCharSequence(data));
             default:
-                throw new ParseException("Unsupported type");
+                return null;
         }
     }
 
     //Private functions below here to keep rest of code tidy
 
-    private static LocalDate parseDate(Object o) throws ParseException{
-        String s = o.toString();
+    /**
+     * Convert a decimal to an Integer or Long, returning null if it has a fractional part or is out of range
+     */
+    private static Object toExact(BigDecimal data, DataType dataType){
+        try{
+            return dataType == DataType.INTEGER ? (Object) data.intValueExact() : (Object) data.longValueExact();
+        }catch (ArithmeticException ae){
+            return null;
+        }
+    }
+
+    private static CharSequence toCharSequence(Object data){
+        return data instanceof CharSequence ? (CharSequence) data : data.toString();
+    }
+
+    private static Object convertMapping(Object data, Mapping mapping){
+        DataType dataType = mapping.getDataType();
+        if(!(data instanceof String) || (dataType != DataType.DATE && dataType != DataType.DATETIME && dataType != DataType.TIME))
+            return tryConvert(data, dataType);
+
+        String s = (String) data;
+
+        if(mapping.getFormat() != null)
+            return parseWithFormat(s, dataType, getFormatter(mapping.getFormat()));
+
+        if(dataType == DataType.TIME)
+            return parseTime(s);
+
+        int formats = dataType == DataType.DATE ? DATE_FORMATS : DATE_TIME_FORMATS;
+        int hint = mapping.getFormatHint();
+
+        for(int i = 0; i < formats; i++){
+            //Start with the hinted format, and then try the rest in order
+            int format = i == 0 ? hint : (i <= hint ? i - 1 : i);
+
+            Object o = dataType == DataType.DATE ? parseDate(s, format) : parseDateTime(s, format);
+            if(o != null){
+                if(format != hint)
+                    mapping.setFormatHint(format);
+
+                return o;
+            }
+        }
+
+        return null;
+    }
+
+    private static URI parseUrl(String s){
+        String trimmed = s.trim();
+        if(!hasScheme(trimmed))
+            return null;
 
         try{
-            return LocalDate.parse(s, DateTimeFormatter.ISO_LOCAL_DATE);
-        }catch (DateTimeParseException e){}
+            return new URI(trimmed);
+        }catch (URISyntaxException use){
+            return null;
+        }
+    }
 
+    private static URI toUri(URL url){
         try{
-            return LocalDate.parse(s, DateTimeFormatter.ofPattern("d-MMM-yyyy"));   //6-Nov-2017
-        }catch (DateTimeParseException e){}
+            return url.toURI();
+        }catch (URISyntaxException use){
+            return null;
+        }
+    }
 
-        throw new ParseException("Couldn't parse date "+s+" - unrecognised format");
+    private static LocalDate parseDate(String s){
+        for(int i = 0; i < DATE_FORMATS; i++){
+            LocalDate ld = parseDate(s, i);
+            if(ld != null)
+                return ld;
+        }
+
+        return null;
     }
 
-    private static LocalTime parseTime(Object o) throws ParseException{
-        String s = o.toString();
+    private static LocalDate parseDate(String s, int format){
+        try {
+            if(format == 0 && isIsoDate(s, 0) == s.length()) {
+                return LocalDate.parse(s, DateTimeFormatter.ISO_LOCAL_DATE);
+            }else if(format == 1 && isDayMonthYear(s)) {
+                return LocalDate.parse(s, DAY_MONTH_YEAR);
+            }
+        } catch (DateTimeParseException e) {
+            //Right format, but not a valid date
+        }
+
+        return null;
+    }
+
+    private static LocalTime parseTime(String s){
+        if(s.length() < 5 || !isDigits(s, 0, 2) || s.charAt(2) != ':' || !isDigits(s, 3, 5))
+            return null;
 
         try{
             return LocalTime.parse(s, DateTimeFormatter.ISO_LOCAL_TIME);
-        }catch (DateTimeParseException e){}
+        }catch (DateTimeParseException e){
+            return null;
+        }
+    }
+
+    private static ZonedDateTime parseDateTime(String s){
+        for(int i = 0; i < DATE_TIME_FORMATS; i++){
+            ZonedDateTime zdt = parseDateTime(s, i);
+            if(zdt != null)
+                return zdt;
+        }
 
-        throw new ParseException("Couldn't parse time "+s+" - unrecognised format");
+        return null;
     }
 
-    private static ZonedDateTime parseDateTime(Object o) throws ParseException{
-        String s = o.toString();
+    private static ZonedDateTime parseDateTime(String s, int format){
+        try {
+            switch (format) {
+                case 0:
+                    int dateEnd = isIsoDate(s, 0);
+                    if (dateEnd > 0 && dateEnd < s.length() && s.charAt(dateEnd) == 'T' && hasZone(s, dateEnd))
+                        return ZonedDateTime.parse(s, DateTimeFormatter.ISO_DATE_TIME);
+
+                    break;
+                case 1:
+                    if (isRfc1123(s))
+                        return ZonedDateTime.parse(s, DateTimeFormatter.RFC_1123_DATE_TIME);
+
+                    break;
+                case 2:
+                    if (s.length() == 19 && s.charAt(10) == ' ' && isIsoDate(s, 0) == 10)
+                        return LocalDateTime.parse(s, DATE_TIME).atZone(ZoneOffset.UTC);
+
+                    break;
+                default:
+                    return parseEpoch(s);
+            }
+        } catch (DateTimeParseException e) {
+            //Right format, but not a valid date time
+        }
 
-        try{
-            return ZonedDateTime.parse(s, DateTimeFormatter.ISO_DATE_TIME);
-        }catch (DateTimeParseException e){}
+        return null;
+    }
 
-        try{
-            return ZonedDateTime.parse(s, DateTimeFormatter.RFC_1123_DATE_TIME);
-        }catch (DateTimeParseException e){}
+    private static ZonedDateTime parseEpoch(String s){
+        int start = s.length() > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+') ? 1 : 0;
+        if(s.length() == start || s.length() - start > 18 || !isDigits(s, start, s.length()))
+            return null;
 
-        try{
-            return LocalDateTime.parse(s, DATE_TIME).atZone(ZoneOffset.UTC);
-        }catch (DateTimeParseException e){}
+        long epoch = Long.parseLong(s);
+        if(s.length() > 10) {
+            return ZonedDateTime.ofInstant(Instant.ofEpochMilli(epoch), ZoneOffset.UTC);
+        }else{
+            return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epoch), ZoneOffset.UTC);
+        }
+    }
 
+    private static Object parseWithFormat(String s, DataType dataType, DateTimeFormatter formatter){
         try {
-            Long epoch = Long.parseLong(s);
-            if(s.length() > 10) {
-                return ZonedDateTime.ofInstant(Instant.ofEpochMilli(epoch), ZoneOffset.UTC);
-            }else{
-                return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epoch), ZoneOffset.UTC);
+            if (dataType == DataType.DATE) {
+                return LocalDate.parse(s, formatter);
+            } else if (dataType == DataType.TIME) {
+                return LocalTime.parse(s, formatter);
+            }
+
+            //Formats without a time zone are assumed to be UTC, and formats without a time are assumed to be midnight
+            TemporalAccessor ta = formatter.parseBest(s, ZonedDateTime::from, LocalDateTime::from, LocalDate::from);
+            if (ta instanceof ZonedDateTime) {
+                return ta;
+            } else if (ta instanceof LocalDateTime) {
+                return ((LocalDateTime) ta).atZone(ZoneOffset.UTC);
+            } else {
+                return ((LocalDate) ta).atStartOfDay(ZoneOffset.UTC);
             }
-        }catch (NumberFormatException e){}
+        }catch (DateTimeParseException e){
+            return null;
+        }
+    }
+
+    private static boolean isDigits(String s, int from, int to){
+        if(to > s.length())
+            return false;
+
+        for(int i = from; i < to; i++){
+            char c = s.charAt(i);
+            if(c < '0' || c > '9')
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean isLetters(String s, int from, int to){
+        if(to > s.length())
+            return false;
+
+        for(int i = from; i < to; i++){
+            if(!Character.isLetter(s.charAt(i)))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * If s has an ISO date (e.g. 2017-11-06, or +10000-11-06) starting at from, return the index of
+     * the end of the date, otherwise return -1
+     */
+    private static int isIsoDate(String s, int from){
+        int i = from;
+        if(i < s.length() && (s.charAt(i) == '-' || s.charAt(i) == '+'))
+            i++;
+
+        int yearStart = i;
+        while(i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9')
+            i++;
+
+        if(i - yearStart < 4 || i + 6 > s.length())
+            return -1;
+
+        if(s.charAt(i) != '-' || !isDigits(s, i + 1, i + 3) || s.charAt(i + 3) != '-' || !isDigits(s, i + 4, i + 6))
+            return -1;
+
+        return i + 6;
+    }
+
+    /**
+     * Returns true if s looks like 6-Nov-2017
+     */
+    private static boolean isDayMonthYear(String s){
+        int firstDash = s.indexOf('-');
+        if(firstDash < 1 || firstDash > 2 || !isDigits(s, 0, firstDash))
+            return false;
+
+        int secondDash = s.indexOf('-', firstDash + 1);
+        return secondDash > firstDash + 1 && isLetters(s, firstDash + 1, secondDash)
+            && s.length() > secondDash + 1 && isDigits(s, secondDash + 1, s.length());
+    }
+
+    /**
+     * Returns true if s looks like Mon, 6 Nov 2017 12:00:00 GMT, or 6 Nov 2017 12:00:00 GMT
+     */
+    private static boolean isRfc1123(String s){
+        int i = 0;
+        if(isLetters(s, 0, 3) && s.length() > 5 && s.charAt(3) == ',' && s.charAt(4) == ' ')
+            i = 5;
+
+        int dayStart = i;
+        while(i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9')
+            i++;
+
+        return i > dayStart && i - dayStart <= 2 && i + 4 < s.length() && s.charAt(i) == ' ' && isLetters(s, i + 1, i + 4);
+    }
+
+    /**
+     * Returns true if the date time starting with a date ending at dateEnd has a time zone or offset,
+     * as required by ZonedDateTime
+     */
+    private static boolean hasZone(String s, int dateEnd){
+        char last = s.charAt(s.length() - 1);
+        if(last == 'Z' || last == ']')
+            return true;
+
+        for(int i = dateEnd; i < s.length(); i++){
+            if(s.charAt(i) == '+' || s.charAt(i) == '-')
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if s starts with a URL scheme, e.g. http:
+     */
+    private static boolean hasScheme(String s){
+        int colon = s.indexOf(':');
+        if(colon < 1 || !Character.isLetter(s.charAt(0)))
+            return false;
+
+        for(int i = 1; i < colon; i++){
+            char c = s.charAt(i);
+            if(!Character.isLetterOrDigit(c) && c != '+' && c != '-' && c != '.')
+                return false;
+        }
 
-        throw new ParseException("Couldn't parse datetime "+s+" - unrecognised format");
+        return true;
     }
 }
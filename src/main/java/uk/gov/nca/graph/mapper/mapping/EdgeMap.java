@@ -23,6 +23,7 @@ public class EdgeMap {
     private String type = null;
     private Object sourceId = null;
     private Object targetId = null;
+    private boolean unique = false;
 
     public String getType() {
         return type;
@@ -44,4 +45,11 @@ public class EdgeMap {
     public void setTargetId(Object targetId) {
         this.targetId = targetId;
     }
+
+    public boolean getUnique() {
+        return unique;
+    }
+    public void setUnique(boolean unique) {
+        this.unique = unique;
+    }
 }
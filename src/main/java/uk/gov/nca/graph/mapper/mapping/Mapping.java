@@ -28,8 +28,15 @@ public class Mapping {
     private DataType dataType;
     private String field;
     private Object literal;
+    private String format;
+
+    //Index of the format that last successfully parsed a value for this mapping, tried first next time
+    private int formatHint = 0;
+
+    private ConversionCache conversionCache = null;
 
     private static final Pattern VALID_MAPPING = Pattern.compile("_([A-Z]+)\\((.*)\\)");
+    private static final String FORMAT_SEPARATOR = "|";
 
     /**
      * Create an empty mapping
@@ -62,6 +69,7 @@ public class Mapping {
     }
     public void setDataType(DataType dataType) {
         this.dataType = dataType;
+        this.conversionCache = null;
     }
 
     public String getField() {
@@ -78,6 +86,39 @@ public class Mapping {
         this.literal = literal;
     }
 
+    /**
+     * The explicit format (a {@link java.time.format.DateTimeFormatter} pattern) to parse this field with,
+     * or null if the format should be detected automatically
+     */
+    public String getFormat() {
+        return format;
+    }
+    public void setFormat(String format) {
+        this.format = format;
+        this.conversionCache = null;
+    }
+
+    public int getFormatHint() {
+        return formatHint;
+    }
+    public void setFormatHint(int formatHint) {
+        this.formatHint = formatHint;
+    }
+
+    /**
+     * The cache of converted values for this mapping, which is created when first needed,
+     * or null if values of this type don't need converting
+     */
+    public ConversionCache getConversionCache() {
+        if(conversionCache == null && dataType != null && dataType != DataType.LITERAL && dataType != DataType.STRING)
+            conversionCache = new ConversionCache();
+
+        return conversionCache;
+    }
+    public void setConversionCache(ConversionCache conversionCache) {
+        this.conversionCache = conversionCache;
+    }
+
     public static Mapping fromString(String s) throws ParseException {
         Matcher m = VALID_MAPPING.matcher(s);
 
@@ -94,6 +135,17 @@ public class Mapping {
 
         if(mapping.getDataType() == DataType.LITERAL){
             mapping.setLiteral(m.group(2));
+        }else if(isTemporal(mapping.getDataType()) && m.group(2).contains(FORMAT_SEPARATOR)){
+            //Explicit format, e.g. _DATE(dob|dd/MM/yyyy)
+            int idx = m.group(2).indexOf(FORMAT_SEPARATOR);
+            mapping.setField(m.group(2).substring(0, idx));
+            mapping.setFormat(m.group(2).substring(idx + 1));
+
+            try {
+                DataTypeUtils.getFormatter(mapping.getFormat());
+            }catch (IllegalArgumentException e){
+                throw new ParseException("Invalid format " + mapping.getFormat(), e);
+            }
         }else{
             mapping.setField(m.group(2));
         }
@@ -111,24 +163,31 @@ public class Mapping {
         if(getDataType() != m.getDataType())
             return false;
 
-        return isEqual(getField(), m.getField()) && isEqual(getLiteral(), m.getLiteral());
+        return isEqual(getField(), m.getField()) && isEqual(getLiteral(), m.getLiteral())
+            && isEqual(getFormat(), m.getFormat());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getDataType(), getField(), getLiteral());
+        return Objects.hash(getDataType(), getField(), getLiteral(), getFormat());
     }
 
     @Override
     public String toString() {
         if(getDataType() == DataType.LITERAL){
             return "_LITERAL(" + getLiteral() + ")";
+        }else if(getFormat() != null){
+            return "_"+getDataType() + "(" + getField() + FORMAT_SEPARATOR + getFormat() + ")";
         }else{
             return "_"+getDataType() + "(" + getField() + ")";
         }
 
     }
 
+    private static boolean isTemporal(DataType dataType){
+        return dataType == DataType.DATE || dataType == DataType.DATETIME || dataType == DataType.TIME;
+    }
+
     private boolean isEqual(Object o1, Object o2){
         if(o1 == null && o2 == null)
             return true;
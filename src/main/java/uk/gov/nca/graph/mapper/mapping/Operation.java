@@ -0,0 +1,58 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.mapping;
+
+import java.util.Locale;
+
+/**
+ * Possible operations for a record, when the data is a stream of changes (e.g. from change data capture)
+ */
+public enum Operation {
+    INSERT,
+    UPDATE,
+    DELETE;
+
+    /**
+     * Parse the operation from the value of a record's operation field, accepting the full name
+     * or the single letter codes used by change data capture tools (c, r, u and d).
+     * A missing value is treated as an insert, and null is returned if the value isn't recognised.
+     */
+    public static Operation parse(Object value){
+        if(value == null || value.toString().isEmpty())
+            return INSERT;
+
+        switch (value.toString().trim().toLowerCase(Locale.ROOT)){
+            case "insert":
+            case "create":
+            case "read":
+            case "snapshot":
+            case "i":
+            case "c":
+            case "r":
+                return INSERT;
+            case "update":
+            case "upsert":
+            case "u":
+                return UPDATE;
+            case "delete":
+            case "d":
+                return DELETE;
+            default:
+                return null;
+        }
+    }
+}
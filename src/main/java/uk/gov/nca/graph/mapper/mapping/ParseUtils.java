@@ -0,0 +1,472 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.mapping;
+
+/**
+ * Utility class of parsers that work directly on a CharSequence, without creating intermediate
+ * Strings or throwing exceptions. Each parser returns null if the value isn't valid.
+ */
+public class ParseUtils {
+    private ParseUtils(){}
+
+    //Powers of ten that can be represented exactly as a double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    //Largest integer that can be represented exactly as a double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Parse a decimal integer, with an optional sign, returning null if it isn't valid or doesn't fit in an int
+     */
+    public static Integer parseInteger(CharSequence s){
+        Long l = parseLong(s);
+        if(l == null || l < Integer.MIN_VALUE || l > Integer.MAX_VALUE)
+            return null;
+
+        return l.intValue();
+    }
+
+    /**
+     * Parse a decimal integer, with an optional sign, returning null if it isn't valid or doesn't fit in a long
+     */
+    public static Long parseLong(CharSequence s){
+        int n = s.length();
+        if(n == 0)
+            return null;
+
+        int i = 0;
+        boolean negative = false;
+        char first = s.charAt(0);
+        if(first == '-' || first == '+'){
+            negative = first == '-';
+            i++;
+
+            if(n == 1)
+                return null;
+        }
+
+        //Accumulate negatively, as Long.MIN_VALUE has a larger magnitude than Long.MAX_VALUE
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+
+        for(; i < n; i++){
+            int digit = s.charAt(i) - '0';
+            if(digit < 0 || digit > 9 || result < multiplyLimit)
+                return null;
+
+            result *= 10;
+            if(result < limit + digit)
+                return null;
+
+            result -= digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parse a floating point number in the formats accepted by {@link Double#parseDouble(String)}.
+     *
+     * Decimal numbers with up to 15 significant digits and a small exponent are parsed exactly without
+     * allocation (the "fast path" described by Clinger), and anything else is passed to Double.parseDouble.
+     */
+    public static Double parseDouble(CharSequence s){
+        int n = s.length();
+
+        //Double.parseDouble ignores leading and trailing whitespace
+        int start = 0;
+        while(start < n && s.charAt(start) <= ' ')
+            start++;
+        while(n > start && s.charAt(n - 1) <= ' ')
+            n--;
+
+        if(start == n)
+            return null;
+
+        int i = start;
+        boolean negative = false;
+        if(s.charAt(i) == '-' || s.charAt(i) == '+'){
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int digits = 0;
+        int exponent = 0;
+
+        //Only the first 18 significant digits are held in the mantissa, which is enough to know the fast path can't be used
+        for(; i < n && isDigit(s.charAt(i)); i++){
+            digits++;
+            if(mantissa != 0 || s.charAt(i) != '0'){
+                if(significantDigits < 18)
+                    mantissa = mantissa * 10 + (s.charAt(i) - '0');
+                else
+                    exponent++;
+
+                significantDigits++;
+            }
+        }
+
+        if(i < n && s.charAt(i) == '.'){
+            for(i++; i < n && isDigit(s.charAt(i)); i++){
+                digits++;
+                if(mantissa != 0 || s.charAt(i) != '0'){
+                    if(significantDigits < 18){
+                        mantissa = mantissa * 10 + (s.charAt(i) - '0');
+                        exponent--;
+                    }
+
+                    significantDigits++;
+                }else{
+                    exponent--;
+                }
+            }
+        }
+
+        if(digits == 0)
+            return parseSpecialDouble(s, start, n);
+
+        if(i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')){
+            i++;
+
+            boolean negativeExponent = false;
+            if(i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')){
+                negativeExponent = s.charAt(i) == '-';
+                i++;
+            }
+
+            int expStart = i;
+            int exp = 0;
+            for(; i < n && isDigit(s.charAt(i)); i++){
+                if(exp < 100_000)
+                    exp = exp * 10 + (s.charAt(i) - '0');
+            }
+
+            if(i == expStart)
+                return null;
+
+            exponent += negativeExponent ? -exp : exp;
+        }
+
+        if(i < n && "fFdD".indexOf(s.charAt(i)) >= 0)
+            i++;
+
+        if(i != n)
+            return parseSpecialDouble(s, start, n);
+
+        if(significantDigits <= 15 && mantissa < MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22){
+            double d = (double) mantissa;
+            d = exponent < 0 ? d / POWERS_OF_TEN[-exponent] : d * POWERS_OF_TEN[exponent];
+
+            return negative ? -d : d;
+        }
+
+        //Valid, but can't be parsed exactly on the fast path
+        return Double.parseDouble(s.subSequence(start, n).toString());
+    }
+
+    /**
+     * Parse a boolean, where true, yes, TRUE, YES, etc. are true and anything else is false
+     */
+    public static Boolean parseBoolean(CharSequence s){
+        return equalsIgnoreCase(s, "true") || equalsIgnoreCase(s, "yes") ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /**
+     * Parse an IPv4 or IPv6 address, and return it in its canonical form, or null if it isn't a valid address.
+     *
+     * IPv4 addresses are returned in dotted decimal form without leading zeros, and IPv6 addresses are
+     * returned in the form recommended by RFC 5952 (lowercase, with the longest run of zeros compressed).
+     */
+    public static String parseIpAddress(CharSequence s){
+        if(indexOf(s, ':') >= 0){
+            int[] groups = new int[8];
+            if(!parseIpv6(s, groups))
+                return null;
+
+            return formatIpv6(groups);
+        }
+
+        long ipv4 = parseIpv4(s, 0, s.length());
+        if(ipv4 < 0)
+            return null;
+
+        //Avoid creating a new String if the input is already canonical
+        if(s instanceof String && isCanonicalIpv4(s))
+            return (String) s;
+
+        return formatIpv4((int) ipv4);
+    }
+
+    /**
+     * Format the bytes of an IPv4 (4 bytes) or IPv6 (16 bytes) address in its canonical form,
+     * or return null if there are the wrong number of bytes
+     */
+    public static String formatIpAddress(byte[] bytes){
+        if(bytes.length == 4)
+            return formatIpv4(((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF));
+
+        if(bytes.length != 16)
+            return null;
+
+        int[] groups = new int[8];
+        for(int i = 0; i < 8; i++)
+            groups[i] = ((bytes[2 * i] & 0xFF) << 8) | (bytes[2 * i + 1] & 0xFF);
+
+        return formatIpv6(groups);
+    }
+
+    //Private functions below here to keep rest of code tidy
+
+    private static boolean isDigit(char c){
+        return c >= '0' && c <= '9';
+    }
+
+    private static Double parseSpecialDouble(CharSequence s, int start, int end){
+        //Hexadecimal, NaN and Infinity are rare, so don't need to be fast
+        for(int i = start; i < end; i++){
+            char c = s.charAt(i);
+            if(c == 'x' || c == 'X' || c == 'N' || c == 'I'){
+                try{
+                    return Double.parseDouble(s.subSequence(start, end).toString());
+                }catch (NumberFormatException nfe){
+                    return null;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean equalsIgnoreCase(CharSequence s, String lowerCase){
+        if(s.length() != lowerCase.length())
+            return false;
+
+        for(int i = 0; i < s.length(); i++){
+            if(Character.toLowerCase(s.charAt(i)) != lowerCase.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static int indexOf(CharSequence s, char c){
+        for(int i = 0; i < s.length(); i++){
+            if(s.charAt(i) == c)
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Parse an IPv4 address between from and to, returning it as an unsigned int, or -1 if it isn't valid
+     */
+    private static long parseIpv4(CharSequence s, int from, int to){
+        long address = 0;
+        int octets = 0;
+        int i = from;
+
+        while(octets < 4){
+            int octetStart = i;
+            int octet = 0;
+            for(; i < to && isDigit(s.charAt(i)) && i - octetStart < 3; i++)
+                octet = octet * 10 + (s.charAt(i) - '0');
+
+            if(i == octetStart || octet > 255)
+                return -1;
+
+            address = (address << 8) | octet;
+            octets++;
+
+            if(octets < 4){
+                if(i >= to || s.charAt(i) != '.')
+                    return -1;
+                i++;
+            }
+        }
+
+        return i == to ? address : -1;
+    }
+
+    private static boolean isCanonicalIpv4(CharSequence s){
+        for(int i = 0; i < s.length() - 1; i++){
+            //A zero at the start of an octet, followed by another digit, is a leading zero
+            if(s.charAt(i) == '0' && (i == 0 || s.charAt(i - 1) == '.') && isDigit(s.charAt(i + 1)))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static String formatIpv4(int address){
+        return new StringBuilder(15)
+            .append((address >>> 24) & 0xFF).append('.')
+            .append((address >>> 16) & 0xFF).append('.')
+            .append((address >>> 8) & 0xFF).append('.')
+            .append(address & 0xFF)
+            .toString();
+    }
+
+    /**
+     * Parse an IPv6 address (optionally with an embedded IPv4 address in the last 32 bits) into 8 groups
+     */
+    private static boolean parseIpv6(CharSequence s, int[] groups){
+        int n = s.length();
+        int group = 0;
+        int compressAt = -1;
+        int i = 0;
+
+        if(n < 2)
+            return false;
+
+        if(s.charAt(0) == ':'){
+            if(s.charAt(1) != ':')
+                return false;
+
+            compressAt = 0;
+            i = 2;
+        }
+
+        while(i < n){
+            if(group == 8)
+                return false;
+
+            //Embedded IPv4 address
+            int dot = -1;
+            for(int j = i; j < n && s.charAt(j) != ':'; j++){
+                if(s.charAt(j) == '.'){
+                    dot = j;
+                    break;
+                }
+            }
+
+            if(dot >= 0){
+                if(group > 6)
+                    return false;
+
+                long ipv4 = parseIpv4(s, i, n);
+                if(ipv4 < 0)
+                    return false;
+
+                groups[group++] = (int) (ipv4 >>> 16) & 0xFFFF;
+                groups[group++] = (int) ipv4 & 0xFFFF;
+                i = n;
+                break;
+            }
+
+            int value = 0;
+            int start = i;
+            for(; i < n && i - start < 4; i++){
+                int digit = Character.digit(s.charAt(i), 16);
+                if(digit < 0)
+                    break;
+
+                value = (value << 4) | digit;
+            }
+
+            if(i == start)
+                return false;
+
+            groups[group++] = value;
+
+            if(i == n)
+                break;
+
+            if(s.charAt(i) != ':')
+                return false;
+
+            i++;
+            if(i < n && s.charAt(i) == ':'){
+                if(compressAt >= 0)
+                    return false;
+
+                compressAt = group;
+                i++;
+            }else if(i == n){
+                //Trailing single colon
+                return false;
+            }
+        }
+
+        if(compressAt >= 0){
+            if(group == 8)
+                return false;
+
+            //Move the groups after the compression to the end
+            int shift = 8 - group;
+            for(int j = group - 1; j >= compressAt; j--)
+                groups[j + shift] = groups[j];
+            for(int j = compressAt; j < compressAt + shift; j++)
+                groups[j] = 0;
+        }else if(group != 8){
+            return false;
+        }
+
+        return true;
+    }
+
+    private static String formatIpv6(int[] groups){
+        //Find the longest run of two or more zero groups, which will be compressed
+        int bestStart = -1;
+        int bestLength = 1;
+        for(int i = 0; i < 8; i++){
+            if(groups[i] != 0)
+                continue;
+
+            int j = i;
+            while(j < 8 && groups[j] == 0)
+                j++;
+
+            if(j - i > bestLength){
+                bestStart = i;
+                bestLength = j - i;
+            }
+
+            i = j;
+        }
+
+        StringBuilder sb = new StringBuilder(39);
+
+        //IPv4-mapped addresses are written with the IPv4 address in dotted decimal
+        boolean mapped = bestStart == 0 && bestLength == 5 && groups[5] == 0xFFFF;
+        int groupsToWrite = mapped ? 6 : 8;
+
+        for(int i = 0; i < groupsToWrite; i++){
+            if(i == bestStart){
+                sb.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+
+            if(sb.length() > 0 && sb.charAt(sb.length() - 1) != ':')
+                sb.append(':');
+
+            sb.append(Integer.toHexString(groups[i]));
+        }
+
+        if(mapped)
+            sb.append(':').append(formatIpv4((groups[6] << 16) | groups[7]));
+
+        return sb.toString();
+    }
+}
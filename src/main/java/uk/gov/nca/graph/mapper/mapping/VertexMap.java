@@ -29,6 +29,7 @@ public class VertexMap {
     private Object id = null;
     private String type = null;
     private boolean merge = false;
+    private boolean owned = false;
     private Map<String, Mapping> except = Collections.emptyMap();
 
     private Map<String, List<Mapping>> properties = new HashMap<>();
@@ -61,6 +62,16 @@ public class VertexMap {
         this.merge = merge;
     }
 
+    /**
+     * If true, the vertex belongs to the record it is mapped from, and is removed when that record is deleted
+     */
+    public boolean getOwned() {
+        return owned;
+    }
+    public void setOwned(boolean owned) {
+        this.owned = owned;
+    }
+
     public Map<String, List<Mapping>> getProperties() {
         return properties;
     }
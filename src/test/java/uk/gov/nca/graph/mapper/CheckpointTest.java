@@ -0,0 +1,57 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import org.junit.Test;
+
+public class CheckpointTest {
+    @Test
+    public void testSaveLoad() throws Exception{
+        File f = File.createTempFile("checkpoint", ".properties");
+
+        new Checkpoint("data.jsonl", "1234:(dev=1,ino=2)", 56L).save(f);
+        Checkpoint checkpoint = Checkpoint.load(f);
+
+        assertEquals("data.jsonl", checkpoint.getSource());
+        assertEquals("1234:(dev=1,ino=2)", checkpoint.getPosition());
+        assertEquals(56L, checkpoint.getRecords());
+
+        //Checkpoints without a position are resumed by record count
+        new Checkpoint("data.csv", null, 78L).save(f);
+        checkpoint = Checkpoint.load(f);
+
+        assertEquals("data.csv", checkpoint.getSource());
+        assertNull(checkpoint.getPosition());
+        assertEquals(78L, checkpoint.getRecords());
+        assertFalse(new File(f.getPath() + ".tmp").exists());
+
+        f.delete();
+    }
+
+    @Test
+    public void testMissing() throws Exception{
+        File f = File.createTempFile("checkpoint", ".properties");
+        f.delete();
+
+        assertNull(Checkpoint.load(f));
+    }
+}
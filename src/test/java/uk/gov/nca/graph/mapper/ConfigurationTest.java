@@ -23,14 +23,18 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import org.junit.Test;
 import uk.gov.nca.graph.mapper.exceptions.ConfigurationException;
 import uk.gov.nca.graph.mapper.mapping.DataType;
 import uk.gov.nca.graph.mapper.mapping.EdgeMap;
 import uk.gov.nca.graph.mapper.mapping.Mapping;
+import uk.gov.nca.graph.mapper.mapping.Operation;
 import uk.gov.nca.graph.mapper.mapping.VertexMap;
 
 public class ConfigurationTest {
@@ -71,6 +75,7 @@ public class ConfigurationTest {
         assertEquals("parentOf", em.getType());
         assertEquals(1, em.getSourceId());
         assertEquals(2, em.getTargetId());
+        assertTrue(em.getUnique());
 
         Map<String, Object> doesMatch = new HashMap<>();
         doesMatch.put("nationality", "British");
@@ -87,6 +92,41 @@ public class ConfigurationTest {
         assertFalse(conf.matchesFilters(doesntMatchName));
     }
 
+    @Test
+    public void testFields() throws Exception{
+        InputStream is = Configuration.class.getResourceAsStream("test.map");
+        Configuration conf = Configuration.loadConfiguration(is);
+
+        assertEquals(new TreeSet<>(Arrays.asList("1", "2", "3", "4", "5", "name", "nationality")), conf.getFields());
+    }
+
+    @Test
+    public void testFieldTypes() throws Exception{
+        InputStream is = Configuration.class.getResourceAsStream("test.map");
+        Configuration conf = Configuration.loadConfiguration(is);
+
+        Map<String, DataType> expected = new HashMap<>();
+        expected.put("1", DataType.STRING);
+        expected.put("2", DataType.STRING);
+        expected.put("3", DataType.DATE);
+        expected.put("4", DataType.STRING);
+        expected.put("5", DataType.STRING);
+        assertEquals(expected, conf.getFieldTypes());
+
+        //Fields converted to more than one type, or used by the filters, shouldn't have a type
+        String map = "filters:\n"
+            + "  code: ABC\n"
+            + "vertices:\n"
+            + "- _type: Person\n"
+            + "  age: _INTEGER(age)\n"
+            + "  ageText: _STRING(age)\n"
+            + "  code: _STRING(code)\n"
+            + "  height: _DOUBLE(height)";
+
+        conf = Configuration.loadConfiguration(new ByteArrayInputStream(map.getBytes()));
+        assertEquals(Collections.singletonMap("height", DataType.DOUBLE), conf.getFieldTypes());
+    }
+
     @Test
     public void testNullExcept() throws ConfigurationException {
         String map = "vertices:\n"
@@ -103,4 +143,25 @@ public class ConfigurationTest {
         assertTrue(vm.getExcept().containsKey("name"));
         assertNull(vm.getExcept().get("name"));
     }
+
+    @Test
+    public void testOperation() throws ConfigurationException {
+        String map = "operation: op\n"
+            + "vertices:\n"
+            + "- _type: Person\n"
+            + "  _owned: true\n"
+            + "  identifier: _STRING(id)";
+
+        Configuration conf = Configuration.loadConfiguration(new ByteArrayInputStream(map.getBytes()));
+
+        assertEquals("op", conf.getOperationField());
+        assertTrue(conf.getVertices().get(0).getOwned());
+        assertTrue(conf.getFields().contains("op"));
+
+        assertEquals(Operation.INSERT, conf.getOperation(Collections.singletonMap("op", "c")));
+        assertEquals(Operation.UPDATE, conf.getOperation(Collections.singletonMap("op", "UPDATE")));
+        assertEquals(Operation.DELETE, conf.getOperation(Collections.singletonMap("op", "d")));
+        assertEquals(Operation.INSERT, conf.getOperation(Collections.emptyMap()));
+        assertNull(conf.getOperation(Collections.singletonMap("op", "truncate")));
+    }
 }
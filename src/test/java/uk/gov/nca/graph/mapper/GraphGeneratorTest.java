@@ -20,14 +20,18 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import java.net.URI;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.Collections;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.gov.nca.graph.mapper.mapping.DataType;
 import uk.gov.nca.graph.mapper.mapping.Mapping;
+import uk.gov.nca.graph.mapper.mapping.VertexMap;
 
 public class GraphGeneratorTest {
   private static final Logger LOGGER = LoggerFactory.getLogger(GraphGeneratorTest.class);
@@ -67,7 +71,28 @@ public class GraphGeneratorTest {
     //Multiple objects with Literal first, should return String
     assertEquals(String.class, GraphGenerator.generateData(Arrays.asList(mLiteral, mUrl)).getClass());
 
-    //Multiple objects without field, should return URL
-    assertEquals(URL.class, GraphGenerator.generateData(Arrays.asList(mUrlEmpty, mLiteral)).getClass());
+    //Multiple objects without field, should return URI
+    assertEquals(URI.class, GraphGenerator.generateData(Arrays.asList(mUrlEmpty, mLiteral)).getClass());
+  }
+
+  @Test
+  public void testGenerateGraphLegacyUrls(){
+    VertexMap vertexMap = new VertexMap();
+    vertexMap.setType("Website");
+    vertexMap.setId("website");
+    vertexMap.setProperty("url", Collections.singletonList(new Mapping(DataType.URL, "url")));
+
+    Configuration conf = new Configuration();
+    conf.getVertices().add(vertexMap);
+
+    Graph graph = TinkerGraph.open();
+    GraphGenerator.generateGraph(graph, conf);
+    assertEquals(URI.class, graph.traversal().V().values("url").next().getClass());
+
+    conf.setLegacyUrls(true);
+
+    graph = TinkerGraph.open();
+    GraphGenerator.generateGraph(graph, conf);
+    assertEquals(URL.class, graph.traversal().V().values("url").next().getClass());
   }
 }
@@ -18,7 +18,12 @@ package uk.gov.nca.graph.mapper;
 
 import static junit.framework.TestCase.assertNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -30,6 +35,10 @@ import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
 import org.junit.Test;
 import uk.gov.nca.graph.utils.ElementUtils;
+import uk.gov.nca.graph.utils.GraphUtils;
+import uk.gov.nca.graph.mapper.index.EdgeSet;
+import uk.gov.nca.graph.mapper.index.IdentifierIndex;
+import uk.gov.nca.graph.mapper.index.ScalableBloomFilter;
 import uk.gov.nca.graph.mapper.mapping.DataType;
 import uk.gov.nca.graph.mapper.mapping.EdgeMap;
 import uk.gov.nca.graph.mapper.mapping.Mapping;
@@ -226,6 +235,399 @@ public class GrapherTest {
         graph.close();
     }
 
+    @Test
+    public void testIdentifierIndex() throws Exception{
+        Graph graph = TinkerGraph.open();
+
+        Configuration conf = new Configuration();
+
+        VertexMap vm = new VertexMap();
+        vm.setType("Person");
+        vm.setId("person1");
+        vm.setProperty("name", Arrays.asList(new Mapping(DataType.STRING, "name")));
+        vm.setProperty("identifier", Arrays.asList(new Mapping(DataType.STRING, "id")));
+
+        conf.getVertices().add(vm);
+
+        Grapher grapher = new Grapher(conf);
+        IdentifierIndex index = new IdentifierIndex();
+        grapher.setIdentifierIndex(index);
+
+        Map<String, Object> data1 = new HashMap<>();
+        data1.put("name", "Anna");
+        data1.put("id", "123");
+        grapher.addDataToGraph(data1, graph);
+
+        Map<String, Object> data2 = new HashMap<>();
+        data2.put("name", "Bob");
+        data2.put("id", "456");
+        grapher.addDataToGraph(data2, graph);
+
+        Map<String, Object> data3 = new HashMap<>();
+        data3.put("name", "Annabel");
+        data3.put("id", "123");
+        grapher.addDataToGraph(data3, graph);
+
+        assertEquals(2, index.size());
+
+        List<Vertex> vertices = graph.traversal().V().has("identifier", "123").toList();
+        assertEquals(1, vertices.size());
+        assertEquals("Annabel", vertices.get(0).property("name").value());
+        assertEquals(2L, graph.traversal().V().count().next().longValue());
+
+        //An index entry that no longer matches the graph should be ignored
+        Graph graph2 = TinkerGraph.open();
+        graph2.addVertex(T.label, "Person", "identifier", "789");
+        grapher.addDataToGraph(data1, graph2);
+        assertEquals(2L, graph2.traversal().V().count().next().longValue());
+
+        index.close();
+        graph.close();
+        graph2.close();
+    }
+
+    @Test
+    public void testCompleteIdentifierIndex() throws Exception{
+        Graph graph = TinkerGraph.open();
+        graph.addVertex(T.label, "Person", "identifier", "123", "name", "Anna");
+
+        Configuration conf = new Configuration();
+
+        VertexMap vm = new VertexMap();
+        vm.setType("Person");
+        vm.setId("person1");
+        vm.setProperty("name", Arrays.asList(new Mapping(DataType.STRING, "name")));
+        vm.setProperty("identifier", Arrays.asList(new Mapping(DataType.STRING, "id")));
+
+        conf.getVertices().add(vm);
+
+        Grapher grapher = new Grapher(conf);
+        IdentifierIndex index = new IdentifierIndex();
+        grapher.setIdentifierIndex(index);
+        grapher.rebuildIdentifierIndex(graph);
+
+        assertTrue(index.isComplete());
+        assertEquals(1, index.size());
+
+        Map<String, Object> data1 = new HashMap<>();
+        data1.put("name", "Bob");
+        data1.put("id", "456");
+        grapher.addDataToGraph(data1, graph);
+
+        Map<String, Object> data2 = new HashMap<>();
+        data2.put("name", "Annabel");
+        data2.put("id", "123");
+        grapher.addDataToGraph(data2, graph);
+
+        assertEquals(2L, graph.traversal().V().count().next().longValue());
+        assertEquals("Annabel", graph.traversal().V().has("identifier", "123").next().property("name").value());
+
+        //Reload the graph from file, which changes the type of the vertex IDs, and check the index still works
+        File f = File.createTempFile("grapher", ".graphml");
+        GraphUtils.writeGraphFile(f, "graphml", graph);
+        graph.close();
+
+        Graph reloaded = TinkerGraph.open();
+        GraphUtils.readGraphFile(f, "graphml", reloaded);
+
+        Map<String, Object> data3 = new HashMap<>();
+        data3.put("name", "Robert");
+        data3.put("id", "456");
+        grapher.addDataToGraph(data3, reloaded);
+
+        assertEquals(2L, reloaded.traversal().V().count().next().longValue());
+        assertEquals("Robert", reloaded.traversal().V().has("identifier", "456").next().property("name").value());
+
+        index.close();
+        reloaded.close();
+        f.delete();
+    }
+
+    @Test
+    public void testIdentifierFilter() throws Exception{
+        Graph graph = TinkerGraph.open();
+        graph.addVertex(T.label, "Person", "identifier", "123", "name", "Anna");
+
+        Configuration conf = new Configuration();
+
+        VertexMap vm = new VertexMap();
+        vm.setType("Person");
+        vm.setId("person1");
+        vm.setProperty("name", Arrays.asList(new Mapping(DataType.STRING, "name")));
+        vm.setProperty("identifier", Arrays.asList(new Mapping(DataType.STRING, "id")));
+
+        conf.getVertices().add(vm);
+
+        Grapher grapher = new Grapher(conf);
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01, 1024 * 1024);
+        grapher.setIdentifierFilter(filter);
+        grapher.rebuildIdentifierFilter(graph);
+
+        assertEquals(1, filter.size());
+
+        Map<String, Object> data1 = new HashMap<>();
+        data1.put("name", "Bob");
+        data1.put("id", "456");
+        grapher.addDataToGraph(data1, graph);
+
+        Map<String, Object> data2 = new HashMap<>();
+        data2.put("name", "Annabel");
+        data2.put("id", "123");
+        grapher.addDataToGraph(data2, graph);
+
+        Map<String, Object> data3 = new HashMap<>();
+        data3.put("name", "Robert");
+        data3.put("id", "456");
+        grapher.addDataToGraph(data3, graph);
+
+        assertEquals(2L, graph.traversal().V().count().next().longValue());
+        assertEquals("Annabel", graph.traversal().V().has("identifier", "123").next().property("name").value());
+        assertEquals("Robert", graph.traversal().V().has("identifier", "456").next().property("name").value());
+
+        assertEquals(2, filter.size());
+        assertEquals(3, filter.getLookups());
+        assertEquals(1, filter.getNegatives());
+
+        graph.close();
+    }
+
+    @Test
+    public void testUniqueEdges() throws Exception{
+        Configuration conf = new Configuration();
+
+        VertexMap vm1 = new VertexMap();
+        vm1.setType("Person");
+        vm1.setId("person");
+        vm1.setProperty("identifier", Arrays.asList(new Mapping(DataType.STRING, "person")));
+        conf.getVertices().add(vm1);
+
+        VertexMap vm2 = new VertexMap();
+        vm2.setType("Account");
+        vm2.setId("account");
+        vm2.setProperty("identifier", Arrays.asList(new Mapping(DataType.STRING, "account")));
+        conf.getVertices().add(vm2);
+
+        EdgeMap em1 = new EdgeMap();
+        em1.setType("owns");
+        em1.setSourceId("person");
+        em1.setTargetId("account");
+        em1.setUnique(true);
+        conf.getEdges().add(em1);
+
+        EdgeMap em2 = new EdgeMap();
+        em2.setType("transaction");
+        em2.setSourceId("person");
+        em2.setTargetId("account");
+        conf.getEdges().add(em2);
+
+        Map<String, Object> data1 = new HashMap<>();
+        data1.put("person", "123");
+        data1.put("account", "A1");
+
+        Map<String, Object> data2 = new HashMap<>();
+        data2.put("person", "123");
+        data2.put("account", "A2");
+
+        //Without an edge set, the graph is queried
+        Graph graph = TinkerGraph.open();
+        Grapher grapher = new Grapher(conf);
+        grapher.addDataToGraph(data1, graph);
+        grapher.addDataToGraph(data1, graph);
+        grapher.addDataToGraph(data2, graph);
+
+        assertEquals(2L, graph.traversal().E().hasLabel("owns").count().next().longValue());
+        assertEquals(3L, graph.traversal().E().hasLabel("transaction").count().next().longValue());
+
+        //With an edge set, populated from the existing graph
+        EdgeSet edgeSet = new EdgeSet();
+        grapher.setEdgeSet(edgeSet);
+        grapher.rebuildEdgeSet(graph);
+        assertEquals(2, edgeSet.size());
+
+        grapher.addDataToGraph(data1, graph);
+        grapher.addDataToGraph(data2, graph);
+
+        assertEquals(2L, graph.traversal().E().hasLabel("owns").count().next().longValue());
+        assertEquals(5L, graph.traversal().E().hasLabel("transaction").count().next().longValue());
+
+        edgeSet.close();
+        graph.close();
+    }
+
+    @Test
+    public void testUpsert() throws Exception{
+        Configuration conf = new Configuration();
+
+        VertexMap vm1 = new VertexMap();
+        vm1.setType("Person");
+        vm1.setId("person");
+        vm1.setProperty("identifier", Arrays.asList(new Mapping(DataType.STRING, "person")));
+        vm1.setProperty("name", Arrays.asList(new Mapping(DataType.STRING, "name")));
+        conf.getVertices().add(vm1);
+
+        VertexMap vm2 = new VertexMap();
+        vm2.setType("Account");
+        vm2.setId("account");
+        vm2.setProperty("identifier", Arrays.asList(new Mapping(DataType.STRING, "account")));
+        conf.getVertices().add(vm2);
+
+        EdgeMap em = new EdgeMap();
+        em.setType("owns");
+        em.setSourceId("person");
+        em.setTargetId("account");
+        conf.getEdges().add(em);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("person", "123");
+        data.put("name", "Bob Smith");
+        data.put("account", "A1");
+
+        Graph graph = TinkerGraph.open();
+        Grapher grapher = new Grapher(conf);
+        grapher.setUpsert(true);
+        grapher.addDataToGraph(data, graph);
+
+        //The same record, with an updated name
+        data.put("name", "Robert Smith");
+        grapher.addDataToGraph(data, graph);
+
+        assertEquals(2L, graph.traversal().V().count().next().longValue());
+        assertEquals(1L, graph.traversal().E().count().next().longValue());
+
+        Vertex person = graph.traversal().V().hasLabel("Person").next();
+        assertEquals(1L, graph.traversal().V(person.id()).properties("name").count().next().longValue());
+        assertEquals("Robert Smith", person.value("name"));
+
+        graph.close();
+    }
+
+    @Test
+    public void testOperations() throws Exception{
+        Configuration conf = new Configuration();
+        conf.setOperationField("op");
+
+        VertexMap vm1 = new VertexMap();
+        vm1.setType("Person");
+        vm1.setId("person");
+        vm1.setOwned(true);
+        vm1.setProperty("identifier", Arrays.asList(new Mapping(DataType.STRING, "person")));
+        vm1.setProperty("name", Arrays.asList(new Mapping(DataType.STRING, "name")));
+        conf.getVertices().add(vm1);
+
+        VertexMap vm2 = new VertexMap();
+        vm2.setType("Company");
+        vm2.setId("company");
+        vm2.setProperty("identifier", Arrays.asList(new Mapping(DataType.STRING, "company")));
+        conf.getVertices().add(vm2);
+
+        EdgeMap em = new EdgeMap();
+        em.setType("worksFor");
+        em.setSourceId("person");
+        em.setTargetId("company");
+        conf.getEdges().add(em);
+
+        Graph graph = TinkerGraph.open();
+        Grapher grapher = new Grapher(conf);
+        grapher.setIdentifierIndex(new IdentifierIndex());
+        grapher.setEdgeSet(new EdgeSet());
+        grapher.rebuildEdgeSet(graph);
+
+        grapher.addDataToGraph(change("c", "1", "Bob Smith", "ACME"), graph);
+        grapher.addDataToGraph(change("c", "2", "Alice Jones", "ACME"), graph);
+        assertEquals(3L, graph.traversal().V().count().next().longValue());
+        assertEquals(2L, graph.traversal().E().count().next().longValue());
+
+        //Update replaces the name, and doesn't duplicate the edge
+        grapher.addDataToGraph(change("u", "1", "Robert Smith", "ACME"), graph);
+        assertEquals(3L, graph.traversal().V().count().next().longValue());
+        assertEquals(2L, graph.traversal().E().count().next().longValue());
+
+        Vertex bob = graph.traversal().V().has("identifier", "1").next();
+        assertEquals(1L, graph.traversal().V(bob.id()).properties("name").count().next().longValue());
+        assertEquals("Robert Smith", bob.value("name"));
+
+        //Delete removes the owned person vertex, but not the shared company vertex
+        grapher.addDataToGraph(change("d", "1", null, "ACME"), graph);
+        assertEquals(2L, graph.traversal().V().count().next().longValue());
+        assertEquals(1L, graph.traversal().E().count().next().longValue());
+        assertFalse(graph.traversal().V().has("identifier", "1").hasNext());
+        assertNull(grapher.getIdentifierIndex().get("Person", "1"));
+
+        //Unrecognised operations are skipped
+        grapher.addDataToGraph(change("truncate", "3", "Charlie Brown", "ACME"), graph);
+        assertEquals(2L, graph.traversal().V().count().next().longValue());
+
+        //Re-inserting the deleted record recreates it
+        grapher.addDataToGraph(change("c", "1", "Bob Smith", "ACME"), graph);
+        assertEquals(3L, graph.traversal().V().count().next().longValue());
+        assertEquals(2L, graph.traversal().E().count().next().longValue());
+
+        graph.close();
+    }
+
+    private static Map<String, Object> change(String op, String person, String name, String company){
+        Map<String, Object> data = new HashMap<>();
+        data.put("op", op);
+        data.put("person", person);
+        data.put("name", name);
+        data.put("company", company);
+
+        return data;
+    }
+
+    @Test
+    public void testSortedBy() throws Exception{
+        Configuration conf = new Configuration();
+
+        VertexMap vm1 = new VertexMap();
+        vm1.setType("Person");
+        vm1.setId("person");
+        vm1.setProperty("identifier", Arrays.asList(new Mapping(DataType.STRING, "person")));
+        vm1.setProperty("name", Arrays.asList(new Mapping(DataType.STRING, "name")));
+        conf.getVertices().add(vm1);
+
+        VertexMap vm2 = new VertexMap();
+        vm2.setType("Account");
+        vm2.setId("account");
+        vm2.setProperty("identifier", Arrays.asList(new Mapping(DataType.STRING, "account")));
+        conf.getVertices().add(vm2);
+
+        EdgeMap em = new EdgeMap();
+        em.setType("owns");
+        em.setSourceId("person");
+        em.setTargetId("account");
+        conf.getEdges().add(em);
+
+        Graph graph = TinkerGraph.open();
+        Grapher grapher = new Grapher(conf);
+        grapher.setSortedBy("person");
+
+        grapher.addDataToGraph(record("123", "Anna", "A1"), graph);
+        grapher.addDataToGraph(record("123", "Annabel", "A2"), graph);
+        grapher.addDataToGraph(record("456", "Bob", "A1"), graph);
+
+        assertEquals(2L, graph.traversal().V().hasLabel("Person").count().next().longValue());
+        assertEquals(2L, graph.traversal().V().hasLabel("Account").count().next().longValue());
+        assertEquals(3L, graph.traversal().E().count().next().longValue());
+        assertEquals("Annabel", graph.traversal().V().has("identifier", "123").next().property("name").value());
+        assertEquals(2L, graph.traversal().V().has("identifier", "A1").in("owns").count().next().longValue());
+
+        //The group for 123 has been flushed, and the graph isn't queried, so a new vertex is created
+        grapher.addDataToGraph(record("123", "Anna", "A3"), graph);
+        assertEquals(3L, graph.traversal().V().hasLabel("Person").count().next().longValue());
+
+        graph.close();
+    }
+
+    private static Map<String, Object> record(String person, String name, String account){
+        Map<String, Object> data = new HashMap<>();
+        data.put("person", person);
+        data.put("name", name);
+        data.put("account", account);
+
+        return data;
+    }
+
     @Test
     public void testMergeOnDottedProperty() throws Exception{
         Graph graph = TinkerGraph.open();
@@ -402,6 +804,34 @@ public class GrapherTest {
         graph.close();
     }
 
+    @Test
+    public void testLegacyUrls() throws Exception{
+        Graph graph = TinkerGraph.open();
+
+        Configuration conf = new Configuration();
+
+        VertexMap vertexMap = new VertexMap();
+        vertexMap.setType("Website");
+        vertexMap.setId("website");
+        vertexMap.setProperty("url", Arrays.asList(new Mapping(DataType.URL, "url")));
+        conf.getVertices().add(vertexMap);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("url", "http://www.gov.uk");
+
+        new Grapher(conf).addDataToGraph(data, graph);
+
+        conf.setLegacyUrls(true);
+        new Grapher(conf).addDataToGraph(data, graph);
+
+        List<Object> urls = graph.traversal().V().values("url").toList();
+        assertEquals(2, urls.size());
+        assertTrue(urls.contains(new URI("http://www.gov.uk")));
+        assertTrue(urls.contains(new URL("http://www.gov.uk")));
+
+        graph.close();
+    }
+
     @Test
     public void testFlattenMap(){
         Map<String, Object> nested1 = new HashMap<>();
@@ -0,0 +1,134 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.net.URL;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.Test;
+import uk.gov.nca.graph.mapper.mapping.DataType;
+import uk.gov.nca.graph.mapper.mapping.Mapping;
+import uk.gov.nca.graph.mapper.mapping.VertexMap;
+
+public class ValueDictionaryTest {
+    @Test
+    public void testCanonicalise() throws Exception{
+        ValueDictionary dictionary = new ValueDictionary(100);
+
+        String s1 = new String("United Kingdom");
+        String s2 = new String("United Kingdom");
+        assertSame(s1, dictionary.canonicalise(s1));
+        assertSame(s1, dictionary.canonicalise(s2));
+
+        LocalDate d1 = LocalDate.of(2018, 1, 15);
+        LocalDate d2 = LocalDate.of(2018, 1, 15);
+        assertSame(d1, dictionary.canonicalise(d1));
+        assertSame(d1, dictionary.canonicalise((Object) d2));
+
+        URL u1 = new URL("http://www.example.com/");
+        URL u2 = new URL("http://www.example.com/");
+        assertSame(u1, dictionary.canonicalise(u1));
+        assertSame(u1, dictionary.canonicalise(u2));
+
+        //Mutable values are returned as they are
+        int[] array = new int[]{1, 2, 3};
+        assertSame(array, dictionary.canonicalise(array));
+
+        assertEquals(3, dictionary.getHits());
+        assertEquals(6, dictionary.getLookups());
+        assertEquals(3, dictionary.size());
+        assertEquals(40 + 28 + 24 + 120 + 46, dictionary.getBytesSaved());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testBoxedNumbers(){
+        ValueDictionary dictionary = new ValueDictionary(100);
+
+        Integer i1 = new Integer(1000);
+        assertSame(i1, dictionary.canonicalise(i1));
+        assertSame(i1, dictionary.canonicalise(new Integer(1000)));
+
+        //Small values are normally shared by valueOf(), so replacing them isn't counted as saving anything
+        Integer i2 = new Integer(5);
+        assertSame(i2, dictionary.canonicalise(i2));
+        assertSame(i2, dictionary.canonicalise(new Integer(5)));
+        assertSame(Long.valueOf(5), dictionary.canonicalise(Long.valueOf(5)));
+
+        assertEquals(2, dictionary.getHits());
+        assertEquals(16, dictionary.getBytesSaved());
+    }
+
+    @Test
+    public void testBounded(){
+        ValueDictionary dictionary = new ValueDictionary(2);
+
+        String a = new String("a");
+        dictionary.canonicalise(a);
+        dictionary.canonicalise(new String("b"));
+        dictionary.canonicalise(new String("a"));
+        dictionary.canonicalise(new String("c"));
+
+        //b was the least recently used, so has been removed
+        assertEquals(2, dictionary.size());
+        assertSame(a, dictionary.canonicalise(new String("a")));
+
+        String b = new String("b");
+        assertSame(b, dictionary.canonicalise(b));
+        assertNotSame(b, dictionary.canonicalise(new String("c")));
+    }
+
+    @Test
+    public void testGrapher(){
+        Configuration conf = new Configuration();
+
+        VertexMap vm = new VertexMap();
+        vm.setType("Person");
+        vm.setProperty("country", Arrays.asList(new Mapping(DataType.STRING, "country")));
+        conf.getVertices().add(vm);
+
+        Grapher grapher = new Grapher(conf);
+        ValueDictionary dictionary = new ValueDictionary(100);
+        grapher.setValueDictionary(dictionary);
+
+        Graph graph = TinkerGraph.open();
+        for(int i = 0; i < 10; i++){
+            Map<String, Object> data = new HashMap<>();
+            data.put("country", new String("United Kingdom"));
+            grapher.addDataToGraph(data, graph);
+        }
+
+        List<Vertex> vertices = graph.traversal().V().toList();
+        assertEquals(10, vertices.size());
+
+        Object first = vertices.get(0).value("country");
+        for(Vertex v : vertices)
+            assertSame(first, v.value("country"));
+
+        assertEquals(9, dictionary.getHits());
+    }
+}
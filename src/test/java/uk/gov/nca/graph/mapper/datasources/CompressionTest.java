@@ -0,0 +1,120 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class CompressionTest {
+    private static final byte[] DATA = "firstname,surname\nBob,Smith\nAlice,Jones\n".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testNone() throws Exception{
+        File f = File.createTempFile("compression", ".csv");
+        Files.write(f.toPath(), DATA);
+
+        assertEquals(Compression.NONE, Compression.detect(f));
+        assertRead(Compression.NONE, f);
+
+        f.delete();
+    }
+
+    @Test
+    public void testGzip() throws Exception{
+        //Use a misleading extension, to check that the magic bytes are used
+        File f = File.createTempFile("compression", ".bz2");
+
+        //Two members, to check that both are read
+        try(OutputStream out = new FileOutputStream(f)){
+            out.write(gzip(DATA, 0, 20));
+            out.write(gzip(DATA, 20, DATA.length - 20));
+        }
+
+        assertEquals(Compression.GZIP, Compression.detect(f));
+        assertRead(Compression.GZIP, f);
+
+        f.delete();
+    }
+
+    @Test
+    public void testBzip2() throws Exception{
+        File f = File.createTempFile("compression", ".bz2");
+        try(OutputStream out = new BZip2CompressorOutputStream(new FileOutputStream(f))){
+            out.write(DATA);
+        }
+
+        assertEquals(Compression.BZIP2, Compression.detect(f));
+        assertRead(Compression.BZIP2, f);
+
+        f.delete();
+    }
+
+    @Test
+    public void testBgzf() throws Exception{
+        File f = File.createTempFile("compression", ".gz");
+        ParallelGzipInputStreamTest.writeBgzf(f, DATA, false);
+
+        assertEquals(Compression.GZIP, Compression.detect(f));
+        try(InputStream in = Compression.GZIP.open(f, 2)){
+            assertTrue(in instanceof ParallelGzipInputStream);
+            assertArrayEquals(DATA, IOUtils.toByteArray(in));
+        }
+
+        try(InputStream in = Compression.GZIP.open(f, 2)){
+            DataSource ds = new CsvDataSource(',', in, true);
+
+            Map<String, Object> row = ds.next();
+            assertEquals("Bob", row.get("firstname"));
+            assertEquals("Smith", row.get("surname"));
+
+            ds.close();
+        }
+
+        f.delete();
+    }
+
+    private static void assertRead(Compression compression, File f) throws Exception{
+        for(int threads : new int[]{1, 4}){
+            try (InputStream in = compression.open(f, threads)) {
+                assertArrayEquals(DATA, IOUtils.toByteArray(in));
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] data, int offset, int length) throws Exception{
+        ByteArrayOutputStream member = new ByteArrayOutputStream();
+        try(OutputStream out = new GZIPOutputStream(member)){
+            out.write(data, offset, length);
+        }
+
+        return member.toByteArray();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import uk.gov.nca.graph.mapper.mapping.DataType;
+
+public class CsvSchemaTest {
+    private static final String DATA = "name,age,height,dob,big,active,mixed,empty\n"
+        + "Bob,24,1.8,1994-02-03,3000000000,true,1,\n"
+        + "Alice,26,1.65,1992-05-06,12,FALSE,abc,\n"
+        + "Eve,,2,,,,,\n";
+
+    @Test
+    public void testInfer() throws Exception{
+        File f = createFile(DATA);
+
+        Map<String, DataType> types = CsvSchema.infer(',', f, true, 100).getTypes();
+
+        assertEquals(10, types.size());
+        assertEquals(DataType.INTEGER, types.get("age"));
+        assertEquals(DataType.INTEGER, types.get("2"));
+        assertEquals(DataType.DOUBLE, types.get("height"));
+        assertEquals(DataType.DATE, types.get("dob"));
+        assertEquals(DataType.LONG, types.get("big"));
+        assertEquals(DataType.BOOLEAN, types.get("active"));
+        assertFalse(types.containsKey("name"));
+        assertFalse(types.containsKey("mixed"));
+        assertFalse(types.containsKey("empty"));
+
+        //Only the sampled records are used
+        assertEquals(DataType.INTEGER, CsvSchema.infer(',', f, true, 1).getTypes().get("mixed"));
+
+        f.delete();
+    }
+
+    @Test
+    public void testCache() throws Exception{
+        File f = createFile(DATA);
+        File cache = new File(f.getPath() + CsvSchema.CACHE_SUFFIX);
+
+        CsvSchema schema = CsvSchema.loadOrInfer(',', f, true, 100);
+        assertTrue(cache.exists());
+        assertEquals(schema.getTypes(), CsvSchema.load(cache).getTypes());
+
+        //The cached schema is used while the file is unchanged
+        String yaml = new String(Files.readAllBytes(cache.toPath()), StandardCharsets.UTF_8);
+        Files.write(cache.toPath(), yaml.replace("age: INTEGER", "age: DOUBLE").getBytes(StandardCharsets.UTF_8));
+        assertEquals(DataType.DOUBLE, CsvSchema.loadOrInfer(',', f, true, 100).getTypes().get("age"));
+
+        //Once the file changes, the schema is inferred again
+        Files.write(f.toPath(), (DATA + "Mallory,30,1.7,1988-01-01,1,true,,\n").getBytes(StandardCharsets.UTF_8));
+        assertEquals(DataType.INTEGER, CsvSchema.loadOrInfer(',', f, true, 100).getTypes().get("age"));
+
+        cache.delete();
+        f.delete();
+    }
+
+    @Test
+    public void testRestrictAndApply() throws Exception{
+        Map<String, DataType> inferred = new HashMap<>();
+        inferred.put("age", DataType.INTEGER);
+        inferred.put("height", DataType.DOUBLE);
+        inferred.put("dob", DataType.DATE);
+        inferred.put("big", DataType.LONG);
+
+        Map<String, DataType> mapped = new HashMap<>();
+        mapped.put("age", DataType.LONG);
+        mapped.put("height", DataType.STRING);
+        mapped.put("dob", DataType.DATE);
+        mapped.put("big", DataType.INTEGER);
+        mapped.put("name", DataType.STRING);
+
+        CsvSchema schema = new CsvSchema(inferred).restrict(mapped);
+
+        Map<String, DataType> expected = new HashMap<>();
+        expected.put("age", DataType.LONG);
+        expected.put("dob", DataType.DATE);
+        assertEquals(expected, schema.getTypes());
+
+        Map<String, Object> record = new HashMap<>();
+        record.put("age", "24");
+        record.put("dob", "not a date");
+        record.put("height", "1.8");
+        schema.apply(record);
+
+        assertEquals(24L, record.get("age"));
+        assertEquals("not a date", record.get("dob"));
+        assertEquals("1.8", record.get("height"));
+    }
+
+    @Test
+    public void testParallel() throws Exception{
+        File f = createFile(DATA);
+        CsvSchema schema = new CsvSchema(Collections.singletonMap("dob", DataType.DATE));
+
+        DataSource ds = new ParallelCsvDataSource(',', f, true, 2, true, 16, schema);
+
+        assertEquals(LocalDate.of(1994, 2, 3), ds.next().get("dob"));
+        assertEquals(LocalDate.of(1992, 5, 6), ds.next().get("dob"));
+        assertEquals("", ds.next().get("dob"));
+        assertFalse(ds.hasNext());
+
+        ds.close();
+        f.delete();
+    }
+
+    @Test
+    public void testMappedRecord() throws Exception{
+        File f = createFile(DATA);
+        CsvSchema schema = CsvSchema.infer(',', f, true, 100);
+
+        DataSource ds = new TypedDataSource(new MappedCsvDataSource(',', f.getPath(), true), schema);
+
+        Map<String, Object> record = ds.next();
+        assertTrue(record instanceof MappedCsvRecord);
+        assertEquals(24, record.get("age"));
+        assertEquals(LocalDate.of(1994, 2, 3), record.get("dob"));
+        assertEquals("Bob", record.get("name"));
+
+        //Each column is converted once, and is available under its title and number
+        assertSame(record.get("dob"), record.get("4"));
+
+        //Converted values are kept if the record is modified
+        record.put("extra", "value");
+        assertEquals(LocalDate.of(1994, 2, 3), record.get("4"));
+        assertEquals(3000000000L, record.get("big"));
+
+        assertEquals("", ds.next().get("empty"));
+
+        ds.close();
+        f.delete();
+    }
+
+    private static File createFile(String data) throws Exception{
+        File f = File.createTempFile("schema", ".csv");
+        Files.write(f.toPath(), data.getBytes(StandardCharsets.UTF_8));
+
+        return f;
+    }
+}
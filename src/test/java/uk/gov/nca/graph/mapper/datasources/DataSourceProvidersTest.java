@@ -0,0 +1,92 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import uk.gov.nca.graph.mapper.datasources.DataSourceProvider.Capability;
+
+public class DataSourceProvidersTest {
+
+    @Test
+    public void testGet(){
+        assertEquals(new HashSet<>(Arrays.asList("CSV", "ES", "FIXED", "JSON", "JSONL", "PARQUET", "REGEX", "SQL", "TSV", "XML")), DataSourceProviders.getFormats());
+
+        assertTrue(DataSourceProviders.get("csv") instanceof CsvDataSourceProvider);
+        assertTrue(DataSourceProviders.get("TSV") instanceof TsvDataSourceProvider);
+        assertTrue(DataSourceProviders.get("ES").getCapabilities().contains(Capability.PROJECTION));
+        assertFalse(DataSourceProviders.get("ES").getCapabilities().contains(Capability.TYPED_FIELDS));
+        assertFalse(DataSourceProviders.get("SQL").getCapabilities().contains(Capability.SPLITTABLE));
+        assertTrue(DataSourceProviders.get("SQL").getCapabilities().contains(Capability.WATERMARK));
+        assertNull(DataSourceProviders.get("PARQUET-OR-SIMILAR"));
+    }
+
+    @Test
+    public void testChooseParallelism() throws Exception{
+        File f = File.createTempFile("provider", ".csv");
+        Files.write(f.toPath(), "id\n1\n".getBytes(StandardCharsets.UTF_8));
+
+        DataSourceOptions options = new DataSourceOptions(f.getPath());
+        assertEquals(1, DataSourceProviders.chooseParallelism(DataSourceProviders.get("CSV"), options, 8));
+        assertEquals(1, DataSourceProviders.chooseParallelism(DataSourceProviders.get("SQL"), options, 8));
+
+        //Size isn't known, so all the threads are used
+        assertEquals(8, DataSourceProviders.chooseParallelism(DataSourceProviders.get("ES"), new DataSourceOptions("http://localhost:9200"), 8));
+
+        f.delete();
+    }
+
+    @Test
+    public void testOpenFiles() throws Exception{
+        File dir = Files.createTempDirectory("provider").toFile();
+        Files.write(new File(dir, "a.csv").toPath(), "id,name\n1,Bob\n".getBytes(StandardCharsets.UTF_8));
+        try(OutputStream out = new GZIPOutputStream(Files.newOutputStream(new File(dir, "b.csv.gz").toPath()))){
+            out.write("id,name\n2,Alice\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        DataSourceOptions options = new DataSourceOptions(dir.getPath());
+        options.setParameter(CsvDataSourceProvider.HEADERS, "true");
+
+        DataSource ds = DataSourceProviders.get("CSV").open(options);
+        assertTrue(ds instanceof MultiFileDataSource);
+
+        Map<String, String> names = new TreeMap<>();
+        while(ds.hasNext()){
+            Map<String, Object> row = ds.next();
+            names.put((String) row.get("id"), (String) row.get("name"));
+        }
+        ds.close();
+
+        assertEquals("{1=Bob, 2=Alice}", names.toString());
+
+        FileUtils.deleteDirectory(dir);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class FixedWidthDataSourceTest {
+    private static final String LAYOUT = "fields:\n"
+        + "- name: id\n"
+        + "  start: 1\n"
+        + "  length: 4\n"
+        + "- name: name\n"
+        + "  start: 5\n"
+        + "  length: 12\n"
+        + "- name: city\n"
+        + "  start: 17\n"
+        + "  length: 10\n";
+
+    private static final String DATA = "0001Bob Smith   London    \r\n"
+        + "\n"
+        + "0002Alice Jones Paris\n"
+        + "0003Eve";
+
+    @Test
+    public void testFixedWidth() throws Exception{
+        File layout = createFile(LAYOUT);
+        File data = createFile(DATA);
+
+        DataSource ds = new FixedWidthDataSource(data, FixedWidthLayout.load(layout));
+
+        assertTrue(ds.hasNext());
+        Map<String, Object> row = ds.next();
+        assertEquals("0001", row.get("id"));
+        assertEquals("Bob Smith", row.get("name"));
+        assertEquals("London", row.get("city"));
+        assertEquals("Bob Smith", row.get("2"));
+
+        row = ds.next();
+        assertEquals("Alice Jones", row.get("name"));
+        assertEquals("Paris", row.get("city"));
+
+        //Fields past the end of the line are empty
+        row = ds.next();
+        assertEquals("Eve", row.get("name"));
+        assertEquals("", row.get("city"));
+
+        assertFalse(ds.hasNext());
+        ds.close();
+
+        layout.delete();
+        data.delete();
+    }
+
+    @Test
+    public void testWindows() throws Exception{
+        File layout = createFile(LAYOUT);
+        File data = createFile(DATA);
+        FixedWidthLayout fwl = FixedWidthLayout.load(layout);
+
+        List<Object> expected = readNames(new FixedWidthDataSource(data, fwl));
+
+        //Small windows, so that records fall across window boundaries
+        for(int windowSize : new int[]{8, 13, 27}) {
+            assertEquals(expected, readNames(new FixedWidthDataSource(data, fwl, windowSize)));
+        }
+
+        //Streams, e.g. from compressed files, are read in the same way
+        assertEquals(expected, readNames(new FixedWidthDataSource(new ByteArrayInputStream(DATA.getBytes(StandardCharsets.UTF_8)), fwl)));
+
+        layout.delete();
+        data.delete();
+    }
+
+    @Test
+    public void testRecordLength() throws Exception{
+        File data = createFile("0001Bob 0002Eve 0003");
+        FixedWidthLayout layout = FixedWidthLayout.fixedWidth(Arrays.asList("id", "name"), new int[]{0, 4}, new int[]{4, 4}, 8, true);
+
+        DataSource ds = new FixedWidthDataSource(data, layout);
+        assertEquals("Bob", ds.next().get("name"));
+        assertEquals("Eve", ds.next().get("name"));
+        assertEquals("0003", ds.next().get("id"));
+        assertFalse(ds.hasNext());
+
+        ds.close();
+        data.delete();
+    }
+
+    @Test
+    public void testDelimited() throws Exception{
+        File layout = createFile("delimiter: '|'\nfields:\n- name: level\n- name: message\n");
+        File data = createFile("INFO | Started|extra\nWARN|\"Quoted\"\n");
+
+        DataSource ds = new FixedWidthDataSource(data, FixedWidthLayout.load(layout));
+
+        Map<String, Object> row = ds.next();
+        assertEquals("INFO", row.get("level"));
+        assertEquals("Started", row.get("message"));
+        assertEquals("extra", row.get("3"));
+
+        row = ds.next();
+        assertEquals("WARN", row.get("level"));
+        assertEquals("\"Quoted\"", row.get("message"));
+
+        assertFalse(ds.hasNext());
+        ds.close();
+
+        layout.delete();
+        data.delete();
+    }
+
+    private static List<Object> readNames(DataSource ds) throws Exception{
+        List<Object> names = new ArrayList<>();
+        while(ds.hasNext()){
+            Map<String, Object> row = ds.next();
+            names.add(row.get("id") + ":" + row.get("name") + ":" + row.get("city"));
+        }
+
+        ds.close();
+        return names;
+    }
+
+    private static File createFile(String content) throws Exception{
+        File f = File.createTempFile("fixed", ".txt");
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        return f;
+    }
+}
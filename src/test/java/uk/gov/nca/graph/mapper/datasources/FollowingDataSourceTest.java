@@ -0,0 +1,164 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class FollowingDataSourceTest {
+    private static final long POLL_INTERVAL = 10;
+    private static final long IDLE_TIMEOUT = 200;
+
+    @Test
+    public void testFollow() throws Exception{
+        File f = File.createTempFile("following", ".jsonl");
+        append(f, "{\"id\": 1}\n{\"id\": 2}\n\n{\"id\"");
+
+        FollowingDataSource ds = new FollowingDataSource(f, JsonLinesDataSource.lineParser(), POLL_INTERVAL, IDLE_TIMEOUT);
+        assertEquals(1, ds.next().get("id"));
+        assertEquals(2, ds.next().get("id"));
+
+        //The incomplete line isn't returned until it has been finished
+        append(f, ": 3}\r\n{\"id\": 4}\n");
+        assertEquals(3, ds.next().get("id"));
+        assertEquals(4, ds.next().get("id"));
+        assertTrue(ds.getCheckpoint().startsWith(f.length() + ":"));
+
+        long start = System.currentTimeMillis();
+        assertFalse(ds.hasNext());
+        assertTrue(System.currentTimeMillis() - start >= IDLE_TIMEOUT);
+
+        ds.close();
+        f.delete();
+    }
+
+    @Test
+    public void testRotate() throws Exception{
+        File f = File.createTempFile("following", ".jsonl");
+        File rotated = new File(f.getPath() + ".1");
+        append(f, "{\"id\": 1}\n");
+
+        FollowingDataSource ds = new FollowingDataSource(f, JsonLinesDataSource.lineParser(), POLL_INTERVAL, IDLE_TIMEOUT);
+        assertEquals(1, ds.next().get("id"));
+
+        //Data written to the old file after it is rotated is still read, before the new file
+        assertTrue(f.renameTo(rotated));
+        append(rotated, "{\"id\": 2}");
+        append(f, "{\"id\": 3}\n");
+
+        assertEquals(2, ds.next().get("id"));
+        assertEquals(3, ds.next().get("id"));
+        assertFalse(ds.hasNext());
+
+        ds.close();
+        f.delete();
+        rotated.delete();
+    }
+
+    @Test
+    public void testTruncate() throws Exception{
+        File f = File.createTempFile("following", ".csv");
+        append(f, "id,name\n1,Alice\n2,Bob\n");
+
+        AtomicInteger idle = new AtomicInteger();
+        FollowingDataSource ds = new FollowingDataSource(f, CsvDataSource.lineParser(',', true), POLL_INTERVAL, IDLE_TIMEOUT);
+        ds.setIdleListener(idle::incrementAndGet);
+
+        assertRecord(ds.next(), "1", "Alice");
+        assertRecord(ds.next(), "2", "Bob");
+
+        //The header is read again when the file is truncated
+        Files.write(f.toPath(), "name,id\nCarol,3\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+
+        assertRecord(ds.next(), "3", "Carol");
+        assertFalse(ds.hasNext());
+        assertEquals(1, idle.get());
+
+        ds.close();
+        f.delete();
+    }
+
+    @Test
+    public void testResume() throws Exception{
+        File f = File.createTempFile("following", ".csv");
+        append(f, "id,name\n1,Alice\n2,Bob\n");
+
+        FollowingDataSource ds = new FollowingDataSource(f, CsvDataSource.lineParser(',', true), POLL_INTERVAL, IDLE_TIMEOUT);
+        assertRecord(ds.next(), "1", "Alice");
+        String checkpoint = ds.getCheckpoint();
+        ds.close();
+
+        //The header is still read when resuming part way through the file
+        append(f, "3,Carol\n");
+        FollowingDataSource resumed = new FollowingDataSource(f, CsvDataSource.lineParser(',', true), POLL_INTERVAL, IDLE_TIMEOUT);
+        resumed.seek(checkpoint);
+
+        assertRecord(resumed.next(), "2", "Bob");
+        assertRecord(resumed.next(), "3", "Carol");
+        assertFalse(resumed.hasNext());
+
+        resumed.close();
+        f.delete();
+    }
+
+    @Test
+    public void testStop() throws Exception{
+        File f = File.createTempFile("following", ".csv");
+        f.delete();
+
+        //The file doesn't exist yet, so the data source waits for it to be created
+        FollowingDataSource ds = new FollowingDataSource(f, CsvDataSource.lineParser(',', false), POLL_INTERVAL, 0);
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                append(f, "1,Alice\n");
+                Thread.sleep(50);
+                ds.stop();
+            }catch (Exception e){
+                //Do nothing - the test will fail
+            }
+        });
+        writer.start();
+
+        Map<String, Object> record = ds.next();
+        assertEquals("1", record.get("1"));
+        assertEquals("Alice", record.get("2"));
+        assertFalse(ds.hasNext());
+
+        writer.join();
+        ds.close();
+        f.delete();
+    }
+
+    private static void assertRecord(Map<String, Object> record, String id, String name){
+        assertEquals(id, record.get("id"));
+        assertEquals(name, record.get("name"));
+    }
+
+    private static void append(File f, String data) throws Exception{
+        Files.write(f.toPath(), data.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import org.junit.Test;
+
+public class MappedCsvDataSourceTest {
+
+    @Test
+    public void testCsv() throws Exception{
+        File f = new File(getClass().getResource("test.csv").toURI());
+        DataSource ds = new MappedCsvDataSource(',', f.getPath(), true);
+
+        assertData(ds);
+
+        ds.close();
+    }
+
+    @Test
+    public void testTsv() throws Exception{
+        File f = new File(getClass().getResource("test.tsv").toURI());
+        DataSource ds = new MappedCsvDataSource('\t', f.getPath(), true);
+
+        assertData(ds);
+
+        ds.close();
+    }
+
+    @Test
+    public void testQuoting() throws Exception{
+        File f = File.createTempFile("mapped", ".csv");
+        String csv = "﻿name,description,city\r\n"
+            + "\"Smith, Bob\",\"He said \"\"hello\"\"\r\nand left\",London\r\n"
+            + "\r\n"
+            + "Zoë,,\"\"\r\n"
+            + "\"Jones\"x,a very long description that is longer than the window,Paris";
+        Files.write(f.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+
+        //Use a small window, so that records span windows
+        DataSource ds = new MappedCsvDataSource(',', f, true, 16);
+
+        assertTrue(ds.hasNext());
+        Map<String, Object> row1 = ds.next();
+        assertEquals("Smith, Bob", row1.get("name"));
+        assertEquals("He said \"hello\"\r\nand left", row1.get("2"));
+        assertEquals("London", row1.get("city"));
+        assertNull(row1.get("4"));
+        assertEquals(6, row1.size());
+
+        assertTrue(ds.hasNext());
+        Map<String, Object> row2 = ds.next();
+        assertEquals("Zoë", row2.get("name"));
+        assertEquals("", row2.get("description"));
+        assertEquals("", row2.get("city"));
+
+        MappedCsvRecord record = (MappedCsvRecord) row2;
+        assertEquals(3, record.getFieldCount());
+        assertEquals(4, record.getFieldBytes(0).remaining());
+        assertEquals(2, record.getFieldBytes(2).remaining());
+
+        assertTrue(ds.hasNext());
+        Map<String, Object> row3 = ds.next();
+        assertEquals("Jonesx", row3.get("name"));
+        assertEquals("a very long description that is longer than the window", row3.get("description"));
+        assertEquals("Paris", row3.get("city"));
+
+        row3.put("country", "France");
+        assertEquals("France", row3.get("country"));
+        assertEquals("Paris", row3.get("3"));
+
+        assertFalse(ds.hasNext());
+
+        ds.close();
+        f.delete();
+    }
+
+    @Test
+    public void testQuotedFieldAtEndOfFile() throws Exception{
+        File f = File.createTempFile("mapped", ".csv");
+
+        //The closing quote is the last byte of the file, with no line ending after it
+        for(String last : new String[]{"\"x\"", "\"a \"\"b\"\"\""}) {
+            Files.write(f.toPath(), ("id,name\n1," + last).getBytes(StandardCharsets.UTF_8));
+
+            for(int windowSize : new int[]{8, 16, 1024}) {
+                DataSource ds = new MappedCsvDataSource(',', f, true, windowSize);
+
+                assertTrue(ds.hasNext());
+                Map<String, Object> row = ds.next();
+                assertEquals("1", row.get("id"));
+                assertEquals(last.equals("\"x\"") ? "x" : "a \"b\"", row.get("name"));
+                assertEquals(2, ((MappedCsvRecord) row).getFieldCount());
+
+                assertFalse(ds.hasNext());
+                ds.close();
+            }
+        }
+
+        f.delete();
+    }
+
+    @Test
+    public void testScanQuotes() throws Exception{
+        File f = File.createTempFile("mapped", ".csv");
+        String wellFormed = "\"a, \"\"b\"\"\",c\n\"d\ne\",\"\"\n";
+        String strayQuote = "1,12\" screen\n";
+        Files.write(f.toPath(), (wellFormed + strayQuote).getBytes(StandardCharsets.UTF_8));
+
+        try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            MappedCsvDataSource.QuoteScan scan = MappedCsvDataSource.scanQuotes(channel, 0, wellFormed.length(), (byte) ',', true);
+            assertEquals(10, scan.count);
+            assertTrue(scan.wellFormedOutside);
+            assertFalse(scan.wellFormedInside);
+
+            //Starting part way through a quoted field, which is only well formed if it is known to be within quotes
+            scan = MappedCsvDataSource.scanQuotes(channel, 16, wellFormed.length(), (byte) ',', false);
+            assertEquals(3, scan.count);
+            assertFalse(scan.wellFormedOutside);
+            assertTrue(scan.wellFormedInside);
+
+            scan = MappedCsvDataSource.scanQuotes(channel, 0, f.length(), (byte) ',', true);
+            assertEquals(11, scan.count);
+            assertFalse(scan.wellFormedOutside);
+        }
+
+        f.delete();
+    }
+
+    private void assertData(DataSource ds){
+        assertTrue(ds.hasNext());
+        Map<String, Object> row1 = ds.next();
+        assertEquals(8, row1.size());
+
+        assertEquals("Bob", row1.get("1"));
+        assertEquals("Smith", row1.get("2"));
+        assertEquals("24", row1.get("3"));
+        assertEquals("male", row1.get("4"));
+
+        assertEquals("Bob", row1.get("firstname"));
+        assertEquals("Smith", row1.get("surname"));
+        assertEquals("24", row1.get("age"));
+        assertEquals("male", row1.get("gender"));
+
+        assertTrue(ds.hasNext());
+        Map<String, Object> row2 = ds.next();
+
+        assertEquals(8, row2.size());
+
+        assertEquals("Alice", row2.get("1"));
+        assertEquals("Jones", row2.get("2"));
+        assertEquals("26", row2.get("3"));
+        assertEquals("female", row2.get("4"));
+
+        assertEquals("Alice", row2.get("firstname"));
+        assertEquals("Jones", row2.get("surname"));
+        assertEquals("26", row2.get("age"));
+        assertEquals("female", row2.get("gender"));
+
+        assertFalse(ds.hasNext());
+    }
+}
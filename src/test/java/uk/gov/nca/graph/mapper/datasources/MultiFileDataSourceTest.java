@@ -0,0 +1,138 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class MultiFileDataSourceTest {
+
+    @Test
+    public void testListFiles() throws Exception{
+        File dir = Files.createTempDirectory("multifile").toFile();
+        File a = createFile(dir, "a.csv", 1, 0);
+        File b = createFile(dir, "b.csv", 1, 0);
+        createFile(dir, "c.txt", 1, 0);
+        File sub = new File(dir, "sub");
+        sub.mkdir();
+        File d = createFile(sub, "d.csv", 1, 0);
+        createFile(dir, ".hidden.csv", 1, 0);
+
+        assertTrue(MultiFileDataSource.isMultiFile(dir.getPath()));
+        assertTrue(MultiFileDataSource.isMultiFile(dir.getPath() + "/*.csv"));
+        assertFalse(MultiFileDataSource.isMultiFile(a.getPath()));
+
+        assertEquals(Arrays.asList(a, b, new File(dir, "c.txt")), MultiFileDataSource.listFiles(dir.getPath()));
+        assertEquals(Arrays.asList(a, b), MultiFileDataSource.listFiles(dir.getPath() + "/*.csv"));
+        assertEquals(Arrays.asList(a, b, d), MultiFileDataSource.listFiles(dir.getPath() + "/**.csv"));
+        assertEquals(Collections.singletonList(d), MultiFileDataSource.listFiles(dir.getPath() + "/s*/*.csv"));
+        assertEquals(Collections.singletonList(a), MultiFileDataSource.listFiles(a.getPath()));
+
+        //Files that exist are read as they are, even if their names look like globs
+        File e = createFile(dir, "e[1].csv", 1, 0);
+        assertFalse(MultiFileDataSource.isMultiFile(e.getPath()));
+        assertEquals(Collections.singletonList(e), MultiFileDataSource.listFiles(e.getPath()));
+        assertEquals(Arrays.asList(a, b, e), MultiFileDataSource.listFiles(dir.getPath() + "/*.csv"));
+
+        try{
+            MultiFileDataSource.listFiles(dir.getPath() + "/*.json");
+            throw new AssertionError("Expected exception not thrown");
+        }catch (FileNotFoundException fnfe){
+            //Do nothing, expected
+        }
+
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testRead() throws Exception{
+        File dir = Files.createTempDirectory("multifile").toFile();
+        for(int i = 0; i < 5; i++)
+            createFile(dir, "file" + i + ".csv", 1000, i * 1000);
+
+        //A file that can't be read, which shouldn't prevent the others being read
+        new File(dir, "missing.csv").mkdir();
+        List<File> files = new ArrayList<>(MultiFileDataSource.listFiles(dir.getPath() + "/*.csv"));
+        files.add(new File(dir, "missing.csv"));
+
+        DataSource ds = new MultiFileDataSource(files, f -> new CsvDataSource(',', f.getPath(), true), 2);
+
+        List<Integer> ids = new ArrayList<>();
+        Map<String, Integer> last = new HashMap<>();
+        while(ds.hasNext()){
+            Map<String, Object> row = ds.next();
+            int id = Integer.parseInt((String) row.get("id"));
+            ids.add(id);
+
+            //Records from the same file should be in order
+            String file = (String) row.get("file");
+            Integer previous = last.put(file, id);
+            assertTrue(previous == null || previous < id);
+        }
+
+        ds.close();
+
+        assertEquals(5000, ids.size());
+        Collections.sort(ids);
+        for(int i = 0; i < 5000; i++)
+            assertEquals(i, ids.get(i).intValue());
+
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testClose() throws Exception{
+        File dir = Files.createTempDirectory("multifile").toFile();
+        for(int i = 0; i < 4; i++)
+            createFile(dir, "file" + i + ".csv", 10000, 0);
+
+        DataSource ds = new MultiFileDataSource(MultiFileDataSource.listFiles(dir.getPath()), f -> new CsvDataSource(',', f.getPath(), true), 2);
+
+        //Close before all the records have been read, which shouldn't block
+        assertTrue(ds.hasNext());
+        ds.next();
+        ds.close();
+
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private static File createFile(File dir, String name, int count, int firstId) throws IOException {
+        StringBuilder sb = new StringBuilder("id,file\n");
+        for(int i = 0; i < count; i++)
+            sb.append(firstId + i).append(',').append(name).append('\n');
+
+        File f = new File(dir, name);
+        Files.write(f.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        return f;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class ParallelCsvDataSourceTest {
+
+    @Test
+    public void testCsv() throws Exception{
+        File f = new File(getClass().getResource("test.csv").toURI());
+        DataSource ds = new ParallelCsvDataSource(',', f.getPath(), true, 2, true);
+
+        assertTrue(ds.hasNext());
+        Map<String, Object> row1 = ds.next();
+        assertEquals(8, row1.size());
+        assertEquals("Bob", row1.get("firstname"));
+        assertEquals("Smith", row1.get("2"));
+
+        assertTrue(ds.hasNext());
+        Map<String, Object> row2 = ds.next();
+        assertEquals("Alice", row2.get("firstname"));
+        assertEquals("female", row2.get("4"));
+
+        assertFalse(ds.hasNext());
+
+        ds.close();
+    }
+
+    @Test
+    public void testOrdered() throws Exception{
+        File f = createFile(false);
+        List<String> expected = readSequentially(f);
+
+        //Small chunks, so that quoted line endings and long records fall across chunk boundaries
+        for(int chunkSize : new int[]{8, 13, 64, 1024}) {
+            DataSource ds = new ParallelCsvDataSource(',', f, true, 4, true, chunkSize);
+            assertEquals(expected, read(ds));
+            ds.close();
+        }
+
+        f.delete();
+    }
+
+    @Test
+    public void testOrderedUnbalancedQuotes() throws Exception{
+        File f = createFile(true);
+        List<String> expected = readSequentially(f);
+
+        for(int chunkSize : new int[]{8, 13, 64}) {
+            DataSource ds = new ParallelCsvDataSource(',', f, true, 4, true, chunkSize);
+            assertEquals(expected, read(ds));
+            ds.close();
+        }
+
+        f.delete();
+    }
+
+    @Test
+    public void testUnordered() throws Exception{
+        File f = createFile(false);
+        List<String> expected = readSequentially(f);
+        Collections.sort(expected);
+
+        for(int chunkSize : new int[]{8, 13, 64, 1024}) {
+            DataSource ds = new ParallelCsvDataSource(',', f, true, 4, false, chunkSize);
+
+            List<String> actual = read(ds);
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+
+            ds.close();
+        }
+
+        f.delete();
+    }
+
+    @Test
+    public void testUnorderedUnbalancedQuotes() throws Exception{
+        //Quotes in the middle of fields throw the quote counts out, so chunks start within quoted
+        //line endings and have to be re-parsed once the previous chunk has been validated
+        File f = createFile(true);
+        List<String> expected = readSequentially(f);
+        Collections.sort(expected);
+
+        for(int chunkSize : new int[]{8, 13, 64}) {
+            for(int i = 0; i < 10; i++) {
+                DataSource ds = new ParallelCsvDataSource(',', f, true, 4, false, chunkSize);
+
+                List<String> actual = read(ds);
+                Collections.sort(actual);
+                assertEquals(expected, actual);
+
+                ds.close();
+            }
+        }
+
+        f.delete();
+    }
+
+    private static File createFile(boolean unbalanced) throws Exception{
+        StringBuilder sb = new StringBuilder("id,name,notes\r\n");
+        for(int i = 0; i < 200; i++){
+            sb.append(i).append(',');
+
+            if(i % 7 == 0){
+                sb.append("\"Smith, \"\"Bob\"\"\nJr\"");
+            }else if(unbalanced && i % 11 == 0){
+                sb.append("12\" screen");
+            }else{
+                sb.append("Name").append(i);
+            }
+            sb.append(',');
+
+            if(i % 5 == 0)
+                sb.append("\"a long note\r\nthat spans\r\nseveral lines, and is longer than a chunk\"");
+
+            sb.append(i % 3 == 0 ? "\r\n" : "\n");
+            if(i % 13 == 0)
+                sb.append("\n");
+        }
+
+        File f = File.createTempFile("parallel", ".csv");
+        Files.write(f.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        return f;
+    }
+
+    private static List<String> readSequentially(File f) throws Exception{
+        DataSource ds = new MappedCsvDataSource(',', f.getPath(), true);
+        List<String> records = read(ds);
+        ds.close();
+
+        assertEquals(200, records.size());
+        return records;
+    }
+
+    private static List<String> read(DataSource ds){
+        List<String> records = new ArrayList<>();
+        while(ds.hasNext())
+            records.add(new HashMap<>(ds.next()).toString());
+
+        return records;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class ParallelGzipInputStreamTest {
+
+    @Test
+    public void testRead() throws Exception{
+        byte[] data = createData(1_000_000);
+        File f = File.createTempFile("parallel", ".gz");
+        writeBgzf(f, data, false);
+
+        assertTrue(ParallelGzipInputStream.isBlocked(f));
+
+        try(InputStream in = new ParallelGzipInputStream(f, 3)){
+            assertArrayEquals(data, IOUtils.toByteArray(in));
+        }
+
+        //BGZF files are valid gzip files
+        try(InputStream in = new GZIPInputStream(Files.newInputStream(f.toPath()))){
+            assertArrayEquals(data, IOUtils.toByteArray(in));
+        }
+
+        f.delete();
+    }
+
+    @Test
+    public void testNotBlocked() throws Exception{
+        File f = File.createTempFile("parallel", ".gz");
+        try(OutputStream out = new GZIPOutputStream(new FileOutputStream(f))){
+            out.write(createData(1000));
+        }
+
+        assertFalse(ParallelGzipInputStream.isBlocked(f));
+
+        f.delete();
+    }
+
+    @Test
+    public void testCorrupt() throws Exception{
+        File f = File.createTempFile("parallel", ".gz");
+        writeBgzf(f, createData(200_000), true);
+
+        try(InputStream in = new ParallelGzipInputStream(f, 2)){
+            IOUtils.toByteArray(in);
+            fail("Expected exception not thrown");
+        }catch (ZipException ze){
+            //Do nothing, expected
+        }
+
+        f.delete();
+    }
+
+    private static byte[] createData(int length){
+        Random random = new Random(1234);
+        StringBuilder sb = new StringBuilder();
+        while(sb.length() < length)
+            sb.append(random.nextInt(100000)).append(",Name").append(random.nextInt(100)).append('\n');
+
+        return sb.substring(0, length).getBytes();
+    }
+
+    /**
+     * Write data as BGZF blocks of up to 60KB, followed by the empty end of file block.
+     * If corrupt is true, the CRC of the last data block is changed.
+     */
+    static void writeBgzf(File f, byte[] data, boolean corrupt) throws IOException {
+        try(OutputStream out = new FileOutputStream(f)){
+            int blockSize = 60 * 1024;
+            for(int pos = 0; pos < data.length; pos += blockSize){
+                boolean last = pos + blockSize >= data.length;
+                writeBlock(out, data, pos, Math.min(blockSize, data.length - pos), corrupt && last);
+            }
+
+            writeBlock(out, data, 0, 0, false);
+        }
+    }
+
+    private static void writeBlock(OutputStream out, byte[] data, int offset, int length, boolean corrupt) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while(!deflater.finished())
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+
+        ByteBuffer block = ByteBuffer.allocate(18 + compressed.size() + 8).order(ByteOrder.LITTLE_ENDIAN);
+        block.put(new byte[]{0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF});
+        block.putShort((short) 6);
+        block.put(new byte[]{'B', 'C'});
+        block.putShort((short) 2);
+        block.putShort((short) (block.capacity() - 1));
+        block.put(compressed.toByteArray());
+        block.putInt((int) crc.getValue() + (corrupt ? 1 : 0));
+        block.putInt(length);
+
+        out.write(block.array());
+    }
+}
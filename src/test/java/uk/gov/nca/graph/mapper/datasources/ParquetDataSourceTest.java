@@ -0,0 +1,260 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.example.GroupWriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.Test;
+
+public class ParquetDataSourceTest {
+    private static final MessageType SCHEMA = MessageTypeParser.parseMessageType(
+        "message person {\n"
+        + "  required int64 id;\n"
+        + "  optional binary name (UTF8);\n"
+        + "  optional int32 dob (DATE);\n"
+        + "  optional int64 created (TIMESTAMP_MILLIS);\n"
+        + "  optional int32 amount (DECIMAL(9,2));\n"
+        + "  optional double score;\n"
+        + "  optional group tags (LIST) {\n"
+        + "    repeated group list {\n"
+        + "      optional binary element (UTF8);\n"
+        + "    }\n"
+        + "  }\n"
+        + "  optional group address {\n"
+        + "    optional binary city (UTF8);\n"
+        + "  }\n"
+        + "}");
+
+    private static final int ROWS = 5000;
+
+    @Test
+    public void testRead() throws Exception{
+        File f = createFile();
+
+        DataSource ds = new ParquetDataSource(f.getPath());
+
+        assertTrue(ds.hasNext());
+        Map<String, Object> row = ds.next();
+        assertEquals(0L, row.get("id"));
+        assertEquals("Name 0", row.get("name"));
+        assertEquals(LocalDate.of(1970, 1, 1), row.get("dob"));
+        assertEquals(ZonedDateTime.of(2018, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC), row.get("created"));
+        assertEquals(new BigDecimal("0.00"), row.get("amount"));
+        assertEquals(0.0, row.get("score"));
+        assertEquals(Arrays.asList("a", "b"), row.get("tags"));
+        assertEquals(Collections.singletonMap("city", "London"), row.get("address"));
+
+        //Null values should be omitted
+        row = ds.next();
+        assertEquals(1L, row.get("id"));
+        assertFalse(row.containsKey("name"));
+        assertEquals(new BigDecimal("1.01"), row.get("amount"));
+
+        int count = 2;
+        while(ds.hasNext()){
+            ds.next();
+            count++;
+        }
+        assertEquals(ROWS, count);
+
+        ds.close();
+        f.delete();
+    }
+
+    @Test
+    public void testProjection() throws Exception{
+        File f = createFile();
+
+        DataSource ds = new ParquetDataSource(f, new HashSet<>(Arrays.asList("name", "address.city", "missing")), 1);
+
+        Map<String, Object> row = ds.next();
+        assertEquals(2, row.size());
+        assertEquals("Name 0", row.get("name"));
+        assertEquals(Collections.singletonMap("city", "London"), row.get("address"));
+
+        ds.close();
+        f.delete();
+    }
+
+    @Test
+    public void testParallel() throws Exception{
+        File f = createFile();
+
+        List<Object> expected = readIds(new ParquetDataSource(f, null, 1));
+        List<Object> actual = readIds(new ParquetDataSource(f, null, 3));
+
+        assertEquals(ROWS, actual.size());
+        assertEquals(expected, actual);
+
+        f.delete();
+    }
+
+    @Test
+    public void testCompressed() throws Exception{
+        //Compressed row groups are decompressed by Hadoop's codecs, which shouldn't need any of its excluded dependencies
+        for(CompressionCodecName codec : new CompressionCodecName[]{CompressionCodecName.GZIP, CompressionCodecName.SNAPPY}) {
+            File f = createFile(codec);
+
+            List<Object> ids = readIds(new ParquetDataSource(f, null, 2));
+            assertEquals(ROWS, ids.size());
+            assertEquals(0L, ids.get(0));
+
+            f.delete();
+        }
+    }
+
+    private static List<Object> readIds(DataSource ds) throws Exception{
+        List<Object> ids = new ArrayList<>();
+        while(ds.hasNext())
+            ids.add(ds.next().get("id"));
+
+        ds.close();
+        return ids;
+    }
+
+    private static File createFile() throws IOException {
+        return createFile(CompressionCodecName.UNCOMPRESSED);
+    }
+
+    private static File createFile(CompressionCodecName codec) throws IOException {
+        File f = File.createTempFile("parquet", ".parquet");
+
+        SimpleGroupFactory factory = new SimpleGroupFactory(SCHEMA);
+
+        //Small row groups, so that the file has several
+        try(ParquetWriter<Group> writer = new GroupWriterBuilder(f).withRowGroupSize(16 * 1024).withCompressionCodec(codec).build()){
+            for(int i = 0; i < ROWS; i++){
+                Group g = factory.newGroup()
+                    .append("id", (long) i)
+                    .append("dob", i)
+                    .append("created", 1514764800000L + i)
+                    .append("amount", i * 101)
+                    .append("score", i / 10.0);
+
+                if(i % 2 == 0)
+                    g.append("name", "Name " + i);
+
+                Group list = g.addGroup("tags");
+                list.addGroup("list").append("element", "a");
+                list.addGroup("list").append("element", "b");
+
+                g.addGroup("address").append("city", "London");
+
+                writer.write(g);
+            }
+        }
+
+        return f;
+    }
+
+    private static class GroupWriterBuilder extends ParquetWriter.Builder<Group, GroupWriterBuilder> {
+        GroupWriterBuilder(File file){
+            super(new LocalOutputFile(file));
+        }
+
+        @Override
+        protected GroupWriterBuilder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<Group> getWriteSupport(Configuration conf) {
+            GroupWriteSupport.setSchema(SCHEMA, conf);
+            return new GroupWriteSupport();
+        }
+    }
+
+    private static class LocalOutputFile implements OutputFile {
+        private final File file;
+
+        LocalOutputFile(File file){
+            this.file = file;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) throws IOException {
+            return createOrOverwrite(blockSizeHint);
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+            OutputStream out = Files.newOutputStream(file.toPath());
+            return new PositionOutputStream() {
+                private long pos = 0;
+
+                @Override
+                public long getPos() {
+                    return pos;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    pos++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    pos += len;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return false;
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return 0;
+        }
+    }
+}
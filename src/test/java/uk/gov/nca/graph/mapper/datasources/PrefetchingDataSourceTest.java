@@ -0,0 +1,116 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.datasources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class PrefetchingDataSourceTest {
+
+    @Test
+    public void testRead() throws Exception{
+        for(int batchSize : new int[]{1, 7, 1000}) {
+            DataSource ds = new PrefetchingDataSource(new CountingDataSource(500, -1), 2, batchSize);
+
+            for (int i = 0; i < 500; i++) {
+                assertTrue(ds.hasNext());
+                assertEquals(i, ds.next().get("id"));
+            }
+            assertFalse(ds.hasNext());
+
+            ds.close();
+        }
+    }
+
+    @Test
+    public void testError() throws Exception{
+        DataSource ds = new PrefetchingDataSource(new CountingDataSource(500, 100), 2, 16);
+
+        //Records before the error should be returned, then the error thrown
+        for(int i = 0; i < 100; i++)
+            assertEquals(i, ds.next().get("id"));
+
+        try{
+            ds.hasNext();
+            fail("Expected exception not thrown");
+        }catch (IllegalStateException ise){
+            assertEquals("Error at 100", ise.getMessage());
+        }
+
+        assertFalse(ds.hasNext());
+        ds.close();
+    }
+
+    @Test
+    public void testClose() throws Exception{
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean closed = new AtomicBoolean(false);
+
+        //An unbounded data source, which will fill the queue and block the reader
+        DataSource underlying = new CountingDataSource(Integer.MAX_VALUE, -1){
+            @Override
+            public Map<String, Object> next() {
+                started.countDown();
+                return super.next();
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        DataSource ds = new PrefetchingDataSource(underlying, 2, 4);
+        started.await();
+        assertEquals(0, ds.next().get("id"));
+
+        ds.close();
+        assertTrue(closed.get());
+    }
+
+    private static class CountingDataSource implements DataSource {
+        private final int size;
+        private final int errorAt;
+        private int position = 0;
+
+        CountingDataSource(int size, int errorAt){
+            this.size = size;
+            this.errorAt = errorAt;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < size;
+        }
+
+        @Override
+        public Map<String, Object> next() {
+            if(position == errorAt)
+                throw new IllegalStateException("Error at " + position);
+
+            return Collections.singletonMap("id", position++);
+        }
+    }
+}
@@ -23,8 +23,15 @@ import static org.junit.Assert.assertTrue;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import org.junit.Test;
+import uk.gov.nca.graph.mapper.mapping.DataType;
 
 public class SqlDataSourceTest {
 
@@ -72,7 +79,135 @@ public class SqlDataSourceTest {
         teardown();
     }
 
-    private void setup() throws SQLException{
+    @Test
+    public void testFilters() throws Exception{
+        setup();
+
+        Map<String, Object> filters = new HashMap<>();
+        filters.put("GENDER", Arrays.asList("female", "other"));
+        filters.put("AGE", 26);
+        filters.put("missing", "value");
+        filters.put("_exists", "NAME");
+
+        DataSource ds = new SqlDataSource("jdbc:h2:mem:test", "my_table", "user", null, null, filters);
+
+        assertTrue(ds.hasNext());
+        assertEquals("Alice Jones", ds.next().get("NAME"));
+        assertFalse(ds.hasNext());
+
+        ds.close();
+
+        teardown();
+    }
+
+    @Test
+    public void testFieldTypes() throws Exception{
+        conn = DriverManager.getConnection("jdbc:h2:mem:test");
+        conn.prepareStatement("CREATE TABLE typed_table (id bigint, amount decimal(10, 2), dob date, created timestamp, "
+            + "flag boolean, name varchar(128))").execute();
+        conn.prepareStatement("INSERT INTO typed_table VALUES (1, 12.50, '1990-02-03', '2018-01-02 03:04:05', true, 'Bob')").execute();
+        conn.prepareStatement("INSERT INTO typed_table VALUES (2, null, null, null, null, null)").execute();
+
+        Map<String, DataType> fieldTypes = new HashMap<>();
+        fieldTypes.put("ID", DataType.INTEGER);
+        fieldTypes.put("AMOUNT", DataType.DOUBLE);
+        fieldTypes.put("3", DataType.DATE);
+        fieldTypes.put("CREATED", DataType.DATETIME);
+        fieldTypes.put("FLAG", DataType.BOOLEAN);
+        fieldTypes.put("NAME", DataType.DATE);
+
+        DataSource ds = new SqlDataSource("jdbc:h2:mem:test", "typed_table", "user", null, null, Collections.emptyMap(), fieldTypes);
+
+        Map<String, Object> row = ds.next();
+        assertEquals(1L, row.get("ID"));
+        assertEquals(12.5, row.get("AMOUNT"));
+        assertEquals(LocalDate.of(1990, 2, 3), row.get("DOB"));
+        assertEquals(LocalDate.of(1990, 2, 3), row.get("3"));
+        assertEquals(ZonedDateTime.of(2018, 1, 2, 3, 4, 5, 0, ZoneOffset.UTC), row.get("CREATED"));
+        assertEquals(true, row.get("FLAG"));
+
+        //Columns of a type that can't be read as the mapped type are returned as they are
+        assertEquals("Bob", row.get("NAME"));
+
+        row = ds.next();
+        assertEquals(2L, row.get("ID"));
+        assertNull(row.get("AMOUNT"));
+        assertNull(row.get("DOB"));
+        assertNull(row.get("CREATED"));
+        assertNull(row.get("FLAG"));
+
+        assertFalse(ds.hasNext());
+        ds.close();
+
+        conn.prepareStatement("DROP TABLE typed_table").execute();
+        conn.close();
+    }
+
+    @Test
+    public void testKey() throws Exception{
+        setup();
+        conn.prepareStatement("INSERT INTO my_table (id, name, age, gender) VALUES (0, 'Carol Brown', 30, 'female')").execute();
+
+        //Rows are read in order of the key
+        SqlDataSource ds = new SqlDataSource("jdbc:h2:mem:test", "my_table", "user", null, null,
+            Collections.emptyMap(), Collections.emptyMap(), "ID", null);
+        assertNull(ds.getCheckpoint());
+
+        assertEquals("Carol Brown", ds.next().get("NAME"));
+        assertEquals("Bob Smith", ds.next().get("NAME"));
+        assertEquals("1", ds.getCheckpoint());
+        ds.close();
+
+        ds = new SqlDataSource("jdbc:h2:mem:test", "my_table", "user", null, null,
+            Collections.emptyMap(), Collections.emptyMap(), "ID", "1");
+        assertEquals("1", ds.getCheckpoint());
+
+        assertEquals("Alice Jones", ds.next().get("NAME"));
+        assertFalse(ds.hasNext());
+        assertEquals("2", ds.getCheckpoint());
+        ds.close();
+
+        //Queries are wrapped, so that they can be resumed
+        ds = new SqlDataSource("jdbc:h2:mem:test", null, "user", null, "SELECT * FROM my_table WHERE gender = 'female'",
+            Collections.emptyMap(), Collections.emptyMap(), "ID", "0");
+
+        assertEquals("Alice Jones", ds.next().get("NAME"));
+        assertFalse(ds.hasNext());
+        ds.close();
+
+        teardown();
+    }
+
+    @Test
+    public void testWatermark() throws Exception{
+        conn = DriverManager.getConnection("jdbc:h2:mem:test");
+        conn.prepareStatement("CREATE TABLE updated_table (id int, updated timestamp)").execute();
+        conn.prepareStatement("INSERT INTO updated_table VALUES (1, '2018-01-01 09:00:00'), (2, '2018-01-02 09:00:00'), "
+            + "(3, '2018-01-02 09:00:00'), (4, null)").execute();
+
+        SqlDataSource ds = new SqlDataSource("jdbc:h2:mem:test", "updated_table", "user", null, null,
+            Collections.emptyMap(), Collections.emptyMap(), "UPDATED", null, true);
+        while(ds.hasNext())
+            ds.next();
+
+        //Rows without a watermark don't change it
+        String watermark = ds.getCheckpoint();
+        assertEquals("2018-01-02 09:00:00", watermark.substring(0, 19));
+        ds.close();
+
+        //Rows with the same watermark are read again, in case more were added with it
+        ds = new SqlDataSource("jdbc:h2:mem:test", "updated_table", "user", null, null,
+            Collections.emptyMap(), Collections.emptyMap(), "UPDATED", watermark, true);
+        assertEquals(2, ds.next().get("ID"));
+        assertEquals(3, ds.next().get("ID"));
+        assertFalse(ds.hasNext());
+        ds.close();
+
+        conn.prepareStatement("DROP TABLE updated_table").execute();
+        conn.close();
+    }
+
+        private void setup() throws SQLException{
         conn = DriverManager.getConnection("jdbc:h2:mem:test");
         conn.prepareStatement("CREATE TABLE my_table (id int primary key, name varchar(128), age int, gender varchar(6))").execute();
 
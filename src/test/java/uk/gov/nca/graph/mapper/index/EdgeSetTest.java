@@ -0,0 +1,65 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import org.junit.Test;
+
+public class EdgeSetTest {
+
+    @Test
+    public void testInMemory() throws Exception{
+        EdgeSet edgeSet = new EdgeSet();
+
+        assertTrue(edgeSet.add(1L, "knows", 2L));
+        assertFalse(edgeSet.add(1L, "knows", 2L));
+        assertTrue(edgeSet.add(2L, "knows", 1L));
+        assertTrue(edgeSet.add(1L, "likes", 2L));
+        assertTrue(edgeSet.add("1", "knows", 2L));
+
+        assertTrue(edgeSet.contains(1L, "knows", 2L));
+        assertFalse(edgeSet.contains(1L, "knows", 3L));
+        assertEquals(4, edgeSet.size());
+
+        assertTrue(edgeSet.remove(1L, "knows", 2L));
+        assertFalse(edgeSet.contains(1L, "knows", 2L));
+        assertEquals(3, edgeSet.size());
+
+        edgeSet.close();
+    }
+
+    @Test
+    public void testFile() throws Exception{
+        File f = File.createTempFile("edges", ".set");
+
+        EdgeSet edgeSet = new EdgeSet(f);
+        for(long i = 0; i < 5000; i++)
+            assertTrue(edgeSet.add(i, "knows", i + 1));
+
+        for(long i = 0; i < 5000; i++)
+            assertTrue(edgeSet.contains(i, "knows", i + 1));
+
+        assertEquals(5000, edgeSet.size());
+        edgeSet.close();
+
+        assertFalse(f.exists());
+    }
+}
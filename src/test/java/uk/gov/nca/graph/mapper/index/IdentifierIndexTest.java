@@ -0,0 +1,155 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import org.junit.Test;
+
+public class IdentifierIndexTest {
+
+    @Test
+    public void testIndex() throws Exception{
+        IdentifierIndex index = new IdentifierIndex();
+
+        index.put("Person", "bob", 1L);
+        index.put("Person", 123, 2L);
+        index.put("Company", "bob", 3L);
+
+        assertEquals(1L, index.get("Person", "bob"));
+        assertEquals(2L, index.get("Person", 123));
+        assertEquals(3L, index.get("Company", "bob"));
+        assertNull(index.get("Person", "123"));
+        assertNull(index.get("Person", "alice"));
+
+        //Different ID types can be mixed
+        index.put("Person", "alice", "4");
+        index.put("Person", "charlie", 5);
+        assertEquals("4", index.get("Person", "alice"));
+        assertEquals(5, index.get("Person", "charlie"));
+
+        //The same vertex with a different representation of its ID replaces the existing entry
+        index.put("Person", "bob", "1");
+        assertEquals("1", index.get("Person", "bob"));
+        assertEquals(5, index.size());
+
+        index.close();
+    }
+
+    @Test
+    public void testRemove() throws Exception{
+        IdentifierIndex index = new IdentifierIndex();
+
+        index.put("Person", "bob", 1L);
+        index.put("Person", "alice", 2L);
+
+        //Entries are only removed if they point to the given vertex
+        index.remove("Person", "bob", 3L);
+        assertEquals(1L, index.get("Person", "bob"));
+
+        index.remove("Person", "bob", 1L);
+        assertNull(index.get("Person", "bob"));
+        assertEquals(2L, index.get("Person", "alice"));
+        assertEquals(1, index.size());
+
+        index.close();
+    }
+
+    @Test
+    public void testStringIds() throws Exception{
+        IdentifierIndex index = new IdentifierIndex();
+
+        index.put("Person", "bob", "17");
+        assertEquals("17", index.get("Person", "bob"));
+
+        assertFalse(index.put("Person", "alice", "abc"));
+        assertFalse(index.put("Person", "alice", "017"));
+
+        index.close();
+    }
+
+    @Test
+    public void testReplace() throws Exception{
+        IdentifierIndex index = new IdentifierIndex();
+
+        index.put("Person", "bob", 1L);
+
+        //A different vertex with the same key replaces the entry, rather than being held as a collision
+        index.put("Person", "bob", 2L, id -> id.equals(1L));
+        assertEquals(2L, index.get("Person", "bob"));
+        assertEquals(1, index.size());
+
+        //Otherwise the other vertex is assumed to have a different key with the same hash
+        index.put("Person", "bob", 3L, id -> false);
+        assertEquals(3L, index.get("Person", "bob"));
+        assertEquals(2, index.size());
+
+        index.close();
+    }
+
+    @Test
+    public void testLongCollisionKey() throws Exception{
+        File f = File.createTempFile("identifiers", ".idx");
+        f.delete();
+
+        StringBuilder sb = new StringBuilder();
+        while(sb.length() < 100_000)
+            sb.append("identifier");
+        String identifier = sb.toString();
+
+        IdentifierIndex index = new IdentifierIndex(f);
+        index.put("Person", identifier, 1L);
+        index.put("Person", identifier, 2L);
+        index.close();
+
+        IdentifierIndex reopened = new IdentifierIndex(f);
+        assertEquals(2L, reopened.get("Person", identifier));
+        reopened.close();
+
+        f.delete();
+        new File(f.getPath() + ".collisions").delete();
+    }
+
+    @Test
+    public void testPersistence() throws Exception{
+        File f = File.createTempFile("identifiers", ".idx");
+        f.delete();
+
+        IdentifierIndex index = new IdentifierIndex(f);
+        for(int i = 0; i < 1000; i++)
+            index.put("Person", "person" + i, (long) i);
+        index.setComplete(true);
+        index.setGraphChecksum(1234L);
+        index.close();
+
+        IdentifierIndex reopened = new IdentifierIndex(f);
+        assertEquals(1000, reopened.size());
+        assertTrue(reopened.isComplete());
+        assertEquals(1234L, reopened.getGraphChecksum());
+        assertTrue(IndexSidecar.isValid(reopened, 1234L));
+        assertFalse(IndexSidecar.isValid(reopened, 5678L));
+        for(int i = 0; i < 1000; i++)
+            assertEquals((long) i, reopened.get("Person", "person" + i));
+        reopened.close();
+
+        f.delete();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class IndexSidecarTest {
+
+    @Test
+    public void testGraphFile() throws Exception{
+        File f = File.createTempFile("graph", ".properties");
+
+        write(f, "gremlin.graph=org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph\n"
+            + "gremlin.tinkergraph.graphLocation=output.graphml\n"
+            + "gremlin.tinkergraph.graphFormat=graphml\n");
+        assertEquals(new File("output.graphml"), IndexSidecar.getGraphFile(f.getPath()));
+        assertEquals(new File("output.graphml.identifiers"), IndexSidecar.getSidecarFile(new File("output.graphml")));
+
+        write(f, "gremlin.graph=org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph\n");
+        assertNull(IndexSidecar.getGraphFile(f.getPath()));
+
+        f.delete();
+    }
+
+    @Test
+    public void testChecksum() throws Exception{
+        File f = File.createTempFile("graph", ".graphml");
+
+        write(f, "<graphml></graphml>");
+        long c1 = IndexSidecar.checksum(f);
+
+        write(f, "<graphml> </graphml>");
+        long c2 = IndexSidecar.checksum(f);
+
+        write(f, "<graphml></graphml>");
+        long c3 = IndexSidecar.checksum(f);
+
+        assertNotEquals(c1, c2);
+        assertEquals(c1, c3);
+
+        f.delete();
+        assertEquals(0L, IndexSidecar.checksum(f));
+    }
+
+    private static void write(File f, String content) throws Exception{
+        try(OutputStream os = new FileOutputStream(f)){
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
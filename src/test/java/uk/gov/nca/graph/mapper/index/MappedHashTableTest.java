@@ -0,0 +1,109 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import org.junit.Test;
+
+public class MappedHashTableTest {
+
+    @Test
+    public void testInMemory() throws Exception{
+        MappedHashTable table = new MappedHashTable(10);
+
+        table.put(123L, 1L);
+        table.put(456L, 2L);
+        table.put(0L, 3L);
+
+        assertEquals(3, table.size());
+        assertEquals(1L, table.get(123L, -1L));
+        assertEquals(2L, table.get(456L, -1L));
+        assertEquals(3L, table.get(0L, -1L));
+        assertEquals(-1L, table.get(789L, -1L));
+
+        table.put(123L, 4L);
+        assertEquals(3, table.size());
+        assertEquals(4L, table.get(123L, -1L));
+
+        assertTrue(table.remove(456L));
+        assertFalse(table.remove(456L));
+        assertFalse(table.containsKey(456L));
+        assertEquals(2, table.size());
+
+        table.close();
+    }
+
+    @Test
+    public void testResize() throws Exception{
+        MappedHashTable table = new MappedHashTable(10);
+        long initialCapacity = table.capacity();
+
+        for(long i = 1; i <= 10_000; i++)
+            table.put(i * 31, i);
+
+        assertTrue(table.capacity() > initialCapacity);
+        assertEquals(10_000, table.size());
+        for(long i = 1; i <= 10_000; i++)
+            assertEquals(i, table.get(i * 31, -1L));
+
+        table.close();
+    }
+
+    @Test
+    public void testPairs() throws Exception{
+        MappedHashTable table = new MappedHashTable(10);
+
+        assertTrue(table.addPair(1L, 2L));
+        assertTrue(table.addPair(1L, 3L));
+        assertFalse(table.addPair(1L, 2L));
+
+        assertTrue(table.containsPair(1L, 2L));
+        assertTrue(table.containsPair(1L, 3L));
+        assertFalse(table.containsPair(1L, 4L));
+
+        assertTrue(table.removePair(1L, 2L));
+        assertFalse(table.containsPair(1L, 2L));
+        assertTrue(table.containsPair(1L, 3L));
+
+        table.close();
+    }
+
+    @Test
+    public void testFile() throws Exception{
+        File f = File.createTempFile("hashtable", ".idx");
+        f.delete();
+
+        MappedHashTable table = new MappedHashTable(f, 10);
+        for(long i = 1; i <= 5_000; i++)
+            table.put(i, i * 2);
+        table.setUserHeader(0, 42L);
+        table.close();
+
+        MappedHashTable reopened = new MappedHashTable(f, 10);
+        assertEquals(5_000, reopened.size());
+        assertEquals(42L, reopened.getUserHeader(0));
+        for(long i = 1; i <= 5_000; i++)
+            assertEquals(i * 2, reopened.get(i, -1L));
+        reopened.close();
+
+        f.delete();
+    }
+}
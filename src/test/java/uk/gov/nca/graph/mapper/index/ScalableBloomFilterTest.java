@@ -0,0 +1,76 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ScalableBloomFilterTest {
+
+    @Test
+    public void testFilter(){
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01, 1024 * 1024);
+
+        for(int i = 0; i < 10000; i++)
+            filter.put("key" + i);
+
+        //No false negatives, even once the filter has grown
+        for(int i = 0; i < 10000; i++)
+            assertTrue(filter.mightContain("key" + i));
+
+        //Keys that already appear to be in the filter aren't added again, so the size is approximate
+        assertTrue(filter.size() > 9800 && filter.size() <= 10000);
+
+        int positives = 0;
+        for(int i = 0; i < 10000; i++){
+            if(filter.mightContain("other" + i))
+                positives++;
+        }
+
+        assertTrue(positives < 200);
+        assertTrue(filter.getExpectedFalsePositiveRate() <= 0.01);
+        assertEquals(20000, filter.getLookups());
+        assertEquals(10000 - positives, filter.getNegatives());
+
+        filter.recordFalsePositive();
+        assertEquals(1, filter.getFalsePositives());
+
+        filter.clear();
+        assertEquals(0, filter.size());
+        assertEquals(0, filter.getLookups());
+        assertFalse(filter.mightContain("key1"));
+    }
+
+    @Test
+    public void testMemoryBudget(){
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01, 4096);
+
+        for(int i = 0; i < 100000; i++)
+            filter.put("key" + i);
+
+        assertTrue(filter.memoryUsage() <= 4096);
+
+        //Still no false negatives once the budget is reached, although the false positive rate will be higher
+        for(int i = 0; i < 100000; i++)
+            assertTrue(filter.mightContain("key" + i));
+
+        assertTrue(filter.getExpectedFalsePositiveRate() > 0.01);
+    }
+}
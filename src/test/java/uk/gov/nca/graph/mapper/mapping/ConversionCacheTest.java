@@ -0,0 +1,93 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import org.junit.Test;
+
+public class ConversionCacheTest {
+    @Test
+    public void testCache(){
+        ConversionCache cache = new ConversionCache(2, 100, 0.5);
+
+        assertSame(ConversionCache.MISS, cache.get("a"));
+        cache.put("a", 1);
+        cache.put("b", null);
+        cache.put("c", 3);
+
+        assertEquals(1, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertSame(ConversionCache.MISS, cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getLookups());
+    }
+
+    @Test
+    public void testAdaptive(){
+        ConversionCache cache = new ConversionCache(1000, 100, 0.5);
+
+        //Every value is distinct, so the cache should be disabled after the first window
+        for(int i = 0; i < 100; i++){
+            assertSame(ConversionCache.MISS, cache.get(i));
+            cache.put(i, i);
+        }
+
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.size());
+
+        cache.put(1, 1);
+        assertEquals(0, cache.size());
+
+        //Re-enabled after 16 windows
+        for(int i = 0; i < 1600; i++)
+            assertSame(ConversionCache.MISS, cache.get(1));
+
+        assertTrue(cache.isEnabled());
+
+        //Low cardinality data keeps the cache enabled
+        for(int i = 0; i < 1000; i++){
+            if(cache.get(i % 5) == ConversionCache.MISS)
+                cache.put(i % 5, i % 5);
+        }
+
+        assertTrue(cache.isEnabled());
+        assertEquals(5, cache.size());
+    }
+
+    @Test
+    public void testMapping(){
+        Mapping m = new Mapping(DataType.DATE, "date");
+
+        Object d1 = DataTypeUtils.tryConvert(new String("2018-01-15"), m);
+        Object d2 = DataTypeUtils.tryConvert(new String("2018-01-15"), m);
+
+        assertEquals(LocalDate.of(2018, 1, 15), d1);
+        assertSame(d1, d2);
+        assertNull(DataTypeUtils.tryConvert("Hello", m));
+        assertNull(DataTypeUtils.tryConvert("Hello", m));
+        assertEquals(2, m.getConversionCache().getHits());
+
+        assertNull(new Mapping(DataType.STRING, "name").getConversionCache());
+    }
+}
@@ -17,9 +17,13 @@ limitations under the License.
 package uk.gov.nca.graph.mapper.mapping;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 import static uk.gov.nca.graph.mapper.mapping.DataTypeUtils.convert;
+import static uk.gov.nca.graph.mapper.mapping.DataTypeUtils.tryConvert;
 
+import java.math.BigDecimal;
+import java.net.URI;
 import java.net.URL;
 import java.sql.Timestamp;
 import java.time.LocalDate;
@@ -58,8 +62,15 @@ public class DataTypeUtilsTest {
             //Do nothing, expected
         }
 
+        assertEquals(47, convert(new BigDecimal("47.00"), DataType.INTEGER));
+        assertEquals(47L, convert(new BigDecimal("47"), DataType.LONG));
+        assertNull(tryConvert(new BigDecimal("47.5"), DataType.INTEGER));
+        assertNull(tryConvert(new BigDecimal("1E+12"), DataType.INTEGER));
+
         assertEquals(47.0, convert(47, DataType.DOUBLE));
+        assertEquals(47.5, convert(new BigDecimal("47.5"), DataType.DOUBLE));
         assertEquals(47.0, convert(47.0, DataType.DOUBLE));
+        assertEquals(0.1, convert(0.1f, DataType.DOUBLE));
         assertEquals(47.0, convert("47.0", DataType.DOUBLE));
         try{
             convert("Hello", DataType.DOUBLE);
@@ -107,9 +118,10 @@ public class DataTypeUtilsTest {
             //Do nothing, expected
         }
 
-        URL url = new URL("http://www.gov.uk");
-        assertEquals(url, convert(url, DataType.URL));
-        assertEquals(url, convert("http://www.gov.uk", DataType.URL));
+        URI uri = new URI("http://www.gov.uk");
+        assertEquals(uri, convert(uri, DataType.URL));
+        assertEquals(uri, convert(new URL("http://www.gov.uk"), DataType.URL));
+        assertEquals(uri, convert("http://www.gov.uk", DataType.URL));
         try{
             convert("Hello", DataType.URL);
             fail("Expected exception not thrown");
@@ -125,6 +137,114 @@ public class DataTypeUtilsTest {
 
         assertEquals("127.0.0.1", convert("127.0.0.1", DataType.IPADDRESS));
         assertEquals("127.0.0.1", convert(ip, DataType.IPADDRESS));
-        assertEquals("Hello", convert("Hello", DataType.IPADDRESS));
+        assertEquals("::1", convert("0:0:0:0:0:0:0:1", DataType.IPADDRESS));
+        try{
+            convert("Hello", DataType.IPADDRESS);
+            fail("Expected exception not thrown");
+        }catch (ParseException pe){
+            //Do nothing, expected
+        }
+
+        assertEquals(3000000000L, convert("3000000000", DataType.LONG));
+        assertEquals(47L, convert(47, DataType.LONG));
+        try{
+            convert("Hello", DataType.LONG);
+            fail("Expected exception not thrown");
+        }catch (ParseException pe){
+            //Do nothing, expected
+        }
+    }
+
+    @Test
+    public void testTryConvert() throws Exception{
+        assertNull(tryConvert(null, DataType.STRING));
+
+        assertEquals(47, tryConvert("47", DataType.INTEGER));
+        assertEquals(-47, tryConvert("-47", DataType.INTEGER));
+        assertEquals(47, tryConvert("+0047", DataType.INTEGER));
+        assertNull(tryConvert("Hello", DataType.INTEGER));
+        assertNull(tryConvert("", DataType.INTEGER));
+        assertNull(tryConvert("-", DataType.INTEGER));
+        assertNull(tryConvert("4.7", DataType.INTEGER));
+        assertNull(tryConvert("3000000000", DataType.INTEGER));
+        assertNull(tryConvert("12345678901234567890", DataType.INTEGER));
+
+        assertEquals(47.0, tryConvert("47", DataType.DOUBLE));
+        assertEquals(-4.7e3, tryConvert(" -4.7E3 ", DataType.DOUBLE));
+        assertEquals(0.5, tryConvert(".5", DataType.DOUBLE));
+        assertEquals(16.0, tryConvert("0x10p0", DataType.DOUBLE));
+        assertEquals(Double.NaN, tryConvert("NaN", DataType.DOUBLE));
+        assertEquals(Double.NEGATIVE_INFINITY, tryConvert("-Infinity", DataType.DOUBLE));
+        assertNull(tryConvert("Hello", DataType.DOUBLE));
+        assertNull(tryConvert("1e", DataType.DOUBLE));
+        assertNull(tryConvert(".", DataType.DOUBLE));
+
+        LocalDate ld = LocalDate.of(2018, Month.JANUARY, 15);
+        assertEquals(ld, tryConvert("2018-01-15", DataType.DATE));
+        assertEquals(ld, tryConvert("15-Jan-2018", DataType.DATE));
+        assertNull(tryConvert("2018-02-30", DataType.DATE));
+        assertNull(tryConvert("15/01/2018", DataType.DATE));
+
+        ZonedDateTime zdt = ZonedDateTime.of(2018, 1, 15, 12, 0, 0, 0, ZoneOffset.UTC);
+        assertEquals(zdt, tryConvert("2018-01-15T12:00:00Z", DataType.DATETIME));
+        assertEquals(zdt, tryConvert("15 Jan 2018 12:00:00 GMT", DataType.DATETIME));
+        assertEquals(zdt, tryConvert(Long.toString(zdt.toEpochSecond()), DataType.DATETIME));
+        assertNull(tryConvert("2018-01-15T12:00:00", DataType.DATETIME));
+        assertNull(tryConvert("2018-01-15 25:00:00", DataType.DATETIME));
+
+        assertEquals(LocalTime.of(12, 30), tryConvert("12:30", DataType.TIME));
+        assertNull(tryConvert("12", DataType.TIME));
+
+        assertEquals(new URI("http://www.gov.uk"), tryConvert("http://www.gov.uk", DataType.URL));
+        assertEquals(new URI("unknown://www.gov.uk"), tryConvert("unknown://www.gov.uk", DataType.URL));
+        assertNull(tryConvert("www.gov.uk", DataType.URL));
+        assertNull(tryConvert("http://www.gov.uk/a b", DataType.URL));
+
+        assertEquals(new URL("http://www.gov.uk"), DataTypeUtils.toLegacyType(new URI("http://www.gov.uk")));
+        assertNull(DataTypeUtils.toLegacyType(new URI("unknown://www.gov.uk")));
+        assertEquals("Hello", DataTypeUtils.toLegacyType("Hello"));
+
+        assertNull(tryConvert(new byte[3], DataType.IPADDRESS));
+    }
+
+    @Test
+    public void testTryConvertMapping() throws Exception{
+        LocalDate ld = LocalDate.of(2018, Month.JANUARY, 15);
+        ZonedDateTime zdt = ZonedDateTime.of(2018, 1, 15, 12, 0, 0, 0, ZoneOffset.UTC);
+
+        Mapping date = Mapping.fromString("_DATE(dob|dd/MM/yyyy)");
+        assertEquals(ld, tryConvert("15/01/2018", date));
+        assertNull(tryConvert("2018-01-15", date));
+
+        Mapping dateTime = Mapping.fromString("_DATETIME(ts|dd/MM/yyyy HH:mm)");
+        assertEquals(zdt, tryConvert("15/01/2018 12:00", dateTime));
+
+        Mapping dateOnly = Mapping.fromString("_DATETIME(ts|dd/MM/yyyy)");
+        assertEquals(zdt.minusHours(12), tryConvert("15/01/2018", dateOnly));
+
+        Mapping time = Mapping.fromString("_TIME(t|HHmm)");
+        assertEquals(LocalTime.of(12, 30), tryConvert("1230", time));
+
+        //Without a format, the last successful format is remembered
+        Mapping detected = Mapping.fromString("_DATETIME(ts)");
+        assertEquals(zdt, tryConvert("2018-01-15 12:00:00", detected));
+        assertEquals(2, detected.getFormatHint());
+        assertEquals(zdt, tryConvert("2018-01-15 12:00:00", detected));
+        assertEquals(zdt, tryConvert("Mon, 15 Jan 2018 12:00:00 GMT", detected));
+        assertEquals(1, detected.getFormatHint());
+        assertEquals(zdt, tryConvert("2018-01-15T12:00:00Z", detected));
+        assertEquals(0, detected.getFormatHint());
+        assertEquals(zdt, tryConvert(Long.toString(zdt.toEpochSecond()), detected));
+        assertEquals(3, detected.getFormatHint());
+        assertNull(tryConvert("Hello", detected));
+        assertEquals(3, detected.getFormatHint());
+
+        Mapping detectedDate = Mapping.fromString("_DATE(dob)");
+        assertEquals(ld, tryConvert("15-Jan-2018", detectedDate));
+        assertEquals(1, detectedDate.getFormatHint());
+        assertEquals(ld, tryConvert("2018-01-15", detectedDate));
+
+        //Non-temporal types are converted as normal
+        assertEquals(47, tryConvert("47", new Mapping(DataType.INTEGER, "i")));
     }
 }
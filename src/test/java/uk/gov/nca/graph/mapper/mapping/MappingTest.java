@@ -17,6 +17,7 @@ limitations under the License.
 package uk.gov.nca.graph.mapper.mapping;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import org.junit.Test;
@@ -39,4 +40,23 @@ public class MappingTest {
             fail("Expected exception not thrown");
         }catch (ParseException pe){}
     }
+
+    @Test
+    public void testFormat() throws ParseException {
+        Mapping m1 = Mapping.fromString("_DATE(dob|dd/MM/yyyy)");
+        assertEquals(DataType.DATE, m1.getDataType());
+        assertEquals("dob", m1.getField());
+        assertEquals("dd/MM/yyyy", m1.getFormat());
+        assertEquals("_DATE(dob|dd/MM/yyyy)", m1.toString());
+
+        //Formats are only supported for temporal types
+        Mapping m2 = Mapping.fromString("_STRING(a|b)");
+        assertEquals("a|b", m2.getField());
+        assertNull(m2.getFormat());
+
+        try{
+            Mapping.fromString("_DATE(dob|dd/MM/yyyyb)");
+            fail("Expected exception not thrown");
+        }catch (ParseException pe){}
+    }
 }
@@ -0,0 +1,118 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.mapper.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.InetAddress;
+import java.util.Random;
+import org.junit.Test;
+
+public class ParseUtilsTest {
+    @Test
+    public void testIntegers(){
+        assertEquals(Integer.valueOf(0), ParseUtils.parseInteger("0"));
+        assertEquals(Integer.valueOf(-47), ParseUtils.parseInteger("-47"));
+        assertEquals(Integer.valueOf(47), ParseUtils.parseInteger("+47"));
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), ParseUtils.parseInteger("2147483647"));
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), ParseUtils.parseInteger("-2147483648"));
+        assertNull(ParseUtils.parseInteger("2147483648"));
+        assertNull(ParseUtils.parseInteger(""));
+        assertNull(ParseUtils.parseInteger("+"));
+        assertNull(ParseUtils.parseInteger("4 7"));
+
+        assertEquals(Long.valueOf(Long.MAX_VALUE), ParseUtils.parseLong("9223372036854775807"));
+        assertEquals(Long.valueOf(Long.MIN_VALUE), ParseUtils.parseLong("-9223372036854775808"));
+        assertNull(ParseUtils.parseLong("9223372036854775808"));
+        assertNull(ParseUtils.parseLong("-9223372036854775809"));
+        assertNull(ParseUtils.parseLong("99999999999999999999"));
+
+        //Works on any CharSequence
+        assertEquals(Long.valueOf(123), ParseUtils.parseLong(new StringBuilder("123")));
+    }
+
+    @Test
+    public void testDoubles(){
+        String[] values = {"0", "-0", "1", "1.5", "-1.5", ".5", "5.", "0.1", "0.05", "1e10", "1.23E-4", "+7d", "2.5f",
+            " 3.25 ", "123456789012345", "1234567890123456789", "0.30000000000000004", "1e22", "1e23", "1e-22", "4.9e-324",
+            "1.7976931348623157e308", "1e400", "00001.2500", "NaN", "-Infinity", "0x1.8p1"};
+
+        for(String value : values)
+            assertEquals(value, Double.valueOf(value), ParseUtils.parseDouble(value));
+
+        Random random = new Random(1234);
+        for(int i = 0; i < 10000; i++){
+            String value = Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20));
+            assertEquals(value, Double.valueOf(value), ParseUtils.parseDouble(value));
+        }
+
+        assertNull(ParseUtils.parseDouble(""));
+        assertNull(ParseUtils.parseDouble("."));
+        assertNull(ParseUtils.parseDouble("1e"));
+        assertNull(ParseUtils.parseDouble("1.2.3"));
+        assertNull(ParseUtils.parseDouble("Hello"));
+        assertNull(ParseUtils.parseDouble("NaNa"));
+    }
+
+    @Test
+    public void testBooleans(){
+        assertSame(Boolean.TRUE, ParseUtils.parseBoolean("true"));
+        assertSame(Boolean.TRUE, ParseUtils.parseBoolean("YeS"));
+        assertSame(Boolean.FALSE, ParseUtils.parseBoolean("false"));
+        assertSame(Boolean.FALSE, ParseUtils.parseBoolean("truest"));
+        assertSame(Boolean.FALSE, ParseUtils.parseBoolean(""));
+    }
+
+    @Test
+    public void testIpAddresses() throws Exception{
+        String canonical = "192.168.0.1";
+        assertSame(canonical, ParseUtils.parseIpAddress(canonical));
+        assertEquals("192.168.0.1", ParseUtils.parseIpAddress("192.168.000.001"));
+        assertEquals("255.255.255.255", ParseUtils.parseIpAddress("255.255.255.255"));
+        assertEquals("0.0.0.0", ParseUtils.parseIpAddress("0.0.0.0"));
+        assertNull(ParseUtils.parseIpAddress("256.0.0.1"));
+        assertNull(ParseUtils.parseIpAddress("1.2.3"));
+        assertNull(ParseUtils.parseIpAddress("1.2.3.4.5"));
+        assertNull(ParseUtils.parseIpAddress("1.2.3.0001"));
+        assertNull(ParseUtils.parseIpAddress("Hello"));
+
+        assertEquals("::", ParseUtils.parseIpAddress("::"));
+        assertEquals("::1", ParseUtils.parseIpAddress("0:0:0:0:0:0:0:1"));
+        assertEquals("1::", ParseUtils.parseIpAddress("1:0:0:0:0:0:0:0"));
+        assertEquals("2001:db8::1", ParseUtils.parseIpAddress("2001:0DB8:0000:0000:0000:0000:0000:0001"));
+        assertEquals("2001:db8:0:1:1:1:1:1", ParseUtils.parseIpAddress("2001:db8:0:1:1:1:1:1"));
+        assertEquals("2001:0:0:1::1", ParseUtils.parseIpAddress("2001:0:0:1:0:0:0:1"));
+        assertEquals("2001:db8::1:0:0:1", ParseUtils.parseIpAddress("2001:db8:0:0:1:0:0:1"));
+        assertEquals("::ffff:192.0.2.1", ParseUtils.parseIpAddress("::ffff:c000:0201"));
+        assertEquals("::ffff:192.0.2.1", ParseUtils.parseIpAddress("0:0:0:0:0:ffff:192.0.2.1"));
+        assertEquals("64:ff9b::c000:201", ParseUtils.parseIpAddress("64:ff9b::192.0.2.1"));
+        assertNull(ParseUtils.parseIpAddress(":1"));
+        assertNull(ParseUtils.parseIpAddress("1:"));
+        assertNull(ParseUtils.parseIpAddress("1::2::3"));
+        assertNull(ParseUtils.parseIpAddress("1:2:3:4:5:6:7:8:9"));
+        assertNull(ParseUtils.parseIpAddress("1:2:3:4:5:6:7"));
+        assertNull(ParseUtils.parseIpAddress("1:2:3:4:5:6:7:8::"));
+        assertNull(ParseUtils.parseIpAddress("12345::"));
+        assertNull(ParseUtils.parseIpAddress("fe80::1%eth0"));
+
+        assertEquals("127.0.0.1", ParseUtils.formatIpAddress(new byte[]{127, 0, 0, 1}));
+        assertEquals("::1", ParseUtils.formatIpAddress(InetAddress.getByName("::1").getAddress()));
+        assertNull(ParseUtils.formatIpAddress(new byte[3]));
+    }
+}